@@ -0,0 +1,63 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cmd.RunExperimentCommand;
+import util.CrossValidator;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// 10-fold cross-validation plus the final build, as done by the Run*ClassifierCommand
+// classes, on a synthetic HepatitisC dataset (class = Category). Larger sizes can be
+// passed with -p rows=1000000; J48 in particular gets slow well before 10M rows.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ClassifierBenchmark {
+	@Param({ "OneR", "J48", "NaiveBayes" })
+	public String classifier;
+
+	@Param({ "1000", "10000", "100000" })
+	public int rows;
+
+	private Instances dataset;
+	private Classifier template;
+
+	@Setup
+	public void setup() throws Exception {
+		dataset = SyntheticData.instances(SyntheticData.Schema.HEPATITIS_C, rows, 42);
+		for (String[] entry : RunExperimentCommand.CLASSIFIERS) {
+			if (entry[0].endsWith("." + classifier)) {
+				template = AbstractClassifier.forName(entry[0], Utils.splitOptions(entry[1]));
+			}
+		}
+		if (template == null) {
+			throw new IllegalArgumentException("Unknown classifier: " + classifier);
+		}
+	}
+
+	@Benchmark
+	public Evaluation crossValidate() throws Exception {
+		Classifier model = AbstractClassifier.makeCopy(template);
+		return new CrossValidator().crossValidateAndBuild(model, dataset, 10, new Random(1));
+	}
+}
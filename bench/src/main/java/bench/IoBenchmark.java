@@ -0,0 +1,89 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import util.ColumnarCache;
+import util.Converter;
+import util.Loader;
+import weka.core.Instances;
+
+// File conversion and loading on a synthetic auto-mpg CSV written to a temp directory
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class IoBenchmark {
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int rows;
+
+	private Path directory;
+	private String csv;
+	private String arff;
+	private String cachedArff;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("dm-bench");
+		csv = directory.resolve("auto-mpg.csv").toString();
+		arff = directory.resolve("auto-mpg.arff").toString();
+		cachedArff = directory.resolve("auto-mpg-cached.arff").toString();
+		SyntheticData.writeCsv(SyntheticData.Schema.AUTO_MPG, rows, 42, Path.of(csv));
+		Converter.csv2Arff(csv, arff);
+		Converter.csv2Arff(csv, cachedArff);
+		Loader.loadArff(cachedArff); // writes the columnar cache
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		for (File file : directory.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	public void csv2Arff() throws IOException {
+		Converter.csv2Arff(csv, directory.resolve("converted.arff").toString());
+	}
+
+	@Benchmark
+	public Instances csv2Instances() throws IOException {
+		return Converter.csv2Instances(csv);
+	}
+
+	@Benchmark
+	public Instances loadCsv() {
+		return Loader.loadCsv(csv);
+	}
+
+	// Cold load: parse the ARFF (and write the cache, as the first real load would)
+	@Benchmark
+	public Instances loadArff() throws IOException {
+		Files.deleteIfExists(ColumnarCache.cachePath(arff));
+		return Loader.loadArff(arff);
+	}
+
+	@Benchmark
+	public Instances loadArffCached() {
+		return Loader.loadArff(cachedArff);
+	}
+}
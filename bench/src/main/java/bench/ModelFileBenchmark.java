@@ -0,0 +1,83 @@
+package bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cmd.RunExperimentCommand;
+import util.ModelFile;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.core.Utils;
+
+// Loading a model saved by the Run* commands (ModelFile) against the Java
+// serialization they used before (SerializationHelper), for models trained on a
+// synthetic HepatitisC dataset. File sizes are printed during setup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModelFileBenchmark {
+	@Param({ "OneR", "J48", "NaiveBayes" })
+	public String classifier;
+
+	@Param({ "1000", "100000" })
+	public int rows;
+
+	private File compact;
+	private File serialized;
+
+	@Setup
+	public void setup() throws Exception {
+		Instances dataset = SyntheticData.instances(SyntheticData.Schema.HEPATITIS_C, rows, 42);
+		Classifier model = null;
+		for (String[] entry : RunExperimentCommand.CLASSIFIERS) {
+			if (entry[0].endsWith("." + classifier)) {
+				model = AbstractClassifier.forName(entry[0], Utils.splitOptions(entry[1]));
+			}
+		}
+		if (model == null) {
+			throw new IllegalArgumentException("Unknown classifier: " + classifier);
+		}
+		model.buildClassifier(dataset);
+
+		compact = File.createTempFile("model", ".bin");
+		serialized = File.createTempFile("model", ".ser");
+		ModelFile.write(compact.getPath(), model, new Instances(dataset, 0));
+		SerializationHelper.write(serialized.getPath(), model);
+		System.out.printf("%n%s: ModelFile %d bytes, SerializationHelper %d bytes%n", classifier, compact.length(),
+				serialized.length());
+	}
+
+	@TearDown
+	public void tearDown() {
+		compact.delete();
+		serialized.delete();
+	}
+
+	@Benchmark
+	public ModelFile loadModelFile() throws Exception {
+		return ModelFile.read(compact.getPath());
+	}
+
+	@Benchmark
+	public Object loadSerialized() throws Exception {
+		return SerializationHelper.read(serialized.getPath());
+	}
+}
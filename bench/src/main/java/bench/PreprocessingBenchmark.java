@@ -0,0 +1,54 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cmd.CleanDataCommand;
+import cmd.HandleMissingDataCommand;
+import weka.core.Instances;
+
+// In-memory cleaning steps on a synthetic auto-mpg dataset. None of them modify
+// their input, so the same dataset is reused by every invocation.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class PreprocessingBenchmark {
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int rows;
+
+	private Instances dataset;
+
+	@Setup
+	public void setup() {
+		dataset = SyntheticData.instances(SyntheticData.Schema.AUTO_MPG, rows, 42);
+	}
+
+	@Benchmark
+	public Instances removeDuplicates() throws Exception {
+		return new CleanDataCommand().removeDuplicates(dataset);
+	}
+
+	@Benchmark
+	public Instances handleOutliers() throws Exception {
+		return new CleanDataCommand().handleOutliers(dataset);
+	}
+
+	@Benchmark
+	public Instances handleMissingData() throws Exception {
+		return new HandleMissingDataCommand().apply(dataset);
+	}
+}
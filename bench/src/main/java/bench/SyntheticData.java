@@ -0,0 +1,185 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// Synthetic datasets with the auto-mpg and HepatitisC schemas, at any size.
+//
+// Values follow the rough distributions of the real files (means, spreads,
+// class balance and correlations between the size-related auto-mpg columns), with
+// the same kinds of dirt the preprocessing has to deal with: missing values,
+// repeated rows and a few far outliers. Generation is seeded so every run of a
+// benchmark sees the same data.
+public class SyntheticData {
+	public enum Schema { AUTO_MPG, HEPATITIS_C }
+
+	private final static double DUPLICATE_RATE = 0.01;
+	private final static double OUTLIER_RATE = 0.005;
+
+	private final static String[] MAKES = { "amc", "buick", "chevrolet", "datsun", "dodge", "ford", "honda",
+			"mazda", "mercury", "oldsmobile", "peugeot", "plymouth", "pontiac", "toyota", "volkswagen", "volvo" };
+	private final static String[] MODELS = { "concord", "skylark", "malibu", "510", "colt", "pinto", "civic",
+			"rx-4", "monarch", "cutlass", "504", "valiant", "catalina", "corolla", "rabbit", "144ea" };
+	private final static String[] CATEGORIES = { "0=Blood Donor", "0s=suspect Blood Donor", "1=Hepatitis",
+			"2=Fibrosis", "3=Cirrhosis" };
+	// Cumulative class frequencies of HepatitisCdata.csv (533, 7, 24, 21, 30 of 615)
+	private final static double[] CATEGORY_CDF = { 0.867, 0.878, 0.917, 0.951, 1.0 };
+
+	public static Instances header(Schema schema) {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		if (schema == Schema.AUTO_MPG) {
+			for (String name : new String[] { "mpg", "cylinders", "displacement", "horsepower", "weight",
+					"acceleration", "model_year", "origin" }) {
+				attributes.add(new Attribute(name));
+			}
+			attributes.add(new Attribute("car_name", (List<String>) null));
+			return new Instances("auto_mpg", attributes, 0);
+		}
+		attributes.add(new Attribute("Category", Arrays.asList(CATEGORIES)));
+		attributes.add(new Attribute("Age"));
+		attributes.add(new Attribute("Sex", Arrays.asList("m", "f")));
+		for (String name : new String[] { "ALB", "ALP", "ALT", "AST", "BIL", "CHE", "CHOL", "CREA", "GGT", "PROT" }) {
+			attributes.add(new Attribute(name));
+		}
+		Instances header = new Instances("HepatitisCdata", attributes, 0);
+		header.setClassIndex(0);
+		return header;
+	}
+
+	public static Instances instances(Schema schema, int rows, long seed) {
+		Instances data = header(schema);
+		Generator generator = new Generator(schema, data, seed);
+		data = new Instances(data, rows);
+		for (int i = 0; i < rows; i++) {
+			data.add(new DenseInstance(1.0, generator.next()));
+		}
+		return data;
+	}
+
+	// Streams the rows straight to a CSV file ('?' for missing values), so files
+	// larger than the heap can be produced
+	public static void writeCsv(Schema schema, int rows, long seed, Path csv) throws IOException {
+		Instances header = header(schema);
+		Generator generator = new Generator(schema, header, seed);
+		try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+			for (int j = 0; j < header.numAttributes(); j++) {
+				writer.write(j == 0 ? "" : ",");
+				writer.write(header.attribute(j).name());
+			}
+			writer.newLine();
+			for (int i = 0; i < rows; i++) {
+				double[] row = generator.next();
+				for (int j = 0; j < row.length; j++) {
+					if (j > 0) writer.write(',');
+					Attribute attribute = header.attribute(j);
+					if (Double.isNaN(row[j])) {
+						writer.write('?');
+					} else if (attribute.isNumeric()) {
+						writer.write(Utils.doubleToString(row[j], 2));
+					} else {
+						writer.write(attribute.value((int) row[j]));
+					}
+				}
+				writer.newLine();
+			}
+		}
+	}
+
+	private static class Generator {
+		private final Schema schema;
+		private final Instances header;
+		private final Random random;
+		private double[] previous;
+
+		Generator(Schema schema, Instances header, long seed) {
+			this.schema = schema;
+			this.header = header;
+			this.random = new Random(seed);
+			if (schema == Schema.AUTO_MPG) {
+				// Fixed pool of names registered up front so string indexes are stable
+				Attribute carName = header.attribute("car_name");
+				for (String make : MAKES) {
+					for (String model : MODELS) {
+						carName.addStringValue(make + " " + model);
+					}
+				}
+			}
+		}
+
+		double[] next() {
+			if (previous != null && random.nextDouble() < DUPLICATE_RATE) {
+				return previous.clone();
+			}
+			double[] row = schema == Schema.AUTO_MPG ? autoMpg() : hepatitisC();
+			for (int j = 0; j < row.length; j++) {
+				if (header.attribute(j).isNumeric() && !Double.isNaN(row[j]) && random.nextDouble() < OUTLIER_RATE) {
+					row[j] *= 5;
+				}
+			}
+			previous = row;
+			return row.clone();
+		}
+
+		private double[] autoMpg() {
+			// Latent car size drives cylinders, displacement, power and weight
+			double size = random.nextGaussian();
+			double cylinders = size < -0.6 ? 4 : size < 0.4 ? 6 : 8;
+			if (random.nextDouble() < 0.02) cylinders = random.nextBoolean() ? 3 : 5;
+			return new double[] {
+					round(Math.max(9, 23.5 - 6.5 * size + 2.5 * random.nextGaussian()), 1),
+					cylinders,
+					round(Math.max(68, 193 + 95 * size + 20 * random.nextGaussian()), 1),
+					missing(0.015, round(Math.max(46, 104 + 33 * size + 12 * random.nextGaussian()), 1)),
+					round(Math.max(1613, 2970 + 780 * size + 250 * random.nextGaussian()), 1),
+					round(Math.max(8, 15.5 - 1.5 * size + 2.2 * random.nextGaussian()), 1),
+					70 + random.nextInt(13),
+					size > 0 ? 1 : 1 + random.nextInt(3),
+					random.nextInt(MAKES.length * MODELS.length),
+			};
+		}
+
+		private double[] hepatitisC() {
+			double u = random.nextDouble();
+			int category = 0;
+			while (u > CATEGORY_CDF[category]) category++;
+			// Liver markers rise with the disease stage
+			double stage = category < 2 ? 0 : category - 1;
+			return new double[] {
+					category,
+					Math.round(Math.max(19, 47 + 10 * random.nextGaussian())),
+					random.nextDouble() < 0.61 ? 0 : 1,
+					missing(0.002, round(42 - 1.5 * stage + 5.5 * random.nextGaussian(), 1)),
+					missing(0.03, round(68 * Math.exp(0.35 * random.nextGaussian()), 1)),
+					missing(0.002, round(23 * Math.exp(0.5 * random.nextGaussian() + 0.3 * stage), 1)),
+					round(26 * Math.exp(0.35 * random.nextGaussian() + 0.6 * stage), 1),
+					round(8 * Math.exp(0.5 * random.nextGaussian() + 0.5 * stage), 1),
+					round(Math.max(1, 8.3 - 1.2 * stage + 1.9 * random.nextGaussian()), 2),
+					missing(0.017, round(Math.max(1.5, 5.4 - 0.3 * stage + 1.1 * random.nextGaussian()), 2)),
+					Math.round(78 * Math.exp(0.2 * random.nextGaussian())),
+					round(25 * Math.exp(0.6 * random.nextGaussian() + 0.7 * stage), 1),
+					missing(0.002, round(72 + 5.4 * random.nextGaussian(), 1)),
+			};
+		}
+
+		private double missing(double rate, double value) {
+			return random.nextDouble() < rate ? Utils.missingValue() : value;
+		}
+
+		private static double round(double value, int decimals) {
+			double scale = Math.pow(10, decimals);
+			return Math.round(value * scale) / scale;
+		}
+	}
+}
@@ -1,41 +1,145 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import cmd.CachedCommand;
+import cmd.ChunkedPipeline;
 import cmd.CleanDataCommand;
 import cmd.DiscretizeAttributesCommand;
 import cmd.HandleMissingDataCommand;
 import cmd.OriginalCsv2ArffCommand;
+import cmd.Pipeline;
+import cmd.ProfiledCommand;
 import cmd.RemoveOutlierAndExtremeDataCommand;
 import cmd.RemoveUselessAttributesCommand;
+import cmd.RunExperimentCommand;
 import cmd.RunJ48ClassifierCommand;
 import cmd.RunNaiveBayesClassifierCommand;
 import cmd.RunOneRClassifierCommand;
+import cmd.Scheduler;
+import cmd.SelectFeaturesCommand;
 import cmd.VisualizeCorrelationMatrixCommand;
+import util.Profiler;
+import util.StageCache;
 
 public class Main {
+	// Fingerprints of the stages' last runs: stages whose inputs and options have not
+	// changed are skipped, so that changing a classifier's options only reruns it
+	private static final StageCache cache = new StageCache();
+
+	// Runs the preprocessing commands in memory: the original CSV is loaded once and
+	// only the cleaned dataset and the side outputs of the branches are saved
 	public static void preprocessing() {
-		(new OriginalCsv2ArffCommand()).exec();
-		(new RemoveUselessAttributesCommand()).exec();
-		(new HandleMissingDataCommand()).exec();
-		(new RemoveOutlierAndExtremeDataCommand()).exec();
-		(new CleanDataCommand()).exec();
-		(new VisualizeCorrelationMatrixCommand()).exec();
-		(new DiscretizeAttributesCommand()).exec();
+		CleanDataCommand clean = new CleanDataCommand();
+		try {
+			Pipeline.fromCsv(OriginalCsv2ArffCommand.ORIGINAL_CSV_DATASET)
+					.branch(new RemoveUselessAttributesCommand(),
+							RemoveUselessAttributesCommand.REMOVED_REDUNDANCY_ARFF_DATASET,
+							RemoveUselessAttributesCommand.REMOVED_REDUNDANCY_CSV_DATASET)
+					.then(new RemoveOutlierAndExtremeDataCommand())
+					.then(new HandleMissingDataCommand())
+					.then(clean)
+					.checkpoint(CleanDataCommand.CLEAN_ARFF_DATASET, CleanDataCommand.CLEAN_CSV_DATASET)
+					.branch("HandleOutliers", clean::handleOutliers,
+							CleanDataCommand.OUTLIER_HANDLED_ARFF, CleanDataCommand.OUTLIER_HANDLED_CSV)
+					.branch(new VisualizeCorrelationMatrixCommand(), null, null)
+					.branch(new DiscretizeAttributesCommand(),
+							DiscretizeAttributesCommand.DISCRETIZED_ARFF_DATASET,
+							DiscretizeAttributesCommand.DISCRETIZED_CSV_DATASET)
+					.runIncremental(cache);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	// The same preprocessing for datasets larger than the heap: every step works on
+	// chunks of rows (ChunkedPipeline), and the correlation matrix is left out
+	public static void preprocessingOutOfCore() {
+		CleanDataCommand clean = new CleanDataCommand();
+		try {
+			ChunkedPipeline.fromCsv(OriginalCsv2ArffCommand.ORIGINAL_CSV_DATASET)
+					.branch("RemoveUselessAttributes", new RemoveUselessAttributesCommand().chunked(),
+							RemoveUselessAttributesCommand.REMOVED_REDUNDANCY_ARFF_DATASET,
+							RemoveUselessAttributesCommand.REMOVED_REDUNDANCY_CSV_DATASET)
+					.then("RemoveOutlierAndExtremeData", new RemoveOutlierAndExtremeDataCommand().chunked())
+					.then("HandleMissingData", new HandleMissingDataCommand().chunked())
+					.then("RemoveDuplicates", clean.chunkedRemoveDuplicates())
+					.then("EncodeCategoricalVariables", clean.chunkedEncoding())
+					.checkpoint(CleanDataCommand.CLEAN_ARFF_DATASET, CleanDataCommand.CLEAN_CSV_DATASET)
+					.branch("HandleOutliers", clean.chunkedHandleOutliers(),
+							CleanDataCommand.OUTLIER_HANDLED_ARFF, CleanDataCommand.OUTLIER_HANDLED_CSV)
+					.branch("DiscretizeAttributes", new DiscretizeAttributesCommand().chunked(),
+							DiscretizeAttributesCommand.DISCRETIZED_ARFF_DATASET,
+							DiscretizeAttributesCommand.DISCRETIZED_CSV_DATASET)
+					.run();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Runs the standalone commands, each reading and writing its files, as a DAG of
+	// those files (Scheduler): the independent ones run concurrently, the first
+	// failure stops the run, and the ones whose files are unchanged are skipped
+	public static void commands() {
+		try {
+			new Scheduler()
+					.add(new CachedCommand(new OriginalCsv2ArffCommand(), cache))
+					.add(new CachedCommand(new RemoveUselessAttributesCommand(), cache))
+					.add(new CachedCommand(new RemoveOutlierAndExtremeDataCommand(), cache))
+					.add(new CachedCommand(new HandleMissingDataCommand(), cache))
+					.add(new CachedCommand(new CleanDataCommand(), cache))
+					.add(new CachedCommand(new VisualizeCorrelationMatrixCommand(), cache))
+					.add(new CachedCommand(new DiscretizeAttributesCommand(), cache))
+					.add(new CachedCommand(new SelectFeaturesCommand(), cache))
+					.add(new CachedCommand(new RunExperimentCommand(), cache))
+					.run();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
 	}
 
 	public static void zeroR() {
-		(new RunOneRClassifierCommand()).exec();
+		(new ProfiledCommand(new RunOneRClassifierCommand())).exec();
 	}
 
 	public static void j48() {
-		(new RunJ48ClassifierCommand()).exec();
+		(new ProfiledCommand(new RunJ48ClassifierCommand())).exec();
 	}
 
 	public static void naiveBayes() {
-		(new RunNaiveBayesClassifierCommand()).exec();
+		(new ProfiledCommand(new RunNaiveBayesClassifierCommand())).exec();
+	}
+
+	// Evaluates all classifiers in parallel over one load of the dataset and one set of folds
+	public static void experiment() {
+		(new ProfiledCommand(new CachedCommand(new RunExperimentCommand(), cache))).exec();
 	}
 
+	// --out-of-core: preprocess with preprocessingOutOfCore, which always runs
+	// --commands: run the standalone commands instead (commands), experiment included
+	// --rebuild: forget the stages' last runs and run every stage
 	public static void main(String args[]) {
-		preprocessing();
-		zeroR();
-		j48();
-		naiveBayes();
+		List<String> options = Arrays.asList(args);
+		if (options.contains("--rebuild")) {
+			try {
+				cache.clear();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (options.contains("--commands")) {
+			commands();
+		} else {
+			if (options.contains("--out-of-core")) {
+				preprocessingOutOfCore();
+			} else {
+				preprocessing();
+			}
+			experiment();
+		}
+
+		// Time, CPU, allocations and data sizes of every stage of this run
+		Profiler.printReport();
+		Profiler.writeReport(Profiler.REPORT_JSON, Profiler.REPORT_CSV);
 	}
 }
@@ -0,0 +1,62 @@
+package cmd;
+
+import java.io.File;
+
+import util.StageCache;
+
+// Runs a command only if its inputs, options or class changed since the run
+// recorded in the StageCache, or if one of its outputs was changed or deleted;
+// otherwise the outputs of that run are kept and the command is skipped.
+//
+// A run is recorded once it has (re)written every output, so a command that
+// fails, or leaves a declared output alone, runs again next time.
+public class CachedCommand implements FileCommand {
+	private final FileCommand command;
+	private final StageCache cache;
+
+	public CachedCommand(FileCommand command, StageCache cache) {
+		this.command = command;
+		this.cache = cache;
+	}
+
+	// The name a command is reported under: that of the command a CachedCommand runs
+	static String nameOf(Command command) {
+		Command named = command instanceof CachedCommand ? ((CachedCommand) command).command : command;
+		return named.getClass().getSimpleName();
+	}
+
+	public String[] inputs() {
+		return command.inputs();
+	}
+
+	public String[] outputs() {
+		return command.outputs();
+	}
+
+	public String[] options() {
+		return command.options();
+	}
+
+	public void run() throws Exception {
+		String name = command.getClass().getSimpleName();
+		String fingerprint = cache.fingerprint(command.getClass(), command.inputs(), command.options());
+		if (cache.upToDate(name, fingerprint, command.outputs())) {
+			System.out.println(name + " is up to date, skipped");
+			return;
+		}
+
+		// Whole seconds, for file systems that keep no finer modification times
+		long start = System.currentTimeMillis() / 1000 * 1000;
+		command.run();
+		for (String output : command.outputs()) {
+			File file = new File(output);
+			if (!file.isFile() || file.lastModified() < start) {
+				System.err.println(name + " did not write " + output + ", its run is not recorded");
+				return;
+			}
+		}
+		// Taken again, for the commands that rewrite one of their inputs
+		cache.record(name, cache.fingerprint(command.getClass(), command.inputs(), command.options()),
+				command.outputs());
+	}
+}
@@ -0,0 +1,236 @@
+package cmd;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import util.ChunkReader;
+import util.ChunkedFilter;
+import util.Converter;
+import util.Profiler;
+import weka.core.Instances;
+import weka.core.converters.AbstractFileSaver;
+import weka.core.converters.AbstractSaver;
+import weka.core.converters.ArffSaver;
+import weka.core.converters.CSVSaver;
+
+// The out-of-core counterpart of Pipeline, for datasets larger than the heap:
+// the same kind of steps with ChunkedFilters, reading the source ARFF in chunks
+// of chunkRows rows and writing checkpoints and branch outputs incrementally,
+// so memory holds a few chunks and the filters' statistics.
+//
+// Filters that need statistics get their passes in step order, each reading
+// the source again through the steps before it (nothing is spilled between
+// steps); a last pass writes every output. A CSV source is first converted to
+// a temporary ARFF file next to it, with the same column types as Pipeline.
+public class ChunkedPipeline {
+	public final static int DEFAULT_CHUNK_ROWS = 10000;
+
+	private interface ChunkConsumer {
+		void accept(Instances chunk) throws Exception;
+	}
+
+	private static class Step {
+		final String name;
+		final ChunkedFilter filter;
+		final boolean branch;
+		final String arffPath;
+		final String csvPath;
+		Instances layout;
+		long rows;
+		final List<AbstractFileSaver> savers = new ArrayList<>();
+
+		Step(String name, ChunkedFilter filter, boolean branch, String arffPath, String csvPath) {
+			this.name = name;
+			this.filter = filter;
+			this.branch = branch;
+			this.arffPath = arffPath;
+			this.csvPath = csvPath;
+		}
+
+		boolean transforms() {
+			return filter != null && !branch;
+		}
+	}
+
+	private final String sourcePath;
+	private final boolean csv;
+	private final List<Step> steps = new ArrayList<>();
+	private int chunkRows = DEFAULT_CHUNK_ROWS;
+
+	private ChunkedPipeline(String sourcePath, boolean csv) {
+		this.sourcePath = sourcePath;
+		this.csv = csv;
+	}
+
+	public static ChunkedPipeline fromCsv(String csvPath) {
+		return new ChunkedPipeline(csvPath, true);
+	}
+
+	public static ChunkedPipeline fromArff(String arffPath) {
+		return new ChunkedPipeline(arffPath, false);
+	}
+
+	public ChunkedPipeline chunkRows(int chunkRows) {
+		if (chunkRows < 1) {
+			throw new IllegalArgumentException("Chunk size must be >= 1: " + chunkRows);
+		}
+		this.chunkRows = chunkRows;
+		return this;
+	}
+
+	// Replaces the current rows with the filter's output
+	public ChunkedPipeline then(String name, ChunkedFilter filter) {
+		steps.add(new Step(name, filter, false, null, null));
+		return this;
+	}
+
+	// Writes the current rows; either path may be null
+	public ChunkedPipeline checkpoint(String arffPath, String csvPath) {
+		steps.add(new Step("checkpoint", null, false, arffPath, csvPath));
+		return this;
+	}
+
+	// Runs a side filter on the current rows and writes its output without
+	// changing what the following steps receive
+	public ChunkedPipeline branch(String name, ChunkedFilter filter, String arffPath, String csvPath) {
+		steps.add(new Step(name, filter, true, arffPath, csvPath));
+		return this;
+	}
+
+	// Returns the number of rows after the last step; the run, the statistics
+	// passes and the writing pass are measured by the Profiler
+	public long run() throws Exception {
+		return Profiler.measure("ChunkedPipeline " + sourcePath, () -> {
+			if (!csv) {
+				return runSteps(sourcePath);
+			}
+			Path source = Paths.get(sourcePath).toAbsolutePath();
+			Path converted = Files.createTempFile(source.getParent(), "chunked", ".arff");
+			try {
+				Profiler.measure("convert", () -> {
+					Converter.csv2Arff(sourcePath, converted.toString());
+					return null;
+				});
+				return runSteps(converted.toString());
+			} finally {
+				Files.deleteIfExists(converted);
+			}
+		});
+	}
+
+	private long runSteps(String arffPath) throws Exception {
+		Instances structure;
+		try (ChunkReader reader = new ChunkReader(arffPath, chunkRows)) {
+			structure = reader.structure();
+		}
+		System.out.println("ChunkedPipeline reading " + sourcePath + " in chunks of " + chunkRows + " rows");
+
+		// Layouts and statistics, in step order
+		for (int s = 0; s < steps.size(); s++) {
+			Step step = steps.get(s);
+			if (step.filter != null) {
+				step.filter.init(structure);
+				int before = s;
+				for (int p = 0; p < step.filter.statisticsPasses(); p++) {
+					int pass = p;
+					Profiler.measure(step.name + " statistics", () -> {
+						read(arffPath, before, chunk -> step.filter.observe(chunk, pass));
+						step.filter.endPass(pass);
+						return null;
+					});
+				}
+			}
+			step.layout = step.filter != null ? step.filter.outputStructure() : structure;
+			if (step.transforms()) {
+				structure = step.layout;
+			}
+		}
+
+		List<AbstractFileSaver> savers = new ArrayList<>();
+		for (Step step : steps) {
+			step.rows = 0;
+			step.savers.clear();
+			open(step, new ArffSaver(), step.arffPath, savers);
+			open(step, new CSVSaver(), step.csvPath, savers);
+		}
+		Profiler.measure("write", () -> {
+			read(arffPath, steps.size(), null);
+			for (AbstractFileSaver saver : savers) {
+				saver.writeIncremental(null);
+			}
+			return null;
+		});
+
+		long rows = 0;
+		for (Step step : steps) {
+			if (step.transforms()) {
+				rows = step.rows;
+			}
+			String layout = step.filter != null ? ", " + step.layout.numAttributes() + " attributes" : "";
+			System.out.println("Stage " + step.name + ": " + step.rows + " instances" + layout);
+			if (step.filter != null && step.filter.summary() != null) {
+				System.out.println(step.filter.summary());
+			}
+			if (step.arffPath != null) {
+				System.out.println("ARFF file saved at: " + step.arffPath);
+			}
+			if (step.csvPath != null) {
+				System.out.println("CSV file saved at: " + step.csvPath);
+			}
+		}
+		return rows;
+	}
+
+	// One pass over the source through the first `steps` steps. With a consumer,
+	// it receives the rows after them (a statistics pass); without, every step
+	// runs and writes its outputs.
+	private void read(String arffPath, int steps, ChunkConsumer consumer) throws Exception {
+		for (int s = 0; s < steps; s++) {
+			if (this.steps.get(s).filter != null) {
+				this.steps.get(s).filter.rewind();
+			}
+		}
+		try (ChunkReader reader = new ChunkReader(arffPath, chunkRows)) {
+			Instances chunk;
+			while ((chunk = reader.next()) != null) {
+				for (int s = 0; s < steps; s++) {
+					Step step = this.steps.get(s);
+					if (step.branch && consumer != null) {
+						continue;
+					}
+					Instances rows = step.filter != null ? step.filter.process(chunk) : chunk;
+					if (step.transforms()) {
+						chunk = rows;
+					}
+					if (consumer == null) {
+						step.rows += rows.numInstances();
+						for (AbstractFileSaver saver : step.savers) {
+							for (int i = 0; i < rows.numInstances(); i++) {
+								saver.writeIncremental(rows.instance(i));
+							}
+						}
+					}
+				}
+				if (consumer != null) {
+					consumer.accept(chunk);
+				}
+			}
+		}
+	}
+
+	private static void open(Step step, AbstractFileSaver saver, String path, List<AbstractFileSaver> savers)
+			throws Exception {
+		if (path == null) {
+			return;
+		}
+		saver.setRetrieval(AbstractSaver.INCREMENTAL);
+		saver.setStructure(step.layout);
+		saver.setFile(new File(path));
+		step.savers.add(saver);
+		savers.add(saver);
+	}
+}
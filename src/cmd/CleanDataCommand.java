@@ -1,126 +1,110 @@
 package cmd;
 
+import util.ChunkedFilter;
+import util.DuplicateFilter;
+import util.OneHotEncoder;
+import util.OutlierCapper;
+import util.Profiler;
 import weka.core.Instances;
 import weka.core.converters.ArffSaver;
 import weka.core.converters.CSVSaver;
 import weka.core.converters.ConverterUtils.DataSource;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.NominalToBinary;
 
 import java.io.File;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 
-public class CleanDataCommand implements Command {
-	// Các đường dẫn đến file đã làm sạch từ HandleMissingDataCommand
+public class CleanDataCommand implements FileCommand, Stage {
+	// The cleaned dataset: HandleMissingDataCommand's output without duplicates, encoded
 	public final static String CLEAN_CSV_DATASET = "data/auto-mpg-cleaned.csv";
 	public final static String CLEAN_ARFF_DATASET = "data/auto-mpg-cleaned.arff";
 	public final static String OUTLIER_HANDLED_CSV = "data/outlier_handled_auto-mpg.csv";
 	public final static String OUTLIER_HANDLED_ARFF = "data/outlier_handled_auto-mpg.arff";
+	public final static double OUTLIER_FACTOR = OutlierCapper.DEFAULT_OUTLIER_FACTOR;
+	public final static double EXTREME_FACTOR = OutlierCapper.DEFAULT_EXTREME_FACTOR;
+
+	public void run() throws Exception {
+		// Sử dụng file đã làm sạch từ HandleMissingDataCommand
+		String inputFilePath = HandleMissingDataCommand.IMPUTED_ARFF_DATASET;
+		File inputFile = new File(inputFilePath);
+		if (!inputFile.exists()) {
+			throw new FileNotFoundException("The file does not exist: " + inputFilePath);
+		}
 
-	private static final Logger logger = Logger.getLogger(CleanDataCommand.class.getName());
-
-	public void exec() {
-		try {
-			// Sử dụng file đã làm sạch từ HandleMissingDataCommand
-			String inputFilePath = CLEAN_ARFF_DATASET;
-			File inputFile = new File(inputFilePath);
-			if (!inputFile.exists()) {
-				logger.log(Level.SEVERE, "The file does not exist: " + inputFilePath);
-				return;
-			}
-
-			// Load the cleaned ARFF dataset
-			Instances dataset = DataSource.read(inputFilePath);
-			if (dataset == null) {
-				logger.log(Level.SEVERE, "Failed to load dataset. Check if the file path is correct: " + inputFilePath);
-				return;
-			}
-			System.out.println("Loaded dataset: " + dataset.relationName());
-
-			// Step 1: Remove duplicate instances
-			Instances uniqueDataset = removeDuplicates(dataset);
-			System.out.println("Duplicate rows removed, remaining instances: " + uniqueDataset.numInstances());
-
-			// Step 2: Encode categorical variables (one-hot encoding)
-			Instances encodedDataset = encodeCategoricalVariables(uniqueDataset);
-			System.out.println("Categorical variables encoded, resulting attributes: " + encodedDataset.numAttributes());
-
-			// Save encoded dataset (duplicates removed, categorical variables encoded) in ARFF and CSV
-			saveAsArff(encodedDataset, CLEAN_ARFF_DATASET);
-			saveAsCsv(encodedDataset, CLEAN_CSV_DATASET);
-
-			// Step 3: Handle outliers (capping based on IQR if needed)
-			Instances outlierHandledDataset = handleOutliers(encodedDataset);
-			System.out.println("Outliers processed, remaining instances: " + outlierHandledDataset.numInstances());
-
-			// Save outlier-handled dataset in ARFF and CSV
-			saveAsArff(outlierHandledDataset, OUTLIER_HANDLED_ARFF);
-			saveAsCsv(outlierHandledDataset, OUTLIER_HANDLED_CSV);
-
-			System.out.println("Saved datasets in both ARFF and CSV formats after processing for duplicates, encoding, and outliers.");
-
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, "An error occurred while processing the cleaned dataset", e);
+		// Load the cleaned ARFF dataset
+		Instances dataset = DataSource.read(inputFilePath);
+		if (dataset == null) {
+			throw new IOException("Failed to load dataset. Check if the file path is correct: " + inputFilePath);
 		}
+		System.out.println("Loaded dataset: " + dataset.relationName());
+		Profiler.input(dataset);
+
+		// Steps 1 and 2: remove duplicates and encode categorical variables
+		Instances encodedDataset = apply(dataset);
+
+		// Save encoded dataset (duplicates removed, categorical variables encoded) in ARFF and CSV
+		saveAsArff(encodedDataset, CLEAN_ARFF_DATASET);
+		saveAsCsv(encodedDataset, CLEAN_CSV_DATASET);
+
+		// Step 3: Handle outliers (capping based on IQR if needed)
+		Instances outlierHandledDataset = handleOutliers(encodedDataset);
+		System.out.println("Outliers processed, remaining instances: " + outlierHandledDataset.numInstances());
+
+		// Save outlier-handled dataset in ARFF and CSV
+		saveAsArff(outlierHandledDataset, OUTLIER_HANDLED_ARFF);
+		saveAsCsv(outlierHandledDataset, OUTLIER_HANDLED_CSV);
+
+		System.out.println("Saved datasets in both ARFF and CSV formats after processing for duplicates, encoding, and outliers.");
 	}
 
-	// Method to remove duplicates from the dataset
-	private Instances removeDuplicates(Instances dataset) {
-		HashSet<String> uniqueInstances = new HashSet<>();
-		Instances filteredDataset = new Instances(dataset, 0); // Create an empty dataset with the same structure
-
-		for (int i = 0; i < dataset.numInstances(); i++) {
-			String instanceString = dataset.instance(i).toString();
-			if (!uniqueInstances.contains(instanceString)) {
-				uniqueInstances.add(instanceString); // Track unique instances
-				filteredDataset.add(dataset.instance(i)); // Add only unique instances to the new dataset
-			}
-		}
-		return filteredDataset;
+	public Instances apply(Instances dataset) throws Exception {
+		// Step 1: Remove duplicate instances
+		Instances uniqueDataset = removeDuplicates(dataset);
+		System.out.println("Duplicate rows removed, remaining instances: " + uniqueDataset.numInstances());
+
+		// Step 2: Encode categorical variables (sparse one-hot encoding)
+		Instances encodedDataset = encodeCategoricalVariables(uniqueDataset);
+		System.out.println("Categorical variables encoded, resulting attributes: " + encodedDataset.numAttributes());
+		return encodedDataset;
 	}
 
-	// Method to handle outliers based on IQR
-	private Instances handleOutliers(Instances dataset) {
-		Instances cleanedDataset = new Instances(dataset); // Copy of the dataset for modification
-
-		for (int j = 0; j < cleanedDataset.numAttributes(); j++) {
-			if (cleanedDataset.attribute(j).isNumeric()) {
-				double[] values = cleanedDataset.attributeToDoubleArray(j);
-				double q1 = calculatePercentile(values, 25);
-				double q3 = calculatePercentile(values, 75);
-				double iqr = q3 - q1;
-				double lowerBound = q1 - 1.5 * iqr;
-				double upperBound = q3 + 1.5 * iqr;
-
-				// Process outliers by capping to boundary values
-				for (int i = 0; i < cleanedDataset.numInstances(); i++) {
-					double value = cleanedDataset.instance(i).value(j);
-					if (value < lowerBound) {
-						cleanedDataset.instance(i).setValue(j, lowerBound);
-					} else if (value > upperBound) {
-						cleanedDataset.instance(i).setValue(j, upperBound);
-					}
-				}
-			}
+	// Method to remove duplicates from the dataset (hashes the raw values instead of formatting rows)
+	public Instances removeDuplicates(Instances dataset) throws Exception {
+		return new DuplicateFilter().apply(dataset);
+	}
+
+	// Method to handle outliers based on IQR (capping at 1.5 * IQR, counting extremes beyond 3 * IQR)
+	public Instances handleOutliers(Instances dataset) throws Exception {
+		OutlierCapper capper = new OutlierCapper(OUTLIER_FACTOR, EXTREME_FACTOR);
+		Instances cleanedDataset = capper.apply(dataset);
+		for (OutlierCapper.ColumnReport column : capper.report()) {
+			System.out.println(" - " + column);
 		}
 		return cleanedDataset;
 	}
 
-	// Helper method to calculate percentiles
-	private double calculatePercentile(double[] values, double percentile) {
-		Arrays.sort(values);
-		int index = (int) Math.ceil(percentile / 100.0 * values.length);
-		return values[Math.min(index, values.length - 1)];
+	// The steps of apply and handleOutliers for ChunkedPipeline
+	public ChunkedFilter chunkedRemoveDuplicates() {
+		return new DuplicateFilter();
 	}
 
-	// Method to encode categorical variables (One-hot encoding using Weka's NominalToBinary filter)
+	public ChunkedFilter chunkedEncoding() {
+		return new OneHotEncoder();
+	}
+
+	public ChunkedFilter chunkedHandleOutliers() {
+		return new OutlierCapper(OUTLIER_FACTOR, EXTREME_FACTOR);
+	}
+
+	// Method to encode categorical variables (one-hot encoding into sparse rows; attributes with
+	// more than OneHotEncoder.DEFAULT_MAX_VALUES values keep their most frequent ones plus "other")
 	private Instances encodeCategoricalVariables(Instances dataset) throws Exception {
-		NominalToBinary filter = new NominalToBinary();
-		filter.setInputFormat(dataset);
-		return Filter.useFilter(dataset, filter);
+		OneHotEncoder encoder = new OneHotEncoder();
+		Instances encodedDataset = encoder.apply(dataset);
+		if (encoder.summary() != null) {
+			System.out.println(encoder.summary());
+		}
+		return encodedDataset;
 	}
 
 	// Method to save dataset as ARFF
@@ -129,6 +113,7 @@ public class CleanDataCommand implements Command {
 		saver.setInstances(dataset);
 		saver.setFile(new File(filePath));
 		saver.writeBatch();
+		Profiler.output(dataset);
 		System.out.println("ARFF file saved at: " + filePath);
 	}
 
@@ -138,9 +123,22 @@ public class CleanDataCommand implements Command {
 		saver.setInstances(dataset);
 		saver.setFile(new File(filePath));
 		saver.writeBatch();
+		Profiler.output(dataset);
 		System.out.println("CSV file saved at: " + filePath);
 	}
 
+	public String[] inputs() {
+		return new String[] { HandleMissingDataCommand.IMPUTED_ARFF_DATASET };
+	}
+
+	public String[] outputs() {
+		return new String[] { CLEAN_ARFF_DATASET, CLEAN_CSV_DATASET, OUTLIER_HANDLED_ARFF, OUTLIER_HANDLED_CSV };
+	}
+
+	public String[] options() {
+		return new String[] { String.valueOf(OUTLIER_FACTOR), String.valueOf(EXTREME_FACTOR) };
+	}
+
 	public static void main(String[] args) {
 		CleanDataCommand cmd = new CleanDataCommand();
 		cmd.exec();
@@ -0,0 +1,94 @@
+package cmd;
+
+import java.io.PrintWriter;
+
+import util.CompiledJ48;
+import util.Loader;
+import util.ModelFile;
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.J48;
+import weka.core.Instances;
+
+// Compiles the saved J48 tree to flat arrays, checks that it predicts the same
+// class as Weka for every row of a dataset, compares the scoring speed and writes
+// the tree as a standalone Java class (GENERATED_SOURCE). A model saved by
+// ModelFile is already compiled, so only an old Java-serialized J48 can be
+// compared with Weka.
+public class CompileJ48ModelCommand implements Command {
+	public final static String GENERATED_CLASS = "J48Tree";
+	public final static String GENERATED_SOURCE = "bin/" + GENERATED_CLASS + ".java";
+	public final static int PASSES = 20;
+
+	private final String inputPath;
+
+	public CompileJ48ModelCommand() {
+		this(CleanDataCommand.CLEAN_ARFF_DATASET);
+	}
+
+	public CompileJ48ModelCommand(String inputPath) {
+		this.inputPath = inputPath;
+	}
+
+	public void exec() {
+		try {
+			Classifier model = ModelFile.read(RunJ48ClassifierCommand.MODEL_FILE).model();
+			CompiledJ48 tree = model instanceof J48 ? CompiledJ48.compile((J48) model) : (CompiledJ48) model;
+			System.out.println("Compiled " + RunJ48ClassifierCommand.MODEL_FILE + ": " + tree.size() + " nodes");
+
+			Instances data = Loader.loadArff(inputPath);
+			data.setClassIndex(tree.header().classIndex());
+			String mismatch = tree.header().equalHeadersMsg(data);
+			if (mismatch != null) {
+				throw new IllegalArgumentException(inputPath + " does not match the model's training data: " + mismatch);
+			}
+
+			if (model instanceof J48) {
+				int mismatches = 0;
+				for (int i = 0; i < data.numInstances(); i++) {
+					if (tree.classify(data.instance(i)) != (int) model.classifyInstance(data.instance(i))) {
+						mismatches++;
+					}
+				}
+				System.out.println(mismatches == 0 ? "Predictions match J48 on all " + data.numInstances() + " rows"
+						: mismatches + " of " + data.numInstances() + " predictions differ from J48");
+
+				// Best of PASSES runs over the data, after a first run to warm up
+				long weka = Long.MAX_VALUE;
+				long compiled = Long.MAX_VALUE;
+				double sink = 0;
+				for (int pass = 0; pass <= PASSES; pass++) {
+					long start = System.nanoTime();
+					for (int i = 0; i < data.numInstances(); i++) {
+						sink += model.classifyInstance(data.instance(i));
+					}
+					long middle = System.nanoTime();
+					for (int i = 0; i < data.numInstances(); i++) {
+						sink += tree.classify(data.instance(i));
+					}
+					long end = System.nanoTime();
+					if (pass > 0) {
+						weka = Math.min(weka, middle - start);
+						compiled = Math.min(compiled, end - middle);
+					}
+				}
+				System.out.printf("J48: %.1f ns/row, compiled: %.1f ns/row (%.1fx)%s%n", (double) weka / data.numInstances(),
+						(double) compiled / data.numInstances(), (double) weka / Math.max(1, compiled), sink < 0 ? " " : "");
+			} else {
+				System.out.println(RunJ48ClassifierCommand.MODEL_FILE + " was saved compiled, there is no J48 to compare with");
+			}
+
+			try (PrintWriter writer = new PrintWriter(GENERATED_SOURCE)) {
+				writer.print(tree.toJavaSource(GENERATED_CLASS));
+			}
+			System.out.println("Generated source saved at: " + GENERATED_SOURCE);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Optional argument: the ARFF file to check the compiled tree on
+	public static void main(String args[]) {
+		Command cmd = args.length > 0 ? new CompileJ48ModelCommand(args[0]) : new CompileJ48ModelCommand();
+		cmd.exec();
+	}
+}
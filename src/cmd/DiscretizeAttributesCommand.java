@@ -1,41 +1,78 @@
 package cmd;
 
+import util.ChunkedFilter;
+import util.Discretizer;
 import util.Loader;
 import util.Saver;
 import weka.core.Instances;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Discretize;
 
-public class DiscretizeAttributesCommand implements Command {
+public class DiscretizeAttributesCommand implements FileCommand, Stage {
 	public final static String DISCRETIZED_CSV_DATASET = "data/discretized_HepatitisCdata.csv";
 
 	public final static String DISCRETIZED_ARFF_DATASET = "data/discretized_HepatitisCdata.arff";
 
-	public void exec() {
+	private final Discretizer.Method method;
+	private final String classAttribute;
+
+	// Equal-width bins, up to 10 per attribute chosen by entropy: the binning of
+	// Weka's Discretize -O -B 10 -M -1.0 -R first-last -precision 6
+	public DiscretizeAttributesCommand() {
+		this(Discretizer.Method.EQUAL_WIDTH, null);
+	}
+
+	// classAttribute: the nominal class for MDL, ignored by the other methods
+	public DiscretizeAttributesCommand(Discretizer.Method method, String classAttribute) {
+		this.method = method;
+		this.classAttribute = classAttribute;
+	}
+
+	public void run() throws Exception {
 		Instances dataset = Loader.loadArff(CleanDataCommand.CLEAN_ARFF_DATASET);
 
-		try {
-			Discretize discretize = new Discretize();
-			discretize
-					.setOptions(new String[] {
-							"-O",
-							"-B", "10",
-							"-M", "-1.0",
-							"-R", "first-last",
-							"-precision", "6",
-					});
-			discretize.setInputFormat(dataset);
-			Instances discretizedData = Filter.useFilter(dataset, discretize);
-
-			Saver.saveArff(DISCRETIZED_ARFF_DATASET, discretizedData);
-			Saver.saveCsv(DISCRETIZED_CSV_DATASET, discretizedData);
-		} catch (Exception e) {
-			e.printStackTrace();
+		Instances discretizedData = apply(dataset);
+
+		Saver.saveArff(DISCRETIZED_ARFF_DATASET, discretizedData);
+		Saver.saveCsv(DISCRETIZED_CSV_DATASET, discretizedData);
+	}
+
+	public Instances apply(Instances dataset) throws Exception {
+		return discretizer().apply(dataset);
+	}
+
+	// The same binning for ChunkedPipeline, with the cut points of the whole input
+	public ChunkedFilter chunked() {
+		return discretizer();
+	}
+
+	private Discretizer discretizer() {
+		switch (method) {
+		case EQUAL_FREQUENCY:
+			return Discretizer.equalFrequency(Discretizer.DEFAULT_BINS);
+		case MDL:
+			return Discretizer.mdl(classAttribute);
+		default:
+			return Discretizer.equalWidth(Discretizer.DEFAULT_BINS, true);
 		}
 	}
 
+	public String[] inputs() {
+		return new String[] { CleanDataCommand.CLEAN_ARFF_DATASET };
+	}
+
+	public String[] outputs() {
+		return new String[] { DISCRETIZED_ARFF_DATASET, DISCRETIZED_CSV_DATASET };
+	}
+
+	public String[] options() {
+		return new String[] { method.name(), classAttribute };
+	}
+
+	// Optional arguments: equal-width | equal-frequency | mdl, then the class attribute for mdl
 	public static void main(String args[]) {
-		Command cmd = new DiscretizeAttributesCommand();
+		Command cmd = args.length > 0
+				? new DiscretizeAttributesCommand(Discretizer.Method.valueOf(args[0].toUpperCase().replace('-', '_')),
+						args.length > 1 ? args[1] : null)
+				: new DiscretizeAttributesCommand();
 		cmd.exec();
 	}
 }
@@ -1,17 +1,10 @@
 package cmd;
 
+import util.CfsSubsetSearch;
+import util.Saver;
 import weka.core.Instances;
 import weka.core.AttributeStats;
-import weka.core.Utils;
 import weka.core.converters.ConverterUtils.DataSource;
-import weka.attributeSelection.AttributeSelection;
-import weka.attributeSelection.CfsSubsetEval;
-import weka.attributeSelection.BestFirst;
-import weka.core.converters.ArffSaver;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Remove;
-
-import java.io.File;
 
 public class ExploratoryDataAnalysisAndFeatureSelection {
 
@@ -25,8 +18,8 @@ public class ExploratoryDataAnalysisAndFeatureSelection {
             System.out.println("=== Exploratory Data Analysis (EDA) ===");
             System.out.println("File ARFF: " + arffFilePath);
 
-            // Set the class index to the last attribute
-            data.setClassIndex(data.numAttributes() - 1);
+            // Set the class index to the target the features are selected for
+            data = SelectFeaturesCommand.withClass(data);
 
             // Summary of data
             System.out.println("\n1. Data Overview:");
@@ -46,48 +39,24 @@ public class ExploratoryDataAnalysisAndFeatureSelection {
                 }
             }
 
+            // Correlations between the attributes and with the target, computed once
+            // and used by both the analysis and the feature selection
+            CfsSubsetSearch search = new CfsSubsetSearch(data);
+
             // Correlation analysis for numeric attributes
             System.out.println("\n3. Correlation with Target:");
-            for (int i = 0; i < data.numAttributes() - 1; i++) {
-                if (data.attribute(i).isNumeric()) {
-                    double correlation = Utils.correlation(
-                            data.attributeToDoubleArray(i),
-                            data.attributeToDoubleArray(data.classIndex()),
-                            data.numInstances()
-                    );
-                    System.out.println(" - Correlation between " + data.attribute(i).name() + " and target: " + correlation);
-                }
-            }
-
-            // Remove string attributes before Feature Selection
-            System.out.println("\nRemoving string attributes for feature selection...");
-            Remove removeFilter = new Remove();
-            StringBuilder indicesToRemove = new StringBuilder();
             for (int i = 0; i < data.numAttributes(); i++) {
-                if (data.attribute(i).isString()) {
-                    indicesToRemove.append(i + 1).append(","); // Weka uses 1-based indexing
+                if (i != data.classIndex() && data.attribute(i).isNumeric()) {
+                    double correlation = search.classCorrelation(i);
+                    System.out.println(" - Correlation between " + data.attribute(i).name() + " and target: " + correlation);
                 }
             }
-            if (indicesToRemove.length() > 0) {
-                // Set indices to remove string attributes
-                removeFilter.setAttributeIndices(indicesToRemove.toString());
-                removeFilter.setInputFormat(data);
-                data = Filter.useFilter(data, removeFilter);
-            }
-            System.out.println("String attributes removed.");
 
             System.out.println("\n=== Feature Selection ===");
 
             // Feature selection using CfsSubsetEval and BestFirst
-            AttributeSelection selector = new AttributeSelection();
-            CfsSubsetEval evaluator = new CfsSubsetEval();
-            BestFirst search = new BestFirst();
-
-            selector.setEvaluator(evaluator);
-            selector.setSearch(search);
-            selector.SelectAttributes(data);
-
-            Instances selectedData = selector.reduceDimensionality(data);
+            int[] selected = search.search();
+            Instances selectedData = search.select(data, selected);
 
             System.out.println("Selected attributes: ");
             for (int i = 0; i < selectedData.numAttributes(); i++) {
@@ -95,11 +64,8 @@ public class ExploratoryDataAnalysisAndFeatureSelection {
             }
 
             // Save the reduced dataset with selected features
-            String selectedArffFilePath = "data/selected_features_auto-mpg.arff";
-            ArffSaver saver = new ArffSaver();
-            saver.setInstances(selectedData);
-            saver.setFile(new File(selectedArffFilePath));
-            saver.writeBatch();
+            String selectedArffFilePath = SelectFeaturesCommand.SELECTED_FEATURES_ARFF;
+            Saver.saveArff(selectedArffFilePath, selectedData);
 
             System.out.println("Selected feature dataset saved to: " + selectedArffFilePath);
 
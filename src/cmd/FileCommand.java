@@ -0,0 +1,25 @@
+package cmd;
+
+// A command whose work is described by the files it reads, the files it writes
+// and its options, so that a CachedCommand can skip it while none of them has
+// changed and a Scheduler can order it after the commands writing its inputs.
+// Paths are relative to the working directory, as the constants they come from.
+public interface FileCommand extends Command {
+	String[] inputs();
+
+	String[] outputs();
+
+	String[] options();
+
+	// The command's work, throwing its failures so that a Scheduler can stop the run
+	void run() throws Exception;
+
+	// Run on its own, the command reports its failure
+	default void exec() {
+		try {
+			run();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -1,124 +1,59 @@
 package cmd;
 
-import util.Converter;
+import util.ChunkedFilter;
+import util.Imputer;
+import util.Loader;
+import util.Saver;
 import weka.core.Instances;
-import weka.core.converters.ArffLoader;
-import java.io.*;
-import java.util.*;
 
-public class HandleMissingDataCommand implements Command {
+public class HandleMissingDataCommand implements FileCommand, Stage {
 	private static final double MISSING_VALUE_THRESHOLD = 0.1; // 10% threshold
+	private static final Imputer.Strategy IMPUTATION_STRATEGY = Imputer.Strategy.MEAN;
 	private static final String ARFF_FILE_PATH = "data/removed_outliers_auto-mpg.arff"; // File sau khi xử lý outliers
-	private static final String CLEANED_CSV_FILE = "data/auto-mpg-cleaned.csv";
-	private static final String CLEANED_ARFF_FILE = "data/auto-mpg-cleaned.arff";
+	// Read by CleanDataCommand, which writes the cleaned dataset
+	public final static String IMPUTED_CSV_DATASET = "data/auto-mpg-imputed.csv";
+	public final static String IMPUTED_ARFF_DATASET = "data/auto-mpg-imputed.arff";
 
-	public void exec() {
-		List<String[]> data = new ArrayList<>();
-		int columnCount = 0;
+	public void run() throws Exception {
+		// Load data from the ARFF file that has been processed for outliers
+		Instances dataset = Loader.loadArff(ARFF_FILE_PATH);
 
-		try {
-			// Load data from the ARFF file that has been processed for outliers
-			ArffLoader loader = new ArffLoader();
-			loader.setSource(new File(ARFF_FILE_PATH));
-			Instances dataset = loader.getDataSet();
+		Instances cleaned = apply(dataset);
 
-			// Convert Instances to CSV data
-			columnCount = dataset.numAttributes();
-			String[] headers = new String[columnCount];
-			for (int i = 0; i < columnCount; i++) {
-				headers[i] = dataset.attribute(i).name();
-			}
-			data.add(headers);
-
-			// Prepare structures for counting non-missing values and calculating sums
-			int[] missingCounts = new int[columnCount];
-			int[] validCounts = new int[columnCount];
-			double[] sums = new double[columnCount];
-
-			// Collect data and calculate missing value counts and sums for each column
-			for (int i = 0; i < dataset.numInstances(); i++) {
-				String[] row = new String[columnCount];
-				for (int j = 0; j < columnCount; j++) {
-					if (dataset.instance(i).isMissing(j)) {
-						row[j] = "?";
-						missingCounts[j]++;
-					} else {
-						row[j] = dataset.instance(i).toString(j);
-						try {
-							double numericValue = Double.parseDouble(row[j]);
-							sums[j] += numericValue;
-							validCounts[j]++;
-						} catch (NumberFormatException e) {
-							// Ignore non-numeric fields
-						}
-					}
-				}
-				data.add(row);
-			}
-
-			// Calculate means for numeric columns
-			double[] means = new double[columnCount];
-			for (int i = 0; i < columnCount; i++) {
-				if (validCounts[i] > 0) {
-					means[i] = sums[i] / validCounts[i];
-				}
-			}
-
-			// Filter or replace missing values based on the threshold
-			List<String[]> cleanedData = new ArrayList<>();
-			cleanedData.add(headers); // Add header
-
-			for (int i = 1; i < data.size(); i++) { // Start from 1 to skip header
-				String[] row = data.get(i);
-				boolean rowHasTooManyMissingValues = false;
-
-				for (int j = 0; j < row.length; j++) {
-					String cell = row[j].trim();
-					if (cell.equals("?")) {
-						double missingPercentage = (double) missingCounts[j] / (data.size() - 1); // -1 to exclude header
-						if (missingPercentage < MISSING_VALUE_THRESHOLD) {
-							rowHasTooManyMissingValues = true; // Mark row for removal
-							break;
-						} else if (validCounts[j] > 0) {
-							// Replace missing value with mean if numeric
-							row[j] = String.valueOf(means[j]);
-						} else {
-							// If no valid data in column, leave as "NaN"
-							row[j] = "NaN";
-						}
-					}
-				}
+		// Write cleaned data to CSV and ARFF
+		Saver.saveCsv(IMPUTED_CSV_DATASET, cleaned);
+		Saver.saveArff(IMPUTED_ARFF_DATASET, cleaned);
+		System.out.println("ARFF file generated: " + IMPUTED_ARFF_DATASET);
+	}
 
-				if (!rowHasTooManyMissingValues) {
-					cleanedData.add(row); // Add row if it does not have to be removed
-				}
-			}
+	public Instances apply(Instances dataset) throws Exception {
+		// Rows missing a value in a rarely-missing column are dropped; missing values
+		// in the other columns are imputed (numeric: mean, nominal: mode)
+		Imputer imputer = new Imputer(MISSING_VALUE_THRESHOLD, IMPUTATION_STRATEGY);
+		Instances cleaned = imputer.apply(dataset);
+		System.out.println(imputer.summary());
+		return cleaned;
+	}
 
-			// Write cleaned data to a new CSV file
-			try (BufferedWriter bw = new BufferedWriter(new FileWriter(CLEANED_CSV_FILE))) {
-				for (String[] row : cleanedData) {
-					bw.write(String.join(",", row));
-					bw.newLine();
-				}
-			}
+	// The same imputation for ChunkedPipeline, which prints its summary. KNN
+	// compares every pair of rows, so it has no chunked form.
+	public ChunkedFilter chunked() {
+		if (IMPUTATION_STRATEGY == Imputer.Strategy.KNN) {
+			throw new IllegalArgumentException("KNN imputation needs the whole dataset in memory");
+		}
+		return new Imputer(MISSING_VALUE_THRESHOLD, IMPUTATION_STRATEGY);
+	}
 
-			// Convert cleaned CSV to ARFF
-			convertCsvToArff(CLEANED_CSV_FILE, CLEANED_ARFF_FILE);
+	public String[] inputs() {
+		return new String[] { ARFF_FILE_PATH };
+	}
 
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	public String[] outputs() {
+		return new String[] { IMPUTED_CSV_DATASET, IMPUTED_ARFF_DATASET };
 	}
 
-	// Method to invoke CSV to ARFF conversion
-	private void convertCsvToArff(String csvFilePath, String arffFilePath) {
-		try {
-			Converter.csv2Arff(csvFilePath, arffFilePath);
-			System.out.println("ARFF file generated: " + arffFilePath);
-		} catch (IOException e) {
-			System.err.println("Error converting CSV to ARFF: " + e.getMessage());
-			e.printStackTrace();
-		}
+	public String[] options() {
+		return new String[] { String.valueOf(MISSING_VALUE_THRESHOLD), IMPUTATION_STRATEGY.name() };
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,230 @@
+package cmd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import util.Converter;
+import util.Loader;
+import util.Parallel;
+import util.Profiler;
+import util.Saver;
+import util.StageCache;
+import weka.core.Instances;
+
+// Chains Stages in memory: the source is loaded once and every stage receives
+// the previous stage's output directly. Nothing is written to disk except at
+// checkpoints and branch outputs chosen by the caller.
+//
+// Consecutive checkpoints and branches all read the same dataset, which none
+// of them changes, so they run concurrently.
+public class Pipeline {
+	private interface Source {
+		Instances load() throws Exception;
+	}
+
+	private static class Step {
+		final String name;
+		final Stage stage;
+		final boolean branch;
+		final String arffPath;
+		final String csvPath;
+
+		Step(String name, Stage stage, boolean branch, String arffPath, String csvPath) {
+			this.name = name;
+			this.stage = stage;
+			this.branch = branch;
+			this.arffPath = arffPath;
+			this.csvPath = csvPath;
+		}
+	}
+
+	private final String sourcePath;
+	private final Source source;
+	private final List<Step> steps = new ArrayList<>();
+
+	private Pipeline(String sourcePath, Source source) {
+		this.sourcePath = sourcePath;
+		this.source = source;
+	}
+
+	public static Pipeline fromCsv(String csvPath) {
+		return new Pipeline(csvPath, () -> Converter.csv2Instances(csvPath));
+	}
+
+	public static Pipeline fromArff(String arffPath) {
+		return new Pipeline(arffPath, () -> Loader.loadArff(arffPath));
+	}
+
+	// Replaces the current dataset with the stage's output
+	public Pipeline then(Stage stage) {
+		return then(nameOf(stage), stage);
+	}
+
+	public Pipeline then(String name, Stage stage) {
+		steps.add(new Step(name, stage, false, null, null));
+		return this;
+	}
+
+	// Persists the current dataset; either path may be null
+	public Pipeline checkpoint(String arffPath, String csvPath) {
+		steps.add(new Step("checkpoint", null, false, arffPath, csvPath));
+		return this;
+	}
+
+	// Runs a side stage on the current dataset and saves its output (if paths are
+	// given) without changing what the following stages receive
+	public Pipeline branch(Stage stage, String arffPath, String csvPath) {
+		return branch(nameOf(stage), stage, arffPath, csvPath);
+	}
+
+	public Pipeline branch(String name, Stage stage, String arffPath, String csvPath) {
+		steps.add(new Step(name, stage, true, arffPath, csvPath));
+		return this;
+	}
+
+	// The run and each of its steps are measured by the Profiler, with their input and output sizes
+	public Instances run() throws Exception {
+		return Profiler.measure("Pipeline " + sourcePath, () -> runSteps(null));
+	}
+
+	// Like run(), without redoing what is already on disk. A step's fingerprint
+	// covers the source file's content and the name, class and options
+	// (FileCommand stages) of every stage up to it. Checkpoints and branches
+	// whose outputs were written with the current fingerprint are skipped; the
+	// run starts from the last such checkpoint before the first stale step,
+	// loaded from its ARFF file, and stops after the last stale step. A branch
+	// without paths counts as writing the outputs its FileCommand declares.
+	public void runIncremental(StageCache cache) throws Exception {
+		Profiler.measure("Pipeline " + sourcePath, () -> runSteps(cache));
+	}
+
+	private Instances runSteps(StageCache cache) throws Exception {
+		int n = steps.size();
+		String[] fingerprints = new String[n];
+		boolean[] upToDate = new boolean[n];
+		int resume = -1;
+		int last = n - 1;
+		if (cache != null) {
+			String chain = cache.fingerprint(Pipeline.class, new String[] { sourcePath }, new String[0]);
+			int firstStale = -1;
+			last = -1;
+			for (int i = 0; i < n; i++) {
+				Step step = steps.get(i);
+				String stage = step.stage == null ? "" : cache.fingerprint(step.stage.getClass(), new String[0], optionsOf(step.stage));
+				String fingerprint = StageCache.hash(chain, step.name, stage);
+				if (step.stage != null && !step.branch) {
+					// The dataset changes: so do the fingerprints of the following steps
+					chain = fingerprint;
+					continue;
+				}
+				fingerprints[i] = fingerprint;
+				upToDate[i] = cache.upToDate(recordName(step), fingerprint, outputsOf(step));
+				if (!upToDate[i]) {
+					firstStale = firstStale < 0 ? i : firstStale;
+					last = i;
+				} else if (step.stage == null && step.arffPath != null && firstStale < 0) {
+					resume = i;
+				}
+			}
+			if (last < 0) {
+				System.out.println("Pipeline " + sourcePath + " is up to date, skipped");
+				return null;
+			}
+		}
+
+		Step checkpoint = resume >= 0 ? steps.get(resume) : null;
+		Instances dataset = Profiler.measure("load", () -> {
+			Instances loaded = checkpoint != null ? Loader.loadArff(checkpoint.arffPath) : source.load();
+			Profiler.output(loaded);
+			return loaded;
+		});
+		System.out.println("Pipeline loaded " + (checkpoint != null ? checkpoint.arffPath : sourcePath) + ": "
+				+ dataset.numInstances() + " instances");
+
+		for (int i = resume + 1; i <= last;) {
+			Step step = steps.get(i);
+			if (step.stage != null && !step.branch) {
+				Instances input = dataset;
+				dataset = Profiler.measure(step.name, () -> {
+					Profiler.input(input);
+					Instances result = step.stage.apply(input);
+					Profiler.output(result);
+					return result;
+				});
+				System.out.println("Stage " + step.name + ": " + dataset.numInstances() + " instances, "
+						+ dataset.numAttributes() + " attributes");
+				i++;
+				continue;
+			}
+
+			// Checkpoints and branches only read the dataset: the consecutive ones run concurrently
+			int from = i;
+			while (i <= last && (steps.get(i).stage == null || steps.get(i).branch)) {
+				i++;
+			}
+			Instances input = dataset;
+			Profiler.Measurement parent = Profiler.current();
+			Parallel.forEach(i - from, s -> {
+				Step side = steps.get(from + s);
+				if (upToDate[from + s]) {
+					System.out.println("Stage " + side.name + " is up to date, skipped");
+					return;
+				}
+				Profiler.measure(parent, side.name, () -> {
+					Profiler.input(input);
+					Instances result = side.stage == null ? input : side.stage.apply(input);
+					if (side.stage != null) {
+						Profiler.output(result);
+					}
+					save(result, side);
+					return null;
+				});
+				if (cache != null && fingerprints[from + s] != null) {
+					cache.record(recordName(side), fingerprints[from + s], outputsOf(side));
+				}
+			});
+		}
+		return dataset;
+	}
+
+	// Where the cache keeps a checkpoint or branch's last run
+	private String recordName(Step step) {
+		return "Pipeline " + sourcePath + " > " + step.name + " > " + String.join(",", outputsOf(step));
+	}
+
+	private static String[] outputsOf(Step step) {
+		if (step.arffPath == null && step.csvPath == null) {
+			return step.stage instanceof FileCommand ? ((FileCommand) step.stage).outputs() : new String[0];
+		}
+		List<String> outputs = new ArrayList<>();
+		if (step.arffPath != null) {
+			outputs.add(step.arffPath);
+		}
+		if (step.csvPath != null) {
+			outputs.add(step.csvPath);
+		}
+		return outputs.toArray(new String[0]);
+	}
+
+	private static String[] optionsOf(Stage stage) {
+		return stage instanceof FileCommand ? ((FileCommand) stage).options() : new String[0];
+	}
+
+	private static void save(Instances dataset, Step step) {
+		if (dataset == null) {
+			return;
+		}
+		if (step.arffPath != null) {
+			Saver.saveArff(step.arffPath, dataset);
+			System.out.println("ARFF file saved at: " + step.arffPath);
+		}
+		if (step.csvPath != null) {
+			Saver.saveCsv(step.csvPath, dataset);
+			System.out.println("CSV file saved at: " + step.csvPath);
+		}
+	}
+
+	private static String nameOf(Stage stage) {
+		return stage.getClass().getSimpleName();
+	}
+}
@@ -0,0 +1,40 @@
+package cmd;
+
+import util.Profiler;
+
+// Runs a command under the Profiler; the rows and attributes it loads and saves
+// through Loader and Saver are recorded with its timings
+public class ProfiledCommand implements Command {
+	private final Command command;
+
+	public ProfiledCommand(Command command) {
+		this.command = command;
+	}
+
+	public void exec() {
+		String name = CachedCommand.nameOf(command);
+		if (command instanceof FileCommand) {
+			// FileCommand.exec would catch a failure before the Profiler records it,
+			// so run() is measured and the failure reported here instead
+			try {
+				Profiler.measure(name, () -> {
+					((FileCommand) command).run();
+					return null;
+				});
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		try {
+			Profiler.measure(name, () -> {
+				command.exec();
+				return null;
+			});
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
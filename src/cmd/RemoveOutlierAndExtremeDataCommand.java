@@ -1,38 +1,58 @@
 package cmd;
 
+import util.ChunkedFilter;
+import util.OutlierDetector;
 import weka.core.Instances;
-import weka.core.converters.ArffSaver;
-import weka.core.converters.ConverterUtils.DataSource;
-import java.io.File;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
-public class RemoveOutlierAndExtremeDataCommand implements Command {
+public class RemoveOutlierAndExtremeDataCommand implements FileCommand, Stage {
 	public static final String REMOVED_OUTLIER_ARFF_DATASET = "data/removed_outliers_auto-mpg.arff";
-	private static final Logger logger = Logger.getLogger(RemoveOutlierAndExtremeDataCommand.class.getName());
-
-	public void exec() {
-		try {
-			// Load the initial dataset
-			Instances dataset = DataSource.read("data/auto-mpg.arff"); // Adjust path as necessary
-			if (dataset == null) {
-				logger.log(Level.SEVERE, "Failed to load dataset. Check if the file path is correct.");
-				return;
-			}
-
-			// Outlier handling logic goes here
-			// For demonstration, assuming dataset is already cleaned of outliers
-
-			// Save the outlier-handled dataset
-			ArffSaver saver = new ArffSaver();
-			saver.setInstances(dataset);
-			saver.setFile(new File(REMOVED_OUTLIER_ARFF_DATASET));
-			saver.writeBatch();
-			System.out.println("Outlier-processed dataset saved to: " + REMOVED_OUTLIER_ARFF_DATASET);
-
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, "An error occurred while processing outliers in the dataset", e);
+
+	// Same factors as the InterquartileRange -O3.0 -E6.0 run on the Hepatitis data
+	private final OutlierDetector.Method method = OutlierDetector.Method.IQR;
+	private final double outlierFactor = 3.0;
+	private final double extremeFactor = 6.0;
+
+	public void run() throws Exception {
+		// Stream the initial dataset through the detector, rows with outliers or extreme values are dropped
+		OutlierDetector detector = detector();
+		detector.filter(OriginalCsv2ArffCommand.ORIGINAL_ARFF_DATASET, REMOVED_OUTLIER_ARFF_DATASET);
+		report(detector);
+		System.out.println("Outlier-processed dataset saved to: " + REMOVED_OUTLIER_ARFF_DATASET);
+	}
+
+	public Instances apply(Instances dataset) throws Exception {
+		OutlierDetector detector = detector();
+		Instances outlierHandled = detector.apply(dataset);
+		report(detector);
+		return outlierHandled;
+	}
+
+	// The same detector for ChunkedPipeline, which prints its summary
+	public ChunkedFilter chunked() {
+		return detector();
+	}
+
+	private OutlierDetector detector() {
+		return new OutlierDetector(method, OutlierDetector.Action.REMOVE, outlierFactor, extremeFactor);
+	}
+
+	private void report(OutlierDetector detector) {
+		for (String bounds : detector.bounds()) {
+			System.out.println(" - " + bounds);
 		}
+		System.out.println(detector.summary());
+	}
+
+	public String[] inputs() {
+		return new String[] { OriginalCsv2ArffCommand.ORIGINAL_ARFF_DATASET };
+	}
+
+	public String[] outputs() {
+		return new String[] { REMOVED_OUTLIER_ARFF_DATASET };
+	}
+
+	public String[] options() {
+		return new String[] { method.name(), String.valueOf(outlierFactor), String.valueOf(extremeFactor) };
 	}
 
 	public static void main(String[] args) {
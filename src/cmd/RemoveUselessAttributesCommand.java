@@ -1,30 +1,69 @@
 package cmd;
 
+import util.ChunkedFilter;
+import util.ChunkedWekaFilter;
+import util.ColumnStore;
 import util.Loader;
 import util.Saver;
 import weka.core.Instances;
-import weka.filters.Filter;
+import weka.core.Range;
 import weka.filters.unsupervised.attribute.Remove;
 
-public class RemoveUselessAttributesCommand implements Command {
+public class RemoveUselessAttributesCommand implements FileCommand, Stage {
 	public final static String REMOVED_REDUNDANCY_CSV_DATASET = "data/removed_redundancy_HepatitisCdata.csv";
 
 	public final static String REMOVED_REDUNDANCY_ARFF_DATASET = "data/removed_redundancy_HepatitisCdata.arff";
 
-	public void exec() {
+	// Remove options: the first attribute carries no information
+	public final static String[] OPTIONS = { "-R", "1" };
+
+	public void run() throws Exception {
 		Instances dataset = Loader.loadArff(OriginalCsv2ArffCommand.ORIGINAL_ARFF_DATASET);
 
-		try {
-			Remove remove = new Remove();
-			remove.setOptions(new String[] { "-R", "1" });
-			remove.setInputFormat(dataset);
-			Instances newData = Filter.useFilter(dataset, remove);
+		Instances newData = apply(dataset);
+
+		Saver.saveArff(REMOVED_REDUNDANCY_ARFF_DATASET, newData);
+		Saver.saveCsv(REMOVED_REDUNDANCY_CSV_DATASET, newData);
+	}
+
+	// Remove's selection as a projection of the columns: no values are copied
+	// once the dataset is column-backed (ColumnStore)
+	public Instances apply(Instances dataset) throws Exception {
+		Remove remove = remove();
+		Range range = new Range(remove.getAttributeIndices());
+		range.setInvert(remove.getInvertSelection());
+		range.setUpper(dataset.numAttributes() - 1);
+		ColumnStore kept = ColumnStore.of(dataset).remove(range.getSelection());
 
-			Saver.saveArff(REMOVED_REDUNDANCY_ARFF_DATASET, newData);
-			Saver.saveCsv(REMOVED_REDUNDANCY_CSV_DATASET, newData);
-		} catch (Exception e) {
-			e.printStackTrace();
+		// Named as Filter names Remove's output
+		StringBuilder relation = new StringBuilder(dataset.relationName() + "-" + Remove.class.getName());
+		for (String option : remove.getOptions()) {
+			relation.append(option.trim());
 		}
+		return kept.withRelationName(relation.toString()).toInstances();
+	}
+
+	// The same removal for ChunkedPipeline
+	public ChunkedFilter chunked() throws Exception {
+		return new ChunkedWekaFilter(remove());
+	}
+
+	private Remove remove() throws Exception {
+		Remove remove = new Remove();
+		remove.setOptions(OPTIONS.clone());
+		return remove;
+	}
+
+	public String[] inputs() {
+		return new String[] { OriginalCsv2ArffCommand.ORIGINAL_ARFF_DATASET };
+	}
+
+	public String[] outputs() {
+		return new String[] { REMOVED_REDUNDANCY_ARFF_DATASET, REMOVED_REDUNDANCY_CSV_DATASET };
+	}
+
+	public String[] options() {
+		return OPTIONS.clone();
 	}
 
 	public static void main(String args[]) {
@@ -0,0 +1,67 @@
+package cmd;
+
+import java.util.List;
+import java.util.Random;
+
+import util.Experiment;
+import util.Loader;
+import util.ModelFile;
+import util.Printer;
+import weka.core.Instances;
+
+public class RunExperimentCommand implements FileCommand {
+	// Class name, options and model file of each classifier to compare
+	public final static String[][] CLASSIFIERS = {
+			{ "weka.classifiers.rules.OneR", "", RunOneRClassifierCommand.MODEL_FILE },
+			{ "weka.classifiers.trees.J48", "-C 0.25 -M 2", RunJ48ClassifierCommand.MODEL_FILE },
+			{ "weka.classifiers.bayes.NaiveBayes", "-K", RunNaiveBayesClassifierCommand.MODEL_FILE },
+	};
+
+	public void run() throws Exception {
+		Instances dataset = Loader.loadArff(CleanDataCommand.CLEAN_ARFF_DATASET);
+		dataset.setClassIndex(0);
+
+		Experiment experiment = new Experiment();
+		for (String[] classifier : CLASSIFIERS) {
+			experiment.add(classifier[0], classifier[1]);
+		}
+		List<Experiment.Result> results = experiment.run(dataset, 10, new Random(1));
+
+		for (int i = 0; i < results.size(); i++) {
+			Experiment.Result result = results.get(i);
+			System.out.println("=== " + result.name() + " Model ===\n");
+			System.out.println(result.model);
+			Printer.printConfusionMatrix(result.eval);
+
+			ModelFile.write(CLASSIFIERS[i][2], result.model, new Instances(dataset, 0));
+		}
+		Printer.printComparisonTable(results);
+	}
+
+	public String[] inputs() {
+		return new String[] { CleanDataCommand.CLEAN_ARFF_DATASET };
+	}
+
+	public String[] outputs() {
+		String[] models = new String[CLASSIFIERS.length];
+		for (int i = 0; i < CLASSIFIERS.length; i++) {
+			models[i] = CLASSIFIERS[i][2];
+		}
+		return models;
+	}
+
+	// The class name and options of every classifier
+	public String[] options() {
+		String[] options = new String[2 * CLASSIFIERS.length];
+		for (int i = 0; i < CLASSIFIERS.length; i++) {
+			options[2 * i] = CLASSIFIERS[i][0];
+			options[2 * i + 1] = CLASSIFIERS[i][1];
+		}
+		return options;
+	}
+
+	public static void main(String args[]) {
+		Command cmd = new RunExperimentCommand();
+		cmd.exec();
+	}
+}
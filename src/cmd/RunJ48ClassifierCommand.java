@@ -2,36 +2,46 @@ package cmd;
 
 import java.util.Random;
 
+import util.CrossValidator;
 import util.Loader;
+import util.ModelFile;
 import util.Printer;
 import weka.classifiers.evaluation.Evaluation;
 import weka.classifiers.trees.J48;
 import weka.core.Instances;
-import weka.core.SerializationHelper;
 
-public class RunJ48ClassifierCommand implements Command {
+public class RunJ48ClassifierCommand implements FileCommand {
+	public final static String MODEL_FILE = "bin/j48.bin";
+	public final static String[] OPTIONS = { "-C", "0.25", "-M", "2" };
 
-	public void exec() {
+	public void run() throws Exception {
 		Instances dataset = Loader.loadArff(CleanDataCommand.CLEAN_ARFF_DATASET);
 		dataset.setClassIndex(0);
 
-		try {
-			J48 tree = new J48();
-			tree.setOptions(new String[] { "-C", "0.25", "-M", "2" });
+		J48 tree = new J48();
+		tree.setOptions(OPTIONS.clone());
 
-			Evaluation eval = new Evaluation(dataset);
-			eval.crossValidateModel(tree, dataset, 10, new Random(1));
-			tree.buildClassifier(dataset);
+		// Folds and the final model are built in parallel, results match the sequential run
+		Evaluation eval = new CrossValidator().crossValidateAndBuild(tree, dataset, 10, new Random(1));
 
-			System.out.println("=== J48 Model ===\n");
-			System.out.println(tree);
-			System.out.println(tree.graph());
-			Printer.printConfusionMatrix(eval);
+		System.out.println("=== J48 Model ===\n");
+		System.out.println(tree);
+		System.out.println(tree.graph());
+		Printer.printConfusionMatrix(eval);
 
-			SerializationHelper.write("bin/j48.bin", tree);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		ModelFile.write(MODEL_FILE, tree, new Instances(dataset, 0));
+	}
+
+	public String[] inputs() {
+		return new String[] { CleanDataCommand.CLEAN_ARFF_DATASET };
+	}
+
+	public String[] outputs() {
+		return new String[] { MODEL_FILE };
+	}
+
+	public String[] options() {
+		return OPTIONS.clone();
 	}
 
 	public static void main(String args[]) {
@@ -2,34 +2,45 @@ package cmd;
 
 import java.util.Random;
 
+import util.CrossValidator;
 import util.Loader;
+import util.ModelFile;
 import util.Printer;
 import weka.classifiers.bayes.NaiveBayes;
 import weka.classifiers.evaluation.Evaluation;
 import weka.core.Instances;
-import weka.core.SerializationHelper;
 
-public class RunNaiveBayesClassifierCommand implements Command {
-	public void exec() {
+public class RunNaiveBayesClassifierCommand implements FileCommand {
+	public final static String MODEL_FILE = "bin/naivebayes.bin";
+	public final static String[] OPTIONS = { "-K" };
+
+	public void run() throws Exception {
 		Instances dataset = Loader.loadArff(CleanDataCommand.CLEAN_ARFF_DATASET);
 		dataset.setClassIndex(0);
 
-		try {
-			NaiveBayes model = new NaiveBayes();
-			model.setOptions(new String[] { "-K" });
+		NaiveBayes model = new NaiveBayes();
+		model.setOptions(OPTIONS.clone());
+
+		// Folds and the final model are built in parallel, results match the sequential run
+		Evaluation eval = new CrossValidator().crossValidateAndBuild(model, dataset, 10, new Random(1));
 
-			Evaluation eval = new Evaluation(dataset);
-			eval.crossValidateModel(model, dataset, 10, new Random(1));
-			model.buildClassifier(dataset);
+		System.out.println("=== Naive Bayes Model ===\n");
+		System.out.println(model);
+		Printer.printConfusionMatrix(eval);
+
+		ModelFile.write(MODEL_FILE, model, new Instances(dataset, 0));
+	}
 
-			System.out.println("=== Naive Bayes Model ===\n");
-			System.out.println(model);
-			Printer.printConfusionMatrix(eval);
+	public String[] inputs() {
+		return new String[] { CleanDataCommand.CLEAN_ARFF_DATASET };
+	}
+
+	public String[] outputs() {
+		return new String[] { MODEL_FILE };
+	}
 
-			SerializationHelper.write("bin/naivebayes.bin", model);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+	public String[] options() {
+		return OPTIONS.clone();
 	}
 
 	public static void main(String args[]) {
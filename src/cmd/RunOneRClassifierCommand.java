@@ -2,33 +2,43 @@ package cmd;
 
 import java.util.Random;
 
+import util.CrossValidator;
 import util.Loader;
+import util.ModelFile;
 import util.Printer;
 import weka.classifiers.evaluation.Evaluation;
 import weka.classifiers.rules.OneR;
 import weka.core.Instances;
-import weka.core.SerializationHelper;
 
-public class RunOneRClassifierCommand implements Command {
-	public void exec() {
+public class RunOneRClassifierCommand implements FileCommand {
+	public final static String MODEL_FILE = "bin/oneR.bin";
+
+	public void run() throws Exception {
 		Instances dataset = Loader.loadArff(CleanDataCommand.CLEAN_ARFF_DATASET);
 		dataset.setClassIndex(0);
 
-		try {
-			OneR model = new OneR();
+		OneR model = new OneR();
+
+		// Folds and the final model are built in parallel, results match the sequential run
+		Evaluation eval = new CrossValidator().crossValidateAndBuild(model, dataset, 10, new Random(1));
 
-			Evaluation eval = new Evaluation(dataset);
-			eval.crossValidateModel(model, dataset, 10, new Random(1));
-			model.buildClassifier(dataset);
+		System.out.println("=== OneR Model ===\n");
+		System.out.println(model);
+		Printer.printConfusionMatrix(eval);
+
+		ModelFile.write(MODEL_FILE, model, new Instances(dataset, 0));
+	}
 
-			System.out.println("=== OneR Model ===\n");
-			System.out.println(model);
-			Printer.printConfusionMatrix(eval);
+	public String[] inputs() {
+		return new String[] { CleanDataCommand.CLEAN_ARFF_DATASET };
+	}
+
+	public String[] outputs() {
+		return new String[] { MODEL_FILE };
+	}
 
-			SerializationHelper.write("bin/oneR.bin", model);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+	public String[] options() {
+		return new String[0];
 	}
 
 	public static void main(String args[]) {
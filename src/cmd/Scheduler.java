@@ -0,0 +1,191 @@
+package cmd;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import util.Parallel;
+import util.Profiler;
+
+// Runs FileCommands as a DAG of the files they declare: a command waits for
+// the commands added before it that write one of its inputs, read one of its
+// outputs or write the same file; the others run concurrently on a bounded
+// pool, so a run takes as long as its longest chain of dependent commands.
+//
+// The first failure stops the run: no other command starts (the ones running
+// are waited for) and the failure is rethrown.
+public class Scheduler {
+	private static class Node {
+		final int index;
+		final String name;
+		final FileCommand command;
+		final Set<String> inputs;
+		final Set<String> outputs;
+		final List<Node> dependents = new ArrayList<>();
+		final List<Node> dependencies = new ArrayList<>();
+
+		Node(int index, String name, FileCommand command) {
+			this.index = index;
+			this.name = name;
+			this.command = command;
+			this.inputs = normalized(command.inputs());
+			this.outputs = normalized(command.outputs());
+		}
+	}
+
+	private final int threads;
+	private final List<Node> nodes = new ArrayList<>();
+
+	public Scheduler() {
+		this(Parallel.THREADS);
+	}
+
+	public Scheduler(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public Scheduler add(FileCommand command) {
+		return add(CachedCommand.nameOf(command), command);
+	}
+
+	public Scheduler add(String name, FileCommand command) {
+		Node node = new Node(nodes.size(), name, command);
+		for (Node before : nodes) {
+			if (intersects(before.outputs, node.inputs) || intersects(before.inputs, node.outputs)
+					|| intersects(before.outputs, node.outputs)) {
+				before.dependents.add(node);
+				node.dependencies.add(before);
+			}
+		}
+		nodes.add(node);
+		return this;
+	}
+
+	// Each command with the commands it waits for
+	public String plan() {
+		StringBuilder plan = new StringBuilder();
+		for (Node node : nodes) {
+			plan.append(node.name);
+			if (!node.dependencies.isEmpty()) {
+				plan.append(" after ");
+				for (int i = 0; i < node.dependencies.size(); i++) {
+					plan.append(i > 0 ? ", " : "").append(node.dependencies.get(i).name);
+				}
+			}
+			plan.append('\n');
+		}
+		return plan.toString();
+	}
+
+	// Each command is measured by the Profiler, under the measurement run() is called in
+	public void run() throws Exception {
+		if (nodes.isEmpty()) {
+			return;
+		}
+		Profiler.Measurement parent = Profiler.current();
+		int[] waiting = new int[nodes.size()];
+		for (Node node : nodes) {
+			waiting[node.index] = node.dependencies.size();
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, nodes.size()));
+		CompletionService<Node> done = new ExecutorCompletionService<>(pool);
+		int running = 0;
+		int finished = 0;
+		int failures = 0;
+		Exception failure = null;
+		try {
+			for (Node node : nodes) {
+				if (waiting[node.index] == 0) {
+					submit(done, node, parent);
+					running++;
+				}
+			}
+			while (running > 0) {
+				Node node;
+				try {
+					node = done.take().get();
+				} catch (ExecutionException e) {
+					running--;
+					failures++;
+					if (failure == null) {
+						// Errors are not wrapped, and name no command
+						CommandFailure cause = e.getCause() instanceof CommandFailure ? (CommandFailure) e.getCause() : null;
+						System.err.println((cause != null ? cause.name : "A command") + " failed, stopping the run");
+						failure = cause != null ? cause.cause : e;
+					}
+					continue;
+				}
+				running--;
+				finished++;
+				if (failure != null) {
+					continue;
+				}
+				for (Node dependent : node.dependents) {
+					if (--waiting[dependent.index] == 0) {
+						submit(done, dependent, parent);
+						running++;
+					}
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		if (failure != null) {
+			System.err.println((nodes.size() - finished - failures) + " command(s) not run");
+			throw failure;
+		}
+	}
+
+	// Names the command a failure comes from
+	private static class CommandFailure extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		final String name;
+		final Exception cause;
+
+		CommandFailure(String name, Exception cause) {
+			super(cause);
+			this.name = name;
+			this.cause = cause;
+		}
+	}
+
+	private static void submit(CompletionService<Node> done, Node node, Profiler.Measurement parent) {
+		done.submit(() -> {
+			try {
+				Profiler.measure(parent, node.name, () -> {
+					node.command.run();
+					return null;
+				});
+			} catch (Exception e) {
+				throw new CommandFailure(node.name, e);
+			}
+			return node;
+		});
+	}
+
+	private static Set<String> normalized(String[] paths) {
+		Set<String> set = new HashSet<>();
+		for (String path : paths) {
+			set.add(Paths.get(path).normalize().toString());
+		}
+		return set;
+	}
+
+	private static boolean intersects(Set<String> a, Set<String> b) {
+		for (String path : a) {
+			if (b.contains(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
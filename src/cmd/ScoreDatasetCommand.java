@@ -0,0 +1,106 @@
+package cmd;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+
+import util.Loader;
+import util.Profiler;
+import util.ScoringService;
+import weka.core.Instances;
+
+// Scores a CSV or ARFF file with every model saved in bin/ and writes the
+// predicted labels (values for a numeric class) next to each other. The rows must have the layout of the
+// dataset the models were trained on (HEADER_ARFF).
+public class ScoreDatasetCommand implements Command {
+	public final static String HEADER_ARFF = CleanDataCommand.CLEAN_ARFF_DATASET;
+	public final static int CLASS_INDEX = 0;
+	public final static String PREDICTIONS_CSV = "data/predictions_auto-mpg.csv";
+
+	private final String inputPath;
+
+	public ScoreDatasetCommand() {
+		this(CleanDataCommand.CLEAN_ARFF_DATASET);
+	}
+
+	public ScoreDatasetCommand(String inputPath) {
+		this.inputPath = inputPath;
+	}
+
+	public void exec() {
+		try {
+			ScoringService service = createService(HEADER_ARFF);
+			Instances data = read(service, inputPath);
+			Profiler.input(data);
+
+			String[] names = service.models().toArray(new String[0]);
+			double[][] predictions = new double[names.length][];
+			for (int m = 0; m < names.length; m++) {
+				long start = System.nanoTime();
+				predictions[m] = service.score(names[m], data);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("%-12s %d rows in %.3f s (%.0f rows/s), per row: %s%n", names[m],
+						data.numInstances(), seconds, data.numInstances() / seconds,
+						service.latency(names[m]).summary());
+			}
+
+			try (PrintWriter writer = new PrintWriter(PREDICTIONS_CSV)) {
+				writer.println("row," + String.join(",", names));
+				for (int i = 0; i < data.numInstances(); i++) {
+					StringBuilder row = new StringBuilder().append(i + 1);
+					for (int m = 0; m < names.length; m++) {
+						row.append(',').append(service.format(predictions[m][i]));
+					}
+					writer.println(row);
+				}
+			}
+			System.out.println("Predictions saved at: " + PREDICTIONS_CSV);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Loads every model listed in RunExperimentCommand.CLASSIFIERS that has been saved
+	// (and, when the model records it, was trained on the header's attributes)
+	public static ScoringService createService(String headerArff) throws Exception {
+		Instances header = new Instances(Loader.loadArff(headerArff), 0);
+		header.setClassIndex(CLASS_INDEX);
+		ScoringService service = new ScoringService(header);
+		for (String[] classifier : RunExperimentCommand.CLASSIFIERS) {
+			if (!new File(classifier[2]).exists()) {
+				continue;
+			}
+			try {
+				service.load(classifier[2]);
+			} catch (IllegalArgumentException e) {
+				System.out.println("Skipping " + classifier[2] + ": " + e.getMessage());
+			}
+		}
+		if (service.models().isEmpty()) {
+			throw new IllegalStateException("No saved models in bin/, run the classifier commands first");
+		}
+		return service;
+	}
+
+	private static Instances read(ScoringService service, String path) throws Exception {
+		if (path.endsWith(".csv")) {
+			try (Reader in = new FileReader(path)) {
+				return service.parse(in, true);
+			}
+		}
+		Instances data = Loader.loadArff(path);
+		data.setClassIndex(CLASS_INDEX);
+		String mismatch = service.header().equalHeadersMsg(data);
+		if (mismatch != null) {
+			throw new IllegalArgumentException(path + " does not match " + HEADER_ARFF + ": " + mismatch);
+		}
+		return data;
+	}
+
+	// Optional argument: the CSV or ARFF file to score
+	public static void main(String args[]) {
+		Command cmd = args.length > 0 ? new ScoreDatasetCommand(args[0]) : new ScoreDatasetCommand();
+		cmd.exec();
+	}
+}
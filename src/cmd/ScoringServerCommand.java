@@ -0,0 +1,125 @@
+package cmd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import util.LatencyHistogram;
+import util.Parallel;
+import util.ScoringService;
+import weka.core.Instances;
+
+// Local HTTP endpoint over the models in bin/, loaded once at startup:
+//   POST /predict/<model>  body: CSV rows in the training layout (class optional)
+//                          reply: "prediction,<class values...>" then one line per row
+//                          (just "prediction" and the values for a numeric class)
+//   GET  /models           one model name per line
+//   GET  /stats            request and per-row model latencies (p50/p99)
+// Requests run on virtual threads when the JVM has them (JDK 21+), otherwise on
+// a fixed pool.
+public class ScoringServerCommand implements Command {
+	public final static int PORT = Integer.getInteger("dm.port", 8080);
+
+	private final LatencyHistogram requests = new LatencyHistogram();
+	private ScoringService service;
+
+	public void exec() {
+		try {
+			service = ScoreDatasetCommand.createService(ScoreDatasetCommand.HEADER_ARFF);
+			HttpServer server = HttpServer.create(new InetSocketAddress("localhost", PORT), 0);
+			server.createContext("/predict/", this::predict);
+			server.createContext("/models", exchange -> reply(exchange, 200, String.join("\n", service.models()) + "\n"));
+			server.createContext("/stats", this::stats);
+			server.setExecutor(executor());
+			server.start();
+			System.out.println("Scoring " + service.models() + " on http://localhost:" + PORT + "/predict/<model>");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void predict(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				reply(exchange, 405, "POST CSV rows to /predict/<model>\n");
+				return;
+			}
+			String model = exchange.getRequestURI().getPath().substring("/predict/".length());
+			Instances rows;
+			try (InputStream body = exchange.getRequestBody()) {
+				rows = service.parse(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+			}
+
+			// A numeric class has its value as the only column
+			boolean nominal = rows.classAttribute().isNominal();
+			StringBuilder out = new StringBuilder("prediction");
+			for (int v = 0; nominal && v < rows.classAttribute().numValues(); v++) {
+				out.append(',').append(rows.classAttribute().value(v));
+			}
+			out.append('\n');
+			for (int i = 0; i < rows.numInstances(); i++) {
+				double[] distribution = service.distribution(model, rows.instance(i));
+				if (!nominal) {
+					out.append(service.format(distribution[0])).append('\n');
+					continue;
+				}
+				int predicted = 0;
+				for (int v = 1; v < distribution.length; v++) {
+					if (distribution[v] > distribution[predicted]) predicted = v;
+				}
+				out.append(service.format(predicted));
+				for (double p : distribution) {
+					out.append(',').append(String.format("%.6f", p));
+				}
+				out.append('\n');
+			}
+			reply(exchange, 200, out.toString());
+		} catch (IllegalArgumentException e) {
+			reply(exchange, 400, e.getMessage() + "\n");
+		} catch (Exception e) {
+			reply(exchange, 500, e + "\n");
+		} finally {
+			requests.record(System.nanoTime() - start);
+		}
+	}
+
+	private void stats(HttpExchange exchange) throws IOException {
+		StringBuilder out = new StringBuilder("requests: " + requests.summary() + "\n");
+		for (String model : service.models()) {
+			out.append(model).append(": ").append(service.latency(model).summary()).append('\n');
+		}
+		reply(exchange, 200, out.toString());
+	}
+
+	private static void reply(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor is looked up at run time so the
+	// project still builds for Java 17
+	private static ExecutorService executor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(Parallel.THREADS * 4);
+		}
+	}
+
+	public static void main(String args[]) {
+		Command cmd = new ScoringServerCommand();
+		cmd.exec();
+	}
+}
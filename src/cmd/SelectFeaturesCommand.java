@@ -0,0 +1,69 @@
+package cmd;
+
+import util.CfsSubsetSearch;
+import util.Loader;
+import util.Saver;
+import weka.core.Instances;
+
+public class SelectFeaturesCommand implements FileCommand, Stage {
+	public final static String SELECTED_FEATURES_ARFF = "data/selected_features_auto-mpg.arff";
+
+	// The target the features are selected for, as in the classifier commands
+	public final static String CLASS_ATTRIBUTE = "mpg";
+
+	public void run() throws Exception {
+		Instances dataset = Loader.loadArff(CleanDataCommand.OUTLIER_HANDLED_ARFF);
+
+		Instances selectedData = apply(dataset);
+
+		Saver.saveArff(SELECTED_FEATURES_ARFF, selectedData);
+		System.out.println("Selected feature dataset saved to: " + SELECTED_FEATURES_ARFF);
+	}
+
+	// CfsSubsetEval with BestFirst over the numeric and nominal attributes: the
+	// selected ones and the class
+	public Instances apply(Instances dataset) throws Exception {
+		Instances data = withClass(dataset);
+		CfsSubsetSearch search = new CfsSubsetSearch(data);
+		int[] selected = search.search();
+
+		System.out.println("Subsets evaluated: " + search.evaluations() + ", best merit: "
+				+ String.format("%.3f", search.bestMerit()));
+		System.out.println("Selected attributes: ");
+		for (int attribute : selected) {
+			System.out.println(" - " + data.attribute(attribute).name());
+		}
+		return search.select(data, selected);
+	}
+
+	// The dataset with CLASS_ATTRIBUTE as its class, copied if that changes it
+	static Instances withClass(Instances dataset) {
+		if (dataset.attribute(CLASS_ATTRIBUTE) == null) {
+			throw new IllegalArgumentException("No attribute " + CLASS_ATTRIBUTE + " in " + dataset.relationName());
+		}
+		int classIndex = dataset.attribute(CLASS_ATTRIBUTE).index();
+		if (dataset.classIndex() == classIndex) {
+			return dataset;
+		}
+		Instances data = new Instances(dataset);
+		data.setClassIndex(classIndex);
+		return data;
+	}
+
+	public String[] inputs() {
+		return new String[] { CleanDataCommand.OUTLIER_HANDLED_ARFF };
+	}
+
+	public String[] outputs() {
+		return new String[] { SELECTED_FEATURES_ARFF };
+	}
+
+	public String[] options() {
+		return new String[] { CLASS_ATTRIBUTE };
+	}
+
+	public static void main(String args[]) {
+		Command cmd = new SelectFeaturesCommand();
+		cmd.exec();
+	}
+}
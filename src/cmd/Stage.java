@@ -0,0 +1,10 @@
+package cmd;
+
+import weka.core.Instances;
+
+// A preprocessing step that transforms a dataset in memory. Stages must not
+// modify the dataset they are given, since a Pipeline may hand the same
+// dataset to several of them.
+public interface Stage {
+	Instances apply(Instances dataset) throws Exception;
+}
@@ -0,0 +1,70 @@
+package cmd;
+
+import java.io.File;
+
+import util.ModelFile;
+import util.Printer;
+import util.StreamingTrainer;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Instances;
+
+// Folds new data into the persisted Naive Bayes model without retraining from
+// zero: the ARFF file is streamed one instance at a time with prequential
+// evaluation, and the updated model is written back. Without a saved model a
+// new updateable one (same -K options as the batch command) is started. There
+// is no default input: the cleaned dataset is what the saved model was trained
+// on, and folding it in again would count every row twice.
+public class UpdateNaiveBayesClassifierCommand implements Command {
+	public final static int CLASS_INDEX = 0;
+	public final static int REPORT_INTERVAL = 10000;
+
+	private final String arffPath;
+
+	public UpdateNaiveBayesClassifierCommand(String arffPath) {
+		this.arffPath = arffPath;
+	}
+
+	public void exec() {
+		try {
+			Instances structure = StreamingTrainer.structure(arffPath, CLASS_INDEX);
+			NaiveBayes model;
+			if (new File(RunNaiveBayesClassifierCommand.MODEL_FILE).exists()) {
+				model = (NaiveBayes) ModelFile.read(RunNaiveBayesClassifierCommand.MODEL_FILE).model();
+				String mismatch = model.getHeader().equalHeadersMsg(structure);
+				if (mismatch != null) {
+					throw new IllegalArgumentException("Saved model does not match " + arffPath + ": " + mismatch);
+				}
+				System.out.println("Updating model " + RunNaiveBayesClassifierCommand.MODEL_FILE + " with " + arffPath);
+			} else {
+				model = new NaiveBayesUpdateable();
+				model.setOptions(new String[] { "-K" });
+				model.buildClassifier(structure);
+				System.out.println("Training a new model on " + arffPath);
+			}
+
+			StreamingTrainer trainer = new StreamingTrainer(REPORT_INTERVAL);
+			Evaluation eval = trainer.train(model, arffPath, CLASS_INDEX);
+
+			System.out.println("=== Naive Bayes Model (" + trainer.instances() + " new instances) ===\n");
+			System.out.println(model);
+			System.out.println("=== Prequential evaluation ===");
+			Printer.printConfusionMatrix(eval);
+
+			ModelFile.write(RunNaiveBayesClassifierCommand.MODEL_FILE, model, model.getHeader());
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Argument: the ARFF file with the new data
+	public static void main(String args[]) {
+		if (args.length == 0) {
+			System.err.println("Usage: UpdateNaiveBayesClassifierCommand <new data ARFF file>");
+			return;
+		}
+		Command cmd = new UpdateNaiveBayesClassifierCommand(args[0]);
+		cmd.exec();
+	}
+}
@@ -1,37 +1,57 @@
 package cmd;
 
+import util.CorrelationMatrix;
 import util.Loader;
-import weka.attributeSelection.CorrelationAttributeEval;
 import weka.core.Instances;
 
-public class VisualizeCorrelationMatrixCommand implements Command {
-	public void exec() {
+public class VisualizeCorrelationMatrixCommand implements FileCommand, Stage {
+	public final static String CORRELATION_MATRIX_CSV = "data/correlation_matrix_auto-mpg.csv";
+	public final static String CORRELATION_HEATMAP_PNG = "data/correlation_heatmap_auto-mpg.png";
+	public final static CorrelationMatrix.Method METHOD = CorrelationMatrix.Method.PEARSON;
+
+	public void run() throws Exception {
 		Instances dataset = Loader.loadArff(CleanDataCommand.CLEAN_ARFF_DATASET);
 
-		try {
-			CorrelationAttributeEval cEval = new CorrelationAttributeEval();
-			System.out.println();
-			for (int i = dataset.numAttributes() - 1; i >= 0; i--) {
-				System.out.print("A[" + i + "]" + " ");
-			}
+		apply(dataset);
+	}
 
-			System.out.println();
-			for (int i = dataset.numAttributes() - 1; i >= 0; i--) {
-				dataset.setClassIndex(i);
-				cEval.buildEvaluator(dataset);
-				for (int j = 0; j <= i; j++) {
-					if (j == 0) {
-						System.out.print(
-								"A[" + i + "]" + " " + String.format("%.2f", cEval.evaluateAttribute(j)) + " ");
-					} else {
-						System.out.print(String.format("%.2f", cEval.evaluateAttribute(j)) + " ");
-					}
-				}
-				System.out.println("\t");
+	// Prints the matrix of the numeric attributes, saves it with its heat map and
+	// produces no dataset
+	public Instances apply(Instances dataset) throws Exception {
+		CorrelationMatrix matrix = CorrelationMatrix.compute(dataset, METHOD);
+
+		// Printed at once, so that stages running alongside do not cut into it
+		StringBuilder text = new StringBuilder("\n");
+		for (int i = matrix.size() - 1; i >= 0; i--) {
+			text.append("A[" + matrix.attributeIndex(i) + "]" + " ");
+		}
+		text.append("\n");
+		for (int i = matrix.size() - 1; i >= 0; i--) {
+			text.append("A[" + matrix.attributeIndex(i) + "]" + " ");
+			for (int j = 0; j <= i; j++) {
+				text.append(String.format("%.2f", matrix.get(i, j)) + " ");
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
+			text.append("\t\n");
 		}
+		System.out.print(text);
+
+		matrix.writeCsv(CORRELATION_MATRIX_CSV);
+		matrix.writeHeatMap(CORRELATION_HEATMAP_PNG);
+		System.out.println(METHOD + " correlation matrix saved at: " + CORRELATION_MATRIX_CSV + ", heat map: "
+				+ CORRELATION_HEATMAP_PNG);
+		return null;
+	}
+
+	public String[] inputs() {
+		return new String[] { CleanDataCommand.CLEAN_ARFF_DATASET };
+	}
+
+	public String[] outputs() {
+		return new String[] { CORRELATION_MATRIX_CSV, CORRELATION_HEATMAP_PNG };
+	}
+
+	public String[] options() {
+		return new String[] { METHOD.name() };
 	}
 
 	public static void main(String args[]) {
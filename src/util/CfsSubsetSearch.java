@@ -0,0 +1,437 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+// Correlation-based feature subset selection (CfsSubsetEval with a forward
+// BestFirst search and its defaults) over the numeric and nominal attributes,
+// for a numeric class.
+//
+// Every correlation the search can need is computed once, up front, and kept,
+// instead of one pass over the rows per attribute pair on first use. They come
+// from one CorrelationMatrix (in parallel) over the numeric attributes, the
+// class and an indicator column per value of each nominal attribute, scored
+// as CfsSubsetEval does for a numeric class:
+// - numeric against numeric: |r|;
+// - nominal against numeric: the |r| of each value's indicator, weighted by
+//   the value's prior (for a {0,1} attribute, |r| of its 0/1 coding);
+// - nominal against nominal: the |r| of each pair of indicators, weighted by
+//   the pair's joint prior;
+// a value or attribute without variance counts as 1 between attributes and 0
+// with the class, and so does a nominal score of 0 between attributes.
+//
+// The search expands a subset by evaluating all its children concurrently from
+// those correlations, then takes them in attribute order as BestFirst does, so
+// the selection is BestFirst's:
+// - merit(S) = sum of sd(a) * |r(a, class)| / sqrt(sum of sd(a)^2 + 2 * sum of
+//   sd(a) * sd(b) * |r(a, b)|), with |r| rounded to float as in CfsSubsetEval;
+//   sd is the standard deviation (for a nominal attribute, the square root of
+//   the prior-weighted variances of its indicators), 1 if it is 0;
+// - the open list keeps the MAX_STALE best subsets, and the search stops
+//   after MAX_STALE expansions without a better subset (by more than 1e-5);
+// - afterwards, attributes more correlated with the class than with any
+//   selected attribute are added (CfsSubsetEval's locally predictive step).
+//
+// Missing values take the attribute mean (the mode for a nominal attribute),
+// rows with a missing class are left out, and instance weights are ignored.
+public class CfsSubsetSearch {
+	public final static int MAX_STALE = 5;
+
+	private final int classIndex;
+	private final int[] features;   // dataset index of each numeric or nominal non-class attribute
+	private final float[][] corr;   // |r| between features
+	private final float[] classCorr; // |r| with the class
+	private final double[] signedClassCorr;
+	private final double[] stdDevs;
+	private double bestMerit;
+	private int evaluations;
+
+	private static class Node {
+		final BitSet subset;
+		final double merit;
+
+		Node(BitSet subset, double merit) {
+			this.subset = subset;
+			this.merit = merit;
+		}
+	}
+
+	public CfsSubsetSearch(Instances dataset) throws Exception {
+		if (dataset.classIndex() < 0 || !dataset.classAttribute().isNumeric()) {
+			throw new IllegalArgumentException("CFS subset search needs a numeric class attribute");
+		}
+		Instances data = withoutMissingClass(dataset);
+		this.classIndex = data.classIndex();
+
+		List<Integer> candidates = new ArrayList<>();
+		for (int j = 0; j < data.numAttributes(); j++) {
+			if (j != classIndex && (data.attribute(j).isNumeric() || data.attribute(j).isNominal())) {
+				candidates.add(j);
+			}
+		}
+		int k = candidates.size();
+		features = new int[k];
+		for (int f = 0; f < k; f++) {
+			features[f] = candidates.get(f);
+		}
+
+		Correlations correlations = new Correlations(data, features);
+		corr = new float[k][k];
+		classCorr = new float[k];
+		signedClassCorr = new double[k];
+		Parallel.forEach(k, a -> {
+			classCorr[a] = correlations.get(a, -1);
+			signedClassCorr[a] = correlations.signed(a);
+			for (int b = 0; b < k; b++) {
+				corr[a][b] = a == b ? 1 : correlations.get(a, b);
+			}
+		});
+		stdDevs = new double[k];
+		for (int a = 0; a < k; a++) {
+			// CfsSubsetEval weights by the standard deviation, keeping 1 for constant attributes
+			stdDevs[a] = correlations.stdDevs[a] == 0 ? 1 : correlations.stdDevs[a];
+		}
+	}
+
+	public int classIndex() {
+		return classIndex;
+	}
+
+	// Pearson correlation of an attribute with the class (NaN if not a numeric attribute)
+	public double classCorrelation(int attribute) {
+		for (int f = 0; f < features.length; f++) {
+			if (features[f] == attribute) {
+				return signedClassCorr[f];
+			}
+		}
+		return Double.NaN;
+	}
+
+	// Runs the search; returns the selected dataset indices in ascending order, without the class
+	public int[] search() throws Exception {
+		int k = features.length;
+		Map<BitSet, Double> merits = new HashMap<>();
+		LinkedList<Node> open = new LinkedList<>();
+		BitSet best = new BitSet(k);
+		bestMerit = merit(best);
+		evaluations = 1;
+		merits.put(best, bestMerit);
+		add(open, new Node((BitSet) best.clone(), bestMerit));
+
+		int stale = 0;
+		while (stale < MAX_STALE && !open.isEmpty()) {
+			BitSet parent = open.removeFirst().subset;
+
+			// Every child at once; the ones seen before keep their merit
+			BitSet[] children = new BitSet[k];
+			double[] childMerits = new double[k];
+			List<Integer> unseen = new ArrayList<>();
+			for (int f = 0; f < k; f++) {
+				if (!parent.get(f)) {
+					children[f] = (BitSet) parent.clone();
+					children[f].set(f);
+					Double merit = merits.get(children[f]);
+					if (merit == null) {
+						unseen.add(f);
+					} else {
+						childMerits[f] = merit;
+					}
+				}
+			}
+			Parallel.forEach(unseen.size(), u -> {
+				int f = unseen.get(u);
+				childMerits[f] = merit(children[f]);
+			});
+			evaluations += unseen.size();
+
+			boolean improved = false;
+			for (int f = 0; f < k; f++) {
+				if (children[f] == null) {
+					continue;
+				}
+				merits.putIfAbsent(children[f], childMerits[f]);
+				add(open, new Node(children[f], childMerits[f]));
+				if (childMerits[f] - bestMerit > 0.00001) {
+					improved = true;
+					stale = 0;
+					bestMerit = childMerits[f];
+					best = children[f];
+				}
+			}
+			if (!improved) {
+				stale++;
+			}
+		}
+
+		addLocallyPredictive(best);
+		int[] selected = new int[best.cardinality()];
+		for (int f = best.nextSetBit(0), n = 0; f >= 0; f = best.nextSetBit(f + 1)) {
+			selected[n++] = features[f];
+		}
+		return selected;
+	}
+
+	// Merit of the best subset found by the last search, before the locally predictive step
+	public double bestMerit() {
+		return bestMerit;
+	}
+
+	public int evaluations() {
+		return evaluations;
+	}
+
+	// The selected attributes and the class, in dataset order: a projection
+	// (ColumnStore) of the dataset's columns unless its rows are sparse
+	public Instances select(Instances dataset, int[] selected) throws Exception {
+		BitSet keep = new BitSet(dataset.numAttributes());
+		for (int attribute : selected) {
+			keep.set(attribute);
+		}
+		keep.set(dataset.classIndex());
+		if (dataset.numInstances() == 0 || !(dataset.instance(0) instanceof SparseInstance)) {
+			return ColumnStore.of(dataset).project(keep.stream().toArray()).toInstances();
+		}
+
+		// Sparse rows (one-hot encoded data) stay sparse
+		Instances reduced = new Instances(dataset);
+		reduced.setClassIndex(-1);
+		for (int j = dataset.numAttributes() - 1; j >= 0; j--) {
+			if (!keep.get(j)) {
+				reduced.deleteAttributeAt(j);
+			}
+		}
+		int classIndex = 0;
+		for (int j = 0; j < dataset.classIndex(); j++) {
+			classIndex += keep.get(j) ? 1 : 0;
+		}
+		reduced.setClassIndex(classIndex);
+		return reduced;
+	}
+
+	// CfsSubsetEval.evaluateSubset, summing in the same order
+	private double merit(BitSet subset) {
+		double num = 0;
+		for (int a = subset.nextSetBit(0); a >= 0; a = subset.nextSetBit(a + 1)) {
+			num += stdDevs[a] * classCorr[a];
+		}
+		double denom = 0;
+		for (int a = subset.nextSetBit(0); a >= 0; a = subset.nextSetBit(a + 1)) {
+			denom += 1.0 * stdDevs[a] * stdDevs[a];
+			for (int b = subset.nextSetBit(0); b >= 0 && b < a; b = subset.nextSetBit(b + 1)) {
+				denom += 2.0 * stdDevs[a] * stdDevs[b] * corr[a][b];
+			}
+		}
+		if (denom < 0) {
+			denom = -denom;
+		}
+		if (denom == 0) {
+			return 0;
+		}
+		double merit = num / Math.sqrt(denom);
+		return merit < 0 ? -merit : merit;
+	}
+
+	// BestFirst's open list: sorted by merit, best first, at most MAX_STALE long
+	private static void add(LinkedList<Node> open, Node node) {
+		if (open.size() == MAX_STALE && node.merit <= open.getLast().merit) {
+			return;
+		}
+		int i = 0;
+		while (i < open.size() && !(node.merit > open.get(i).merit)) {
+			i++;
+		}
+		open.add(i, node);
+		if (open.size() > MAX_STALE) {
+			open.removeLast();
+		}
+	}
+
+	// CfsSubsetEval.addLocallyPredictive: takes the remaining attributes by
+	// decreasing class correlation, adding those no more correlated with any
+	// attribute of the selection than with the class
+	private void addLocallyPredictive(BitSet selected) {
+		BitSet tried = (BitSet) selected.clone();
+		while (true) {
+			double best = -1;
+			int next = -1;
+			for (int f = 0; f < features.length; f++) {
+				if (!tried.get(f) && classCorr[f] > best) {
+					best = classCorr[f];
+					next = f;
+				}
+			}
+			if (next < 0) {
+				return;
+			}
+			tried.set(next);
+			boolean ok = true;
+			for (int f = selected.nextSetBit(0); f >= 0 && ok; f = selected.nextSetBit(f + 1)) {
+				ok = corr[f][next] <= best;
+			}
+			if (ok) {
+				selected.set(next);
+			}
+		}
+	}
+
+	// The dataset, or a copy without the rows whose class is missing
+	private static Instances withoutMissingClass(Instances dataset) {
+		for (int i = 0; i < dataset.numInstances(); i++) {
+			if (dataset.instance(i).classIsMissing()) {
+				Instances data = new Instances(dataset);
+				data.deleteWithMissingClass();
+				return data;
+			}
+		}
+		return dataset;
+	}
+
+	// Population standard deviation with missing values at the mean, as CfsSubsetEval's
+	private static double stdDev(double[] column) {
+		double sum = 0;
+		int valid = 0;
+		for (double value : column) {
+			if (!Double.isNaN(value)) {
+				sum += value;
+				valid++;
+			}
+		}
+		double mean = valid == 0 ? 0 : sum / valid;
+		double squares = 0;
+		for (double value : column) {
+			double diff = Double.isNaN(value) ? 0 : value - mean;
+			squares += diff * diff;
+		}
+		return Math.sqrt(squares / column.length);
+	}
+
+	// CfsSubsetEval.correlate for a numeric class, from the Pearson matrix of one
+	// column per numeric feature, one indicator per value of a nominal feature
+	// (missing values at the mode) and the class, which comes last
+	private static class Correlations {
+		final int[] first;        // first column of each feature, then the class column
+		final double[][] priors;  // fraction of the rows of each value, null for a numeric feature
+		final int[][] codes;      // value of each row, null for a numeric feature
+		final double[] stdDevs;   // of each feature, then of the class
+		final int numRows;
+		final CorrelationMatrix matrix;
+
+		Correlations(Instances data, int[] features) throws Exception {
+			int k = features.length;
+			numRows = data.numInstances();
+			first = new int[k + 1];
+			for (int f = 0; f < k; f++) {
+				Attribute attribute = data.attribute(features[f]);
+				first[f + 1] = first[f] + (attribute.isNominal() ? attribute.numValues() : 1);
+			}
+			priors = new double[k][];
+			codes = new int[k][];
+			stdDevs = new double[k + 1];
+			double[][] columns = new double[first[k] + 1][];
+			Parallel.forEach(k + 1, f -> {
+				double[] values = data.attributeToDoubleArray(f < k ? features[f] : data.classIndex());
+				if (f == k || !data.attribute(features[f]).isNominal()) {
+					columns[first[f]] = values;
+					stdDevs[f] = stdDev(values);
+				} else {
+					indicators(f, values, data.attribute(features[f]).numValues(), columns);
+				}
+			});
+			ArrayList<Attribute> attributes = new ArrayList<>(columns.length);
+			for (int c = 0; c < columns.length; c++) {
+				attributes.add(new Attribute("column" + c));
+			}
+			matrix = CorrelationMatrix.compute(ColumnStore.of(data.relationName(), attributes, columns, null, -1)
+					.toInstances(), CorrelationMatrix.Method.PEARSON);
+		}
+
+		// The indicator columns of a nominal feature, its priors and its standard deviation
+		private void indicators(int f, double[] values, int numValues, double[][] columns) {
+			int[] counts = new int[numValues];
+			for (double value : values) {
+				if (!Double.isNaN(value)) {
+					counts[(int) value]++;
+				}
+			}
+			int mode = Utils.maxIndex(counts);
+			codes[f] = new int[numRows];
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < numRows; i++) {
+				codes[f][i] = Double.isNaN(values[i]) ? mode : (int) values[i];
+				counts[codes[f][i]]++;
+			}
+			priors[f] = new double[numValues];
+			double variance = 0;
+			for (int v = 0; v < numValues; v++) {
+				double[] indicator = new double[numRows];
+				for (int i = 0; i < numRows; i++) {
+					indicator[i] = codes[f][i] == v ? 1 : 0;
+				}
+				columns[first[f] + v] = indicator;
+				double p = (double) counts[v] / numRows;
+				priors[f][v] = p;
+				variance += p * p * (1 - p);
+			}
+			stdDevs[f] = Math.sqrt(variance);
+		}
+
+		// |r| between features a and b, or a and the class if b is -1
+		float get(int a, int b) {
+			boolean withClass = b < 0;
+			int other = withClass ? priors.length : b;
+			boolean nominalA = priors[a] != null;
+			boolean nominalB = !withClass && priors[b] != null;
+			if (!nominalA && !nominalB) {
+				if (stdDevs[a] == 0 || stdDevs[other] == 0) {
+					return withClass ? 0 : 1;
+				}
+				return (float) Math.abs(matrix.get(first[a], first[other]));
+			}
+
+			double r = 0;
+			if (nominalA != nominalB) {
+				int nominal = nominalA ? a : b;
+				int numeric = nominalA ? other : a;
+				for (int v = 0; v < priors[nominal].length; v++) {
+					double p = priors[nominal][v];
+					if (p > 0 && p < 1 && stdDevs[numeric] > 0) {
+						r += p * Math.abs(matrix.get(first[nominal] + v, first[numeric]));
+					} else if (!withClass) {
+						r += p;
+					}
+				}
+			} else {
+				double[][] joint = new double[priors[a].length][priors[b].length];
+				for (int i = 0; i < numRows; i++) {
+					joint[codes[a][i]][codes[b][i]]++;
+				}
+				for (int u = 0; u < priors[a].length; u++) {
+					for (int v = 0; v < priors[b].length; v++) {
+						double p = joint[u][v] / numRows;
+						if (priors[a][u] > 0 && priors[a][u] < 1 && priors[b][v] > 0 && priors[b][v] < 1) {
+							r += p * Math.abs(matrix.get(first[a] + u, first[b] + v));
+						} else {
+							r += p;
+						}
+					}
+				}
+			}
+			return (float) (r == 0 && !withClass ? 1 : r);
+		}
+
+		// Pearson correlation of a numeric feature with the class, NaN for a nominal one
+		double signed(int a) {
+			return priors[a] != null ? Double.NaN : matrix.get(first[a], first[priors.length]);
+		}
+	}
+}
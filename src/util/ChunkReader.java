@@ -0,0 +1,76 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+
+// Reads an ARFF file in chunks of at most chunkRows rows without loading the
+// rest of it. Each chunk is an Instances with its own copy of the string
+// values it uses, so a chunk stays valid while the reader moves on and the
+// loader's string tables do not grow with the file.
+public class ChunkReader implements Closeable {
+	private final BufferedReader reader;
+	private final ArffLoader.ArffReader arff;
+	private final Instances structure;
+	private final int chunkRows;
+	private final boolean strings;
+
+	public ChunkReader(String arffPath, int chunkRows) throws IOException {
+		if (chunkRows < 1) {
+			throw new IllegalArgumentException("Chunk size must be >= 1: " + chunkRows);
+		}
+		this.reader = Files.newBufferedReader(Paths.get(arffPath), StandardCharsets.UTF_8);
+		try {
+			this.arff = new ArffLoader.ArffReader(reader, 1);
+			this.arff.setRetainStringValues(false);
+		} catch (IOException | RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+		this.structure = arff.getStructure();
+		this.chunkRows = chunkRows;
+		this.strings = structure.checkForStringAttributes();
+	}
+
+	// The layout of the file, without rows
+	public Instances structure() {
+		return structure.stringFreeStructure();
+	}
+
+	// The next rows of the file, or null once all rows have been read
+	public Instances next() throws IOException {
+		Instances chunk = structure.stringFreeStructure();
+		Instance instance;
+		while (chunk.numInstances() < chunkRows && (instance = arff.readInstance(structure)) != null) {
+			if (strings) {
+				add(chunk, instance);
+			} else {
+				chunk.add(instance);
+			}
+		}
+		return chunk.numInstances() == 0 ? null : chunk;
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	// Appends instance to chunk, copying its string values into the chunk's own
+	// string attributes (instance may belong to any dataset with the same layout)
+	public static void add(Instances chunk, Instance instance) {
+		double[] values = instance.toDoubleArray();
+		for (int j = 0; j < values.length; j++) {
+			if (chunk.attribute(j).isString() && !Double.isNaN(values[j])) {
+				values[j] = chunk.attribute(j).addStringValue(instance.stringValue(j));
+			}
+		}
+		chunk.add(instance.copy(values));
+	}
+}
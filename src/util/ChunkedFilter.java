@@ -0,0 +1,44 @@
+package util;
+
+import weka.core.Instances;
+
+// A preprocessing step that works on a dataset one chunk of rows at a time,
+// so that it never needs more than a chunk and its own statistics in memory.
+//
+// The caller (ChunkedPipeline) first calls init with the layout of the rows
+// the filter will receive. A filter that needs statistics about its whole
+// input (a mean, quantiles, the rows seen before) then gets statisticsPasses()
+// passes over it, every chunk in order through observe and then endPass;
+// statisticsPasses() is asked again after each pass, so a filter can decide it
+// needs one more. After that, process transforms chunks into rows of
+// outputStructure(); it may run over the input several times, each run
+// starting with rewind.
+//
+// Chunks own their string values (see ChunkReader), and process must not
+// modify the chunk it is given.
+public interface ChunkedFilter {
+	void init(Instances structure) throws Exception;
+
+	default int statisticsPasses() {
+		return 0;
+	}
+
+	default void observe(Instances chunk, int pass) throws Exception {
+	}
+
+	default void endPass(int pass) throws Exception {
+	}
+
+	Instances outputStructure() throws Exception;
+
+	// Resets what process counts, before a new run over the input
+	default void rewind() {
+	}
+
+	Instances process(Instances chunk) throws Exception;
+
+	// What the last run of process did, or null
+	default String summary() {
+		return null;
+	}
+}
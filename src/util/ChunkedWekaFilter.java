@@ -0,0 +1,41 @@
+package util;
+
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.StreamableFilter;
+
+// Runs a Weka filter over chunks, one row at a time through input()/output().
+// Without statistics this only works for filters whose output layout follows
+// from the input layout alone (StreamableFilter: NominalToBinary, Remove, ...);
+// Discretizer replaces Discretize. The filter's own copy of the string values
+// is dropped after every chunk, the chunks keep theirs.
+public class ChunkedWekaFilter implements ChunkedFilter {
+	protected final Filter filter;
+
+	public ChunkedWekaFilter(Filter filter) {
+		this.filter = filter;
+	}
+
+	public void init(Instances structure) throws Exception {
+		if (!(filter instanceof StreamableFilter)) {
+			throw new IllegalArgumentException(filter.getClass().getSimpleName() + " needs all rows before its first output");
+		}
+		filter.setInputFormat(structure);
+	}
+
+	public Instances outputStructure() {
+		return filter.getOutputFormat().stringFreeStructure();
+	}
+
+	public Instances process(Instances chunk) throws Exception {
+		Instances output = outputStructure();
+		for (int i = 0; i < chunk.numInstances(); i++) {
+			if (!filter.input(chunk.instance(i))) {
+				throw new IllegalStateException(filter.getClass().getSimpleName() + " did not convert row " + i + " at once");
+			}
+			ChunkReader.add(output, filter.output());
+		}
+		filter.batchFinished();
+		return output;
+	}
+}
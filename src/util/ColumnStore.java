@@ -0,0 +1,440 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import weka.core.AbstractInstance;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+// Column-major dataset: one double[] per attribute, in Weka's encoding (label
+// index for nominal and string values, NaN for missing values), instead of one
+// DenseInstance with its own double[] per row.
+//
+// Projections (project, remove) and row selections (select, filter) are views:
+// they share the columns and only build the list of attributes or rows they
+// keep, so dropping attributes or rows copies no values. The columns are never
+// written once a store holds them.
+//
+// toInstances() exposes a store as Instances for Weka: each row is an Instance
+// reading through to the columns, which takes a copy of its values when it is
+// first modified. backing() gives back the store of such Instances as long as
+// it has not been modified, so that the stages after a view keep working on
+// views.
+public class ColumnStore {
+	private final String relationName;
+	private final Attribute[] attributes;
+	private final double[][] columns;  // the view's columns, shared
+	private final double[] weights;    // by store row, null if all are 1
+	private final int[] rows;          // store rows of the view, null for all of them
+	private final int numRows;
+	private final int classIndex;
+
+	private ColumnStore(String relationName, Attribute[] attributes, double[][] columns, double[] weights, int[] rows,
+			int numRows, int classIndex) {
+		this.relationName = relationName;
+		this.attributes = attributes;
+		this.columns = columns;
+		this.weights = weights;
+		this.rows = rows;
+		this.numRows = numRows;
+		this.classIndex = classIndex;
+	}
+
+	// Takes over the columns (one per attribute, all as long as weights if given)
+	public static ColumnStore of(String relationName, List<Attribute> attributes, double[][] columns, double[] weights,
+			int classIndex) {
+		if (columns.length != attributes.size()) {
+			throw new IllegalArgumentException(columns.length + " columns for " + attributes.size() + " attributes");
+		}
+		int numRows = columns.length > 0 ? columns[0].length : weights != null ? weights.length : 0;
+		for (double[] column : columns) {
+			if (column.length != numRows) {
+				throw new IllegalArgumentException("Columns of different lengths: " + column.length + ", " + numRows);
+			}
+		}
+		if (weights != null && weights.length != numRows) {
+			throw new IllegalArgumentException(weights.length + " weights for " + numRows + " rows");
+		}
+		return new ColumnStore(relationName, attributes.toArray(new Attribute[0]), columns, weights, null, numRows,
+				classIndex);
+	}
+
+	// The store behind data, or a column-major copy of it
+	public static ColumnStore of(Instances data) throws Exception {
+		ColumnStore store = backing(data);
+		if (store != null) {
+			return store;
+		}
+		int numRows = data.numInstances();
+		int numAttributes = data.numAttributes();
+		double[][] columns = new double[numAttributes][numRows];
+		int chunks = Parallel.chunks(numAttributes, 1);
+		Parallel.forEach(chunks, c -> {
+			int end = Parallel.chunkStart(c + 1, chunks, numAttributes);
+			for (int j = Parallel.chunkStart(c, chunks, numAttributes); j < end; j++) {
+				double[] column = columns[j];
+				for (int i = 0; i < numRows; i++) {
+					column[i] = data.instance(i).value(j);
+				}
+			}
+		});
+		double[] weights = new double[numRows];
+		boolean weighted = false;
+		for (int i = 0; i < numRows; i++) {
+			weights[i] = data.instance(i).weight();
+			weighted |= weights[i] != 1.0;
+		}
+		List<Attribute> attributes = new ArrayList<>(numAttributes);
+		for (int j = 0; j < numAttributes; j++) {
+			attributes.add(data.attribute(j));
+		}
+		return of(data.relationName(), attributes, columns, weighted ? weights : null, data.classIndex());
+	}
+
+	// The store data reads through to, with data's relation name and class index,
+	// or null if data is not from toInstances() or has been modified since
+	public static ColumnStore backing(Instances data) {
+		if (!(data instanceof View)) {
+			return null;
+		}
+		View view = (View) data;
+		if (!view.intact()) {
+			return null;
+		}
+		ColumnStore store = view.store;
+		if (store.classIndex != data.classIndex() || !store.relationName.equals(data.relationName())) {
+			store = new ColumnStore(data.relationName(), store.attributes, store.columns, store.weights, store.rows,
+					store.numRows, data.classIndex());
+		}
+		return store;
+	}
+
+	public String relationName() {
+		return relationName;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numAttributes() {
+		return attributes.length;
+	}
+
+	public Attribute attribute(int attribute) {
+		return attributes[attribute];
+	}
+
+	// -1 if there is no class, or it was projected away
+	public int classIndex() {
+		return classIndex;
+	}
+
+	public double value(int row, int attribute) {
+		return columns[attribute][rows == null ? row : rows[row]];
+	}
+
+	public boolean isMissing(int row, int attribute) {
+		return Double.isNaN(value(row, attribute));
+	}
+
+	public double weight(int row) {
+		return weights == null ? 1.0 : weights[rows == null ? row : rows[row]];
+	}
+
+	// A copy of the view's values of an attribute
+	public double[] column(int attribute) {
+		double[] column = columns[attribute];
+		if (rows == null) {
+			return column.clone();
+		}
+		double[] values = new double[numRows];
+		for (int i = 0; i < numRows; i++) {
+			values[i] = column[rows[i]];
+		}
+		return values;
+	}
+
+	// View of the given attributes, in that order
+	public ColumnStore project(int... keep) {
+		Attribute[] keptAttributes = new Attribute[keep.length];
+		double[][] keptColumns = new double[keep.length][];
+		int keptClass = -1;
+		for (int k = 0; k < keep.length; k++) {
+			keptAttributes[k] = attributes[keep[k]];
+			keptColumns[k] = columns[keep[k]];
+			if (keep[k] == classIndex) {
+				keptClass = k;
+			}
+		}
+		return new ColumnStore(relationName, keptAttributes, keptColumns, weights, rows, numRows, keptClass);
+	}
+
+	// View without the given attributes
+	public ColumnStore remove(int... attributes) {
+		boolean[] removed = new boolean[this.attributes.length];
+		for (int attribute : attributes) {
+			removed[attribute] = true;
+		}
+		int[] keep = new int[this.attributes.length];
+		int n = 0;
+		for (int j = 0; j < removed.length; j++) {
+			if (!removed[j]) {
+				keep[n++] = j;
+			}
+		}
+		return project(Arrays.copyOf(keep, n));
+	}
+
+	// View of the given rows of this view, in that order
+	public ColumnStore select(int... selected) {
+		int[] storeRows = new int[selected.length];
+		for (int i = 0; i < selected.length; i++) {
+			if (selected[i] < 0 || selected[i] >= numRows) {
+				throw new IndexOutOfBoundsException("Row " + selected[i] + " of " + numRows);
+			}
+			storeRows[i] = rows == null ? selected[i] : rows[selected[i]];
+		}
+		return new ColumnStore(relationName, attributes, columns, weights, storeRows, selected.length, classIndex);
+	}
+
+	// View of the rows keep accepts, by row of this view
+	public ColumnStore filter(IntPredicate keep) {
+		int[] selected = new int[numRows];
+		int n = 0;
+		for (int i = 0; i < numRows; i++) {
+			if (keep.test(i)) {
+				selected[n++] = i;
+			}
+		}
+		return select(Arrays.copyOf(selected, n));
+	}
+
+	public ColumnStore withRelationName(String name) {
+		return new ColumnStore(name, attributes, columns, weights, rows, numRows, classIndex);
+	}
+
+	public ColumnStore withClassIndex(int index) {
+		if (index < -1 || index >= attributes.length) {
+			throw new IndexOutOfBoundsException("Class index " + index + " of " + attributes.length + " attributes");
+		}
+		return new ColumnStore(relationName, attributes, columns, weights, rows, numRows, index);
+	}
+
+	// Instances reading through to the view; only the attributes are copied
+	public Instances toInstances() {
+		return new View(this);
+	}
+
+	// Instances whose rows read through to a store
+	private static class View extends Instances {
+		private static final long serialVersionUID = 1L;
+
+		private final transient ColumnStore store;
+		private final transient Row[] rows;
+
+		View(ColumnStore store) {
+			super(store.relationName, copies(store.attributes), store.numRows);
+			this.store = store;
+			this.rows = new Row[store.numRows];
+			for (int i = 0; i < store.numRows; i++) {
+				rows[i] = new Row(store, store.rows == null ? i : store.rows[i]);
+				rows[i].setDataset(this);
+				// add() would copy the row
+				m_Instances.add(rows[i]);
+			}
+			setClassIndex(store.classIndex);
+		}
+
+		// True while the rows, their weights and the attributes are still those of
+		// the store (setWeight is final, so a reweighted row is not modified())
+		boolean intact() {
+			if (store == null || numInstances() != rows.length || numAttributes() != store.attributes.length) {
+				return false;
+			}
+			for (int j = 0; j < store.attributes.length; j++) {
+				if (!attribute(j).equals(store.attributes[j])) {
+					return false;
+				}
+			}
+			for (int i = 0; i < rows.length; i++) {
+				if (m_Instances.get(i) != rows[i] || rows[i].modified() || rows[i].weight() != store.weight(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public double[] attributeToDoubleArray(int index) {
+			return intact() ? store.column(index) : super.attributeToDoubleArray(index);
+		}
+
+		// Serialized as plain Instances, since the store is not
+		private Object writeReplace() {
+			return new Instances(this);
+		}
+
+		private static ArrayList<Attribute> copies(Attribute[] attributes) {
+			// Instances renumbers the attributes it is given, which other views share
+			ArrayList<Attribute> copies = new ArrayList<>(attributes.length);
+			for (Attribute attribute : attributes) {
+				copies.add((Attribute) attribute.copy());
+			}
+			return copies;
+		}
+	}
+
+	// A row of a store, copied into m_AttValues on its first modification
+	private static class Row extends AbstractInstance {
+		private static final long serialVersionUID = 1L;
+
+		private final transient double[][] columns;
+		private final int row;
+
+		Row(ColumnStore store, int row) {
+			this.columns = store.columns;
+			this.row = row;
+			m_Weight = store.weights == null ? 1.0 : store.weights[row];
+		}
+
+		boolean modified() {
+			return m_AttValues != null;
+		}
+
+		private Object writeReplace() {
+			return copy();
+		}
+
+		private void own() {
+			if (m_AttValues == null) {
+				m_AttValues = toDoubleArray();
+			}
+		}
+
+		@Override
+		public double value(int attIndex) {
+			return m_AttValues != null ? m_AttValues[attIndex] : columns[attIndex][row];
+		}
+
+		@Override
+		public double valueSparse(int indexOfIndex) {
+			return value(indexOfIndex);
+		}
+
+		@Override
+		public int index(int position) {
+			return position;
+		}
+
+		@Override
+		public int numAttributes() {
+			return m_AttValues != null ? m_AttValues.length : columns.length;
+		}
+
+		@Override
+		public int numValues() {
+			return numAttributes();
+		}
+
+		@Override
+		public double[] toDoubleArray() {
+			if (m_AttValues != null) {
+				return m_AttValues.clone();
+			}
+			double[] values = new double[columns.length];
+			for (int j = 0; j < values.length; j++) {
+				values[j] = columns[j][row];
+			}
+			return values;
+		}
+
+		@Override
+		public void setValue(int attIndex, double value) {
+			own();
+			m_AttValues[attIndex] = value;
+		}
+
+		@Override
+		public void setValueSparse(int indexOfIndex, double value) {
+			setValue(indexOfIndex, value);
+		}
+
+		@Override
+		public void replaceMissingValues(double[] array) {
+			if (array == null || array.length != numAttributes()) {
+				throw new IllegalArgumentException("Unequal number of attributes!");
+			}
+			own();
+			for (int j = 0; j < m_AttValues.length; j++) {
+				if (Double.isNaN(m_AttValues[j])) {
+					m_AttValues[j] = array[j];
+				}
+			}
+		}
+
+		@Override
+		protected void forceDeleteAttributeAt(int position) {
+			own();
+			double[] values = new double[m_AttValues.length - 1];
+			System.arraycopy(m_AttValues, 0, values, 0, position);
+			System.arraycopy(m_AttValues, position + 1, values, position, values.length - position);
+			m_AttValues = values;
+		}
+
+		@Override
+		protected void forceInsertAttributeAt(int position) {
+			own();
+			double[] values = new double[m_AttValues.length + 1];
+			System.arraycopy(m_AttValues, 0, values, 0, position);
+			values[position] = weka.core.Utils.missingValue();
+			System.arraycopy(m_AttValues, position, values, position + 1, m_AttValues.length - position);
+			m_AttValues = values;
+		}
+
+		// Copies are plain DenseInstances
+		@Override
+		public Object copy() {
+			return copy(toDoubleArray());
+		}
+
+		@Override
+		public Instance copy(double[] values) {
+			DenseInstance copy = new DenseInstance(m_Weight, values);
+			copy.setDataset(m_Dataset);
+			return copy;
+		}
+
+		@Override
+		public Instance mergeInstance(Instance inst) {
+			return new DenseInstance(m_Weight, toDoubleArray()).mergeInstance(inst);
+		}
+
+		@Override
+		public String toStringNoWeight() {
+			return toStringNoWeight(AbstractInstance.s_numericAfterDecimalPoint);
+		}
+
+		@Override
+		public String toStringNoWeight(int afterDecimalPoint) {
+			StringBuilder text = new StringBuilder();
+			for (int j = 0; j < numAttributes(); j++) {
+				if (j > 0) {
+					text.append(',');
+				}
+				text.append(toString(j, afterDecimalPoint));
+			}
+			return text.toString();
+		}
+
+		@Override
+		public String getRevision() {
+			return "1";
+		}
+	}
+}
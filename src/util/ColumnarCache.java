@@ -0,0 +1,258 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+// Binary column-major copy of an ARFF file, stored next to it as <file>.cache.
+//
+// Layout (big-endian):
+//   header  magic, version, source size, source mtime, relation, #attributes,
+//           #instances, weights flag, then per attribute its type, name and
+//           dictionary (nominal/string labels) or date format
+//   columns padded to 8 bytes; one double[n] per numeric/date attribute, one
+//           int[n] of dictionary indexes (-1 = missing) per nominal/string
+//           attribute, and a trailing double[n] of weights if the flag is set
+//
+// The cache is only used while the source ARFF still has the recorded size and
+// modification time, so any rewrite of the ARFF invalidates it.
+public class ColumnarCache {
+	public final static String EXTENSION = ".cache";
+
+	private static final int MAGIC = 0x444D4343; // "DMCC"
+	private static final int VERSION = 1;
+
+	private static final byte NUMERIC = 0;
+	private static final byte NOMINAL = 1;
+	private static final byte STRING = 2;
+	private static final byte DATE = 3;
+
+	public static Path cachePath(String arffPath) {
+		return Paths.get(arffPath + EXTENSION);
+	}
+
+	// Returns the cached dataset, or null if there is no up-to-date cache
+	public static Instances read(String arffPath) {
+		Path source = Paths.get(arffPath);
+		Path cache = cachePath(arffPath);
+		if (!Files.isRegularFile(cache) || !Files.isRegularFile(source)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+				return null;
+			}
+			if (buf.getLong() != Files.size(source)
+					|| buf.getLong() != Files.getLastModifiedTime(source).toMillis()) {
+				return null;
+			}
+
+			String relation = readString(buf);
+			int numAttributes = buf.getInt();
+			int numInstances = buf.getInt();
+			boolean hasWeights = buf.get() != 0;
+
+			ArrayList<Attribute> attributes = new ArrayList<>(numAttributes);
+			byte[] types = new byte[numAttributes];
+			for (int j = 0; j < numAttributes; j++) {
+				types[j] = buf.get();
+				String name = readString(buf);
+				switch (types[j]) {
+					case NUMERIC:
+						attributes.add(new Attribute(name));
+						break;
+					case DATE:
+						attributes.add(new Attribute(name, readString(buf)));
+						break;
+					case NOMINAL:
+						attributes.add(new Attribute(name, readDictionary(buf)));
+						break;
+					case STRING:
+						Attribute string = new Attribute(name, (List<String>) null);
+						for (String value : readDictionary(buf)) {
+							string.addStringValue(value);
+						}
+						attributes.add(string);
+						break;
+					default:
+						return null;
+				}
+			}
+
+			// Column sections are aligned so the bulk reads below stay on 8-byte boundaries;
+			// they are read straight into the columns of a ColumnStore, without building rows
+			buf.position(align(buf.position()));
+			double[][] columns = new double[numAttributes][numInstances];
+			int[] ints = new int[numInstances];
+			for (int j = 0; j < numAttributes; j++) {
+				if (types[j] == NUMERIC || types[j] == DATE) {
+					buf.asDoubleBuffer().get(columns[j]);
+					buf.position(buf.position() + numInstances * Double.BYTES);
+				} else {
+					buf.asIntBuffer().get(ints);
+					buf.position(align(buf.position() + numInstances * Integer.BYTES));
+					for (int i = 0; i < numInstances; i++) {
+						columns[j][i] = ints[i] < 0 ? weka.core.Utils.missingValue() : ints[i];
+					}
+				}
+			}
+
+			double[] weights = null;
+			if (hasWeights) {
+				weights = new double[numInstances];
+				buf.asDoubleBuffer().get(weights);
+			}
+			return ColumnStore.of(relation, attributes, columns, weights, -1).toInstances();
+		} catch (IOException | RuntimeException e) {
+			// A corrupt or truncated cache is treated like a missing one
+			return null;
+		}
+	}
+
+	// Writes the cache for an ARFF file that has just been saved from data
+	public static void write(String arffPath, Instances data) {
+		Path source = Paths.get(arffPath);
+		Path cache = cachePath(arffPath);
+		try {
+			if (!isSupported(data)) {
+				Files.deleteIfExists(cache);
+				return;
+			}
+
+			Path tmp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+					writeTo(out, data, Files.size(source), Files.getLastModifiedTime(source).toMillis());
+				}
+				Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch (IOException e) {
+			// The cache is an optimisation only; the ARFF file stays authoritative
+			System.err.println("Failed to write columnar cache " + cache + ": " + e.getMessage());
+		}
+	}
+
+	private static void writeTo(DataOutputStream out, Instances data, long sourceSize, long sourceMtime) throws IOException {
+		int numAttributes = data.numAttributes();
+		int numInstances = data.numInstances();
+		boolean hasWeights = false;
+		for (int i = 0; i < numInstances && !hasWeights; i++) {
+			hasWeights = data.instance(i).weight() != 1.0;
+		}
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(sourceSize);
+		out.writeLong(sourceMtime);
+		writeString(out, data.relationName());
+		out.writeInt(numAttributes);
+		out.writeInt(numInstances);
+		out.writeByte(hasWeights ? 1 : 0);
+
+		for (int j = 0; j < numAttributes; j++) {
+			Attribute attribute = data.attribute(j);
+			byte type = typeOf(attribute);
+			out.writeByte(type);
+			writeString(out, attribute.name());
+			if (type == DATE) {
+				writeString(out, attribute.getDateFormat());
+			} else if (type == NOMINAL || type == STRING) {
+				out.writeInt(attribute.numValues());
+				for (int v = 0; v < attribute.numValues(); v++) {
+					writeString(out, attribute.value(v));
+				}
+			}
+		}
+
+		pad(out);
+		for (int j = 0; j < numAttributes; j++) {
+			byte type = typeOf(data.attribute(j));
+			for (int i = 0; i < numInstances; i++) {
+				Instance instance = data.instance(i);
+				if (type == NUMERIC || type == DATE) {
+					out.writeDouble(instance.value(j));
+				} else {
+					out.writeInt(instance.isMissing(j) ? -1 : (int) instance.value(j));
+				}
+			}
+			pad(out);
+		}
+		if (hasWeights) {
+			for (int i = 0; i < numInstances; i++) {
+				out.writeDouble(data.instance(i).weight());
+			}
+		}
+	}
+
+	private static boolean isSupported(Instances data) {
+		// The dense column layout would expand sparse rows (OneHotEncoder output wider
+		// than OneHotEncoder.DENSE_LIMIT) on reading
+		if (data.numInstances() > 0 && data.instance(0) instanceof SparseInstance) {
+			return false;
+		}
+		for (int j = 0; j < data.numAttributes(); j++) {
+			if (data.attribute(j).isRelationValued()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte typeOf(Attribute attribute) {
+		if (attribute.isDate()) return DATE;
+		if (attribute.isNominal()) return NOMINAL;
+		if (attribute.isString()) return STRING;
+		return NUMERIC;
+	}
+
+	private static int align(int position) {
+		return (position + 7) & ~7;
+	}
+
+	private static void pad(DataOutputStream out) throws IOException {
+		while ((out.size() & 7) != 0) {
+			out.writeByte(0);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buf) {
+		byte[] bytes = new byte[buf.getInt()];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static List<String> readDictionary(ByteBuffer buf) {
+		int size = buf.getInt();
+		List<String> values = new ArrayList<>(size);
+		for (int v = 0; v < size; v++) {
+			values.add(readString(buf));
+		}
+		return values;
+	}
+}
@@ -0,0 +1,456 @@
+package util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.trees.J48;
+import weka.classifiers.trees.j48.C45Split;
+import weka.classifiers.trees.j48.ClassifierSplitModel;
+import weka.classifiers.trees.j48.ClassifierTree;
+import weka.classifiers.trees.j48.NoSplit;
+import weka.core.Capabilities;
+import weka.core.Instance;
+import weka.core.Instances;
+
+// A trained J48 tree flattened into arrays, giving the same class as
+// J48.classifyInstance without walking Weka objects or allocating.
+//
+// Nodes are numbered depth first. A split node tests attribute[node] (numeric:
+// value <= threshold goes to the first child, as C45Split does; nominal: the
+// value index picks the child) and its children are children[first[node] ...].
+// Leaves, and the empty subtrees Weka answers from the parent's distribution,
+// are terminal nodes whose class is precomputed, since with no missing value on
+// the path Weka's per-class probabilities are fixed there.
+//
+// A missing value at a split makes Weka sum the children weighted by the
+// training distribution; that case replays ClassifierTree.getProbs over the
+// arrays with the same operations in the same order, so the result is exact.
+//
+// As a Classifier it also gives J48's distributionForInstance (without Laplace
+// correction), and buildClassifier trains a J48 with its default options and
+// compiles it. It is the form J48 models are saved in by ModelFile.
+public class CompiledJ48 extends AbstractClassifier {
+	private static final long serialVersionUID = 1L;
+
+	private final static double SMALL = 1e-6; // weka.core.Utils.SMALL, used by Utils.gr
+
+	private Instances header;
+	private int numClasses;
+	private int[] attribute;    // -1 for terminal nodes
+	private boolean[] nominal;
+	private double[] threshold;
+	private int[] first;        // index of the first child in children
+	private int[] numChildren;
+	private int[] children;
+	private boolean[] empty;    // skipped when a missing value spreads over the children
+	private int[] prediction;   // class of terminal nodes
+	private double[][] probs;   // class probabilities of terminal nodes
+	private double[][] weights; // share of each child at split nodes
+
+	// An empty tree, for buildClassifier
+	public CompiledJ48() {
+	}
+
+	private void init(Instances header, Builder b) {
+		int n = b.attribute.size();
+		this.header = header;
+		numClasses = b.numClasses;
+		attribute = new int[n];
+		nominal = new boolean[n];
+		threshold = new double[n];
+		first = new int[n];
+		numChildren = new int[n];
+		empty = new boolean[n];
+		prediction = new int[n];
+		probs = b.probs.toArray(new double[n][]);
+		weights = b.weights.toArray(new double[n][]);
+		for (int i = 0; i < n; i++) {
+			attribute[i] = b.attribute.get(i);
+			nominal[i] = b.nominal.get(i);
+			threshold[i] = b.threshold.get(i);
+			first[i] = b.first.get(i);
+			numChildren[i] = b.numChildren.get(i);
+			empty[i] = b.empty.get(i);
+			prediction[i] = b.prediction.get(i);
+		}
+		children = new int[b.children.size()];
+		for (int i = 0; i < children.length; i++) {
+			children[i] = b.children.get(i);
+		}
+	}
+
+	// Reads what write produced
+	CompiledJ48(Instances header, DataInput in) throws IOException {
+		int n = in.readInt();
+		this.header = header;
+		numClasses = header.numClasses();
+		attribute = new int[n];
+		nominal = new boolean[n];
+		threshold = new double[n];
+		first = new int[n];
+		numChildren = new int[n];
+		empty = new boolean[n];
+		prediction = new int[n];
+		probs = new double[n][];
+		weights = new double[n][];
+		children = new int[in.readInt()];
+		for (int i = 0; i < n; i++) {
+			attribute[i] = in.readInt();
+			empty[i] = in.readBoolean();
+			if (attribute[i] < 0) {
+				prediction[i] = in.readInt();
+				probs[i] = readDoubles(in, numClasses);
+				continue;
+			}
+			nominal[i] = in.readBoolean();
+			threshold[i] = in.readDouble();
+			first[i] = in.readInt();
+			numChildren[i] = in.readInt();
+			weights[i] = readDoubles(in, numChildren[i]);
+			for (int c = 0; c < numChildren[i]; c++) {
+				children[first[i] + c] = in.readInt();
+			}
+		}
+	}
+
+	public static CompiledJ48 compile(J48 model) throws Exception {
+		CompiledJ48 tree = new CompiledJ48();
+		tree.load(model);
+		return tree;
+	}
+
+	private void load(J48 model) throws Exception {
+		ClassifierTree root = (ClassifierTree) Fields.get(model, J48.class, "m_root");
+		if (root == null || root.getTrainingData() == null) {
+			throw new IllegalArgumentException("J48 model has not been built");
+		}
+		if (model.getUseLaplace()) {
+			throw new IllegalArgumentException("J48 models with Laplace smoothing (-A) are not supported");
+		}
+		Instances header = new Instances(root.getTrainingData(), 0);
+		Builder builder = new Builder(header.numClasses());
+		builder.add(root, header);
+		init(header, builder);
+	}
+
+	// Layout of the data the tree was trained on, class included
+	public Instances header() {
+		return header;
+	}
+
+	public int size() {
+		return attribute.length;
+	}
+
+	void write(DataOutput out) throws IOException {
+		out.writeInt(size());
+		out.writeInt(children.length);
+		for (int i = 0; i < size(); i++) {
+			out.writeInt(attribute[i]);
+			out.writeBoolean(empty[i]);
+			if (attribute[i] < 0) {
+				out.writeInt(prediction[i]);
+				writeDoubles(out, probs[i]);
+				continue;
+			}
+			out.writeBoolean(nominal[i]);
+			out.writeDouble(threshold[i]);
+			out.writeInt(first[i]);
+			out.writeInt(numChildren[i]);
+			writeDoubles(out, weights[i]);
+			for (int c = 0; c < numChildren[i]; c++) {
+				out.writeInt(children[first[i] + c]);
+			}
+		}
+	}
+
+	public Capabilities getCapabilities() {
+		Capabilities result = new J48().getCapabilities();
+		result.setOwner(this);
+		return result;
+	}
+
+	public void buildClassifier(Instances data) throws Exception {
+		J48 model = new J48();
+		model.buildClassifier(data);
+		load(model);
+	}
+
+	public double classifyInstance(Instance instance) {
+		return classify(instance);
+	}
+
+	public double[] distributionForInstance(Instance instance) {
+		return distribution(instance.toDoubleArray());
+	}
+
+	// Same as ClassifierTree.getProbs for every class, not normalized
+	public double[] distribution(double[] values) {
+		int node = 0;
+		while (attribute[node] >= 0) {
+			double v = values[attribute[node]];
+			if (Double.isNaN(v)) {
+				double[] distribution = new double[numClasses];
+				for (int c = 0; c < numClasses; c++) {
+					distribution[c] = probs(0, c, values, 1.0);
+				}
+				return distribution;
+			}
+			node = children[first[node] + (nominal[node] ? (int) v : v <= threshold[node] ? 0 : 1)];
+		}
+		return probs[node].clone();
+	}
+
+	public String toString() {
+		return "Compiled J48 tree: " + size() + " nodes";
+	}
+
+	public int classify(double[] values) {
+		int node = 0;
+		while (attribute[node] >= 0) {
+			double v = values[attribute[node]];
+			if (Double.isNaN(v)) {
+				return classifyWithMissing(values);
+			}
+			node = children[first[node] + (nominal[node] ? (int) v : v <= threshold[node] ? 0 : 1)];
+		}
+		return prediction[node];
+	}
+
+	public int classify(Instance instance) {
+		int node = 0;
+		while (attribute[node] >= 0) {
+			double v = instance.value(attribute[node]);
+			if (Double.isNaN(v)) {
+				return classifyWithMissing(instance.toDoubleArray());
+			}
+			node = children[first[node] + (nominal[node] ? (int) v : v <= threshold[node] ? 0 : 1)];
+		}
+		return prediction[node];
+	}
+
+	// Java source of a class with a static classify(double[]) equivalent to this tree.
+	// Split nodes become methods and terminal nodes are inlined; trees of many
+	// thousands of nodes can still exceed the 64K constants a class file may hold.
+	public String toJavaSource(String className) {
+		StringBuilder src = new StringBuilder();
+		src.append("// Generated from a J48 model by util.CompiledJ48, do not edit\n");
+		src.append("public final class ").append(className).append(" {\n");
+		src.append("\tpublic static int classify(double[] x) {\n");
+		src.append("\t\tint c = ").append(call(0, "n", "(x)", "")).append(";\n");
+		src.append("\t\tif (c >= 0) {\n\t\t\treturn c;\n\t\t}\n");
+		src.append("\t\t// A missing value on the path: same sums as ClassifierTree.getProbs\n");
+		src.append("\t\tdouble max = -1;\n\t\tint best = 0;\n");
+		src.append("\t\tfor (int k = 0; k < ").append(numClasses).append("; k++) {\n");
+		src.append("\t\t\tdouble p = ").append(call(0, "p", "(k, x, 1.0)", "1.0")).append(";\n");
+		src.append("\t\t\tif (p - max > ").append(SMALL).append(") {\n\t\t\t\tmax = p;\n\t\t\t\tbest = k;\n\t\t\t}\n");
+		src.append("\t\t}\n\t\treturn best;\n\t}\n");
+		for (int node = 0; node < size(); node++) {
+			if (attribute[node] < 0) {
+				continue;
+			}
+			// nN: class of the terminal reached, or -1 if a missing value is met
+			src.append("\n\tprivate static int n").append(node).append("(double[] x) {\n");
+			src.append("\t\tdouble v = x[").append(attribute[node]).append("];\n");
+			src.append("\t\tif (Double.isNaN(v)) {\n\t\t\treturn -1;\n\t\t}\n");
+			appendBranches(src, node, "n", "(x)", "");
+			src.append("\t}\n");
+			// pN: Weka's getProbs for class k
+			src.append("\n\tprivate static double p").append(node).append("(int k, double[] x, double w) {\n");
+			src.append("\t\tdouble v = x[").append(attribute[node]).append("];\n");
+			src.append("\t\tif (Double.isNaN(v)) {\n\t\t\tdouble prob = 0;\n");
+			for (int i = 0; i < numChildren[node]; i++) {
+				int child = children[first[node] + i];
+				if (!empty[child]) {
+					String weight = Double.toHexString(weights[node][i]) + " * w";
+					src.append("\t\t\tprob += ").append(call(child, "p", "(k, x, " + weight + ")", weight)).append(";\n");
+				}
+			}
+			src.append("\t\t\treturn prob;\n\t\t}\n");
+			appendBranches(src, node, "p", "(k, x, w)", "w");
+			src.append("\t}\n");
+		}
+		src.append("}\n");
+		return src.toString();
+	}
+
+	private void appendBranches(StringBuilder src, int node, String prefix, String args, String weight) {
+		if (nominal[node]) {
+			src.append("\t\tswitch ((int) v) {\n");
+			for (int i = 0; i < numChildren[node]; i++) {
+				src.append("\t\tcase ").append(i).append(":\n\t\t\treturn ")
+						.append(call(children[first[node] + i], prefix, args, weight)).append(";\n");
+			}
+			src.append("\t\tdefault:\n\t\t\tthrow new ArrayIndexOutOfBoundsException((int) v);\n\t\t}\n");
+		} else {
+			src.append("\t\treturn v <= ").append(Double.toHexString(threshold[node])).append(" ? ")
+					.append(call(children[first[node]], prefix, args, weight)).append(" : ")
+					.append(call(children[first[node] + 1], prefix, args, weight)).append(";\n");
+		}
+	}
+
+	// Call of a split node's method, or the value of a terminal node: its class
+	// for "n", (weight) * probability of class k for "p"
+	private String call(int node, String prefix, String args, String weight) {
+		if (attribute[node] >= 0) {
+			return prefix + node + args;
+		}
+		if (prefix.equals("n")) {
+			return Integer.toString(prediction[node]);
+		}
+		StringBuilder p = new StringBuilder(weight).append(" * ");
+		for (int c = 0; c < numClasses - 1; c++) {
+			p.append(c == 0 ? "(" : "").append("k == ").append(c).append(" ? ").append(Double.toHexString(probs[node][c]))
+					.append(" : ");
+		}
+		p.append(Double.toHexString(probs[node][numClasses - 1])).append(numClasses > 1 ? ")" : "");
+		return p.toString();
+	}
+
+	private int classifyWithMissing(double[] values) {
+		double max = -1;
+		int best = 0;
+		for (int c = 0; c < numClasses; c++) {
+			double p = probs(0, c, values, 1.0);
+			if (p - max > SMALL) {
+				max = p;
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	private double probs(int node, int c, double[] values, double weight) {
+		if (attribute[node] < 0) {
+			return weight * probs[node][c];
+		}
+		double v = values[attribute[node]];
+		if (Double.isNaN(v)) {
+			double prob = 0;
+			for (int i = 0; i < numChildren[node]; i++) {
+				int child = children[first[node] + i];
+				if (!empty[child]) {
+					prob += probs(child, c, values, weights[node][i] * weight);
+				}
+			}
+			return prob;
+		}
+		int child = children[first[node] + (nominal[node] ? (int) v : v <= threshold[node] ? 0 : 1)];
+		return empty[child] ? weight * probs[child][c] : probs(child, c, values, weight);
+	}
+
+	private static void writeDoubles(DataOutput out, double[] values) throws IOException {
+		for (double value : values) {
+			out.writeDouble(value);
+		}
+	}
+
+	private static double[] readDoubles(DataInput in, int n) throws IOException {
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+
+	private static class Builder {
+		final int numClasses;
+		final List<Integer> attribute = new ArrayList<>();
+		final List<Boolean> nominal = new ArrayList<>();
+		final List<Double> threshold = new ArrayList<>();
+		final List<Integer> first = new ArrayList<>();
+		final List<Integer> numChildren = new ArrayList<>();
+		final List<Integer> children = new ArrayList<>();
+		final List<Boolean> empty = new ArrayList<>();
+		final List<Integer> prediction = new ArrayList<>();
+		final List<double[]> probs = new ArrayList<>();
+		final List<double[]> weights = new ArrayList<>();
+
+		Builder(int numClasses) {
+			this.numClasses = numClasses;
+		}
+
+		int add(ClassifierTree tree, Instances header) throws Exception {
+			ClassifierSplitModel model = tree.getLocalModel();
+			if (tree.isLeaf()) {
+				if (!(model instanceof NoSplit)) {
+					throw new IllegalArgumentException("Unsupported leaf model: " + model.getClass().getName());
+				}
+				double[] p = new double[numClasses];
+				for (int c = 0; c < numClasses; c++) {
+					p[c] = model.distribution().prob(c);
+				}
+				return terminal(p, isEmpty(tree));
+			}
+			if (!(model instanceof C45Split)) {
+				throw new IllegalArgumentException("Unsupported split model: " + model.getClass().getName());
+			}
+			C45Split split = (C45Split) model;
+			ClassifierTree[] sons = tree.getSons();
+			int node = newNode(split.attIndex(), header.attribute(split.attIndex()).isNominal(), split.splitPoint(),
+					false, -1, null);
+			double[] w = new double[sons.length];
+			for (int i = 0; i < sons.length; i++) {
+				w[i] = split.distribution().perBag(i) / split.distribution().total();
+			}
+			weights.set(node, w);
+
+			// Children are added after the node's own slots are reserved, so the slots are contiguous
+			int slots = children.size();
+			first.set(node, slots);
+			numChildren.set(node, sons.length);
+			for (int i = 0; i < sons.length; i++) {
+				children.add(-1);
+			}
+			for (int i = 0; i < sons.length; i++) {
+				int child;
+				if (isEmpty(sons[i])) {
+					// Weka answers from this split's distribution for that subset
+					double[] p = new double[numClasses];
+					for (int c = 0; c < numClasses; c++) {
+						p[c] = split.classProb(c, null, i);
+					}
+					child = terminal(p, true);
+				} else {
+					child = add(sons[i], header);
+				}
+				children.set(slots + i, child);
+			}
+			return node;
+		}
+
+		private static boolean isEmpty(ClassifierTree tree) throws ReflectiveOperationException {
+			return (Boolean) Fields.get(tree, ClassifierTree.class, "m_isEmpty");
+		}
+
+		private int terminal(double[] p, boolean isEmpty) {
+			// Same argmax as ClassifierTree.classifyInstance with weight 1
+			double max = -1;
+			int best = 0;
+			for (int c = 0; c < numClasses; c++) {
+				if (p[c] - max > SMALL) {
+					max = p[c];
+					best = c;
+				}
+			}
+			return newNode(-1, false, Double.NaN, isEmpty, best, p);
+		}
+
+		private int newNode(int att, boolean isNominal, double split, boolean isEmpty, int predicted, double[] p) {
+			attribute.add(att);
+			nominal.add(isNominal);
+			threshold.add(split);
+			first.add(-1);
+			numChildren.add(0);
+			empty.add(isEmpty);
+			prediction.add(predicted);
+			probs.add(p);
+			weights.add(null);
+			return attribute.size() - 1;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.rules.OneR;
+import weka.core.Attribute;
+import weka.core.Capabilities;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+// The rule of a trained OneR as plain arrays, classifying exactly as
+// OneR.classifyInstance: a missing value gives the rule's missing value class
+// (or class 0), a nominal value picks its class, and a numeric value takes the
+// class of the first interval whose breakpoint it is below. buildClassifier
+// trains a OneR with its default options and compiles it. It is the form OneR
+// models are saved in by ModelFile.
+public class CompiledOneR extends AbstractClassifier {
+	private static final long serialVersionUID = 1L;
+
+	private int attribute;       // -1 when OneR fell back to ZeroR
+	private boolean nominal;
+	private double[] breakpoints;
+	private int[] classifications;
+	private int missingValueClass;
+	private double constant;     // ZeroR's prediction
+
+	// An empty rule, for buildClassifier
+	public CompiledOneR() {
+	}
+
+	private void init(int attribute, boolean nominal, double[] breakpoints, int[] classifications,
+			int missingValueClass, double constant) {
+		this.attribute = attribute;
+		this.nominal = nominal;
+		this.breakpoints = breakpoints;
+		this.classifications = classifications;
+		this.missingValueClass = missingValueClass;
+		this.constant = constant;
+	}
+
+	// Reads what write produced
+	CompiledOneR(DataInput in) throws IOException {
+		attribute = in.readInt();
+		nominal = in.readBoolean();
+		breakpoints = new double[in.readInt()];
+		for (int i = 0; i < breakpoints.length; i++) {
+			breakpoints[i] = in.readDouble();
+		}
+		classifications = new int[in.readInt()];
+		for (int i = 0; i < classifications.length; i++) {
+			classifications[i] = in.readInt();
+		}
+		missingValueClass = in.readInt();
+		constant = in.readDouble();
+	}
+
+	// header: the layout of the data the model was trained on
+	public static CompiledOneR compile(OneR model, Instances header) throws Exception {
+		CompiledOneR rule = new CompiledOneR();
+		rule.load(model, header);
+		return rule;
+	}
+
+	private void load(OneR model, Instances header) throws Exception {
+		Classifier zeroR = (Classifier) Fields.get(model, OneR.class, "m_ZeroR");
+		if (zeroR != null) {
+			Instance any = new DenseInstance(header.numAttributes());
+			any.setDataset(header);
+			init(-1, false, new double[0], new int[0], -1, zeroR.classifyInstance(any));
+			return;
+		}
+		Object rule = Fields.get(model, OneR.class, "m_rule");
+		if (rule == null) {
+			throw new IllegalArgumentException("OneR model has not been built");
+		}
+		Class<?> type = rule.getClass();
+		Attribute attribute = (Attribute) Fields.get(rule, type, "m_attr");
+		double[] breakpoints = (double[]) Fields.get(rule, type, "m_breakpoints");
+		init(attribute.index(), attribute.isNominal(),
+				breakpoints == null ? new double[0] : breakpoints.clone(),
+				((int[]) Fields.get(rule, type, "m_classifications")).clone(),
+				(Integer) Fields.get(rule, type, "m_missingValueClass"), 0);
+	}
+
+	void write(DataOutput out) throws IOException {
+		out.writeInt(attribute);
+		out.writeBoolean(nominal);
+		out.writeInt(breakpoints.length);
+		for (double breakpoint : breakpoints) {
+			out.writeDouble(breakpoint);
+		}
+		out.writeInt(classifications.length);
+		for (int classification : classifications) {
+			out.writeInt(classification);
+		}
+		out.writeInt(missingValueClass);
+		out.writeDouble(constant);
+	}
+
+	public Capabilities getCapabilities() {
+		Capabilities result = new OneR().getCapabilities();
+		result.setOwner(this);
+		return result;
+	}
+
+	public void buildClassifier(Instances data) throws Exception {
+		OneR model = new OneR();
+		model.buildClassifier(data);
+		load(model, new Instances(data, 0));
+	}
+
+	public double classifyInstance(Instance instance) {
+		if (attribute < 0) {
+			return constant;
+		}
+		double value = instance.value(attribute);
+		if (Double.isNaN(value)) {
+			return missingValueClass != -1 ? missingValueClass : 0;
+		}
+		int v = 0;
+		if (nominal) {
+			v = (int) value;
+		} else {
+			while (v < breakpoints.length && value >= breakpoints[v]) {
+				v++;
+			}
+		}
+		return classifications[v];
+	}
+
+	public String toString() {
+		return attribute < 0 ? "OneR: ZeroR" : "OneR: attribute " + attribute + ", " + classifications.length + " rules";
+	}
+}
@@ -1,102 +1,263 @@
 package util;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
+import weka.core.Attribute;
+import weka.core.Instances;
+
 public class Converter {
+	public final static String DEFAULT_RELATION = "auto_mpg";
+
+	// Rows kept in memory before the data section is spilled to a temp file
+	private static final int SAMPLE_SIZE = 100;
+	// Columns with fewer distinct values than this become nominal
+	static final int NOMINAL_LIMIT = 20;
+
 	public static void csv2Arff(String csvFilePath, String arffFilePath) throws IOException {
-		Map<String, String> columnTypes;
-		String[] headers;
+		csv2Arff(csvFilePath, arffFilePath, DEFAULT_RELATION);
+	}
 
-		// First reader for detecting column types
-		try (BufferedReader br = new BufferedReader(new FileReader(csvFilePath))) {
-			String line = br.readLine(); // Read header
-			if (line == null) return;
+	// Single pass: the ARFF header depends on the types of every row, so the data
+	// section is buffered (in memory for small inputs, in a temp file beyond
+	// SAMPLE_SIZE rows) and written after the header once the scan is done.
+	public static void csv2Arff(String csvFilePath, String arffFilePath, String relation) throws IOException {
+		Path arffPath = Paths.get(arffFilePath);
+		Path spill = null;
+
+		try (CsvReader csv = new CsvReader(Files.newBufferedReader(Paths.get(csvFilePath), StandardCharsets.UTF_8))) {
+			if (!csv.next()) return;
+
+			ColumnType[] columns = readColumns(csv);
+			CharArrayWriter sample = new CharArrayWriter();
+			Writer body = sample;
+			int rows = 0;
+			try {
+				while (csv.next()) {
+					if (rows++ == SAMPLE_SIZE) {
+						spill = Files.createTempFile(tempDir(arffPath), "csv2arff", ".tmp");
+						body = Files.newBufferedWriter(spill, StandardCharsets.UTF_8);
+						sample.writeTo(body);
+						sample = null;
+					}
+					writeRow(csv, columns, body);
+				}
+			} finally {
+				if (body != sample) {
+					body.close();
+				}
+			}
 
-			headers = line.split(",");
-			columnTypes = detectColumnTypes(br, headers); // Detect column types
+			try (OutputStream os = Files.newOutputStream(arffPath)) {
+				Writer bw = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+				writeHeader(bw, relation, columns);
+				if (sample != null) {
+					sample.writeTo(bw);
+					bw.flush();
+				} else {
+					bw.flush();
+					appendFile(spill, os);
+				}
+			}
+		} finally {
+			if (spill != null) {
+				Files.deleteIfExists(spill);
+			}
 		}
+	}
 
-		// Second reader for writing data to ARFF
-		try (BufferedReader br = new BufferedReader(new FileReader(csvFilePath));
-			 BufferedWriter bw = new BufferedWriter(new FileWriter(arffFilePath))) {
+	public static Instances csv2Instances(String csvFilePath) throws IOException {
+		return csv2Instances(csvFilePath, DEFAULT_RELATION);
+	}
 
-			br.readLine(); // Skip header in data rows
+	// Same conversion as csv2Arff without touching the disk or going through ARFF
+	// text: the file is parsed in parallel straight into columns (CsvParser)
+	public static Instances csv2Instances(String csvFilePath, String relation) throws IOException {
+		return CsvParser.parse(csvFilePath, relation);
+	}
 
-			// Write ARFF header
-			bw.write("@RELATION auto_mpg\n\n");
-			for (String header : headers) {
-				String type = columnTypes.get(header);
-				bw.write(String.format("@ATTRIBUTE %s %s\n", header, type));
+	private static ColumnType[] readColumns(CsvReader csv) {
+		ColumnType[] columns = new ColumnType[csv.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = new ColumnType(csv.get(i));
+		}
+		return columns;
+	}
+
+	private static void writeHeader(Writer bw, String relation, ColumnType[] columns) throws IOException {
+		bw.write("@RELATION " + quote(relation) + "\n\n");
+		for (ColumnType column : columns) {
+			bw.write("@ATTRIBUTE " + quote(column.name) + " " + column.arffType() + "\n");
+		}
+		bw.write("\n@DATA\n");
+	}
+
+	private static void writeRow(CsvReader csv, ColumnType[] columns, Writer body) throws IOException {
+		if (csv.size() > columns.length) {
+			throw new IOException("Record " + csv.recordNumber() + " has " + csv.size()
+					+ " fields, expected " + columns.length);
+		}
+
+		char[] chars = csv.chars();
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) body.write(',');
+			if (i >= csv.size() || csv.isMissing(i)) {
+				body.write('?');
+				continue;
 			}
-			bw.write("\n@DATA\n");
-
-			// Write data rows
-			String line;
-			while ((line = br.readLine()) != null) {
-				String[] values = line.split(",");
-				StringBuilder row = new StringBuilder();
-
-				for (int i = 0; i < values.length; i++) {
-					String value = values[i].trim();
-					if (headers[i].equals("car_name")) {
-						row.append("\"").append(value).append("\""); // Enclose car_name in quotes
-					} else {
-						row.append(value);
-					}
-					if (i < values.length - 1) row.append(",");
+
+			int start = csv.start(i);
+			int end = csv.end(i);
+			if (columns[i].numeric() && isNumeric(chars, start, end)) {
+				// Numeric path: copy the chars straight through, no String per cell
+				columns[i].acceptNumeric();
+				body.write(chars, start, end - start);
+			} else {
+				String value = csv.get(i);
+				body.write(columns[i].accept(value) ? value : quote(value));
+			}
+		}
+		body.write('\n');
+	}
+
+	private static void appendFile(Path src, OutputStream os) throws IOException {
+		if (os instanceof FileOutputStream) {
+			FileChannel out = ((FileOutputStream) os).getChannel();
+			try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ)) {
+				long size = in.size();
+				for (long done = 0; done < size; ) {
+					done += in.transferTo(done, size - done, out);
 				}
-				bw.write(row.toString() + "\n");
 			}
+		} else {
+			Files.copy(src, os);
 		}
 	}
 
+	private static Path tempDir(Path arffPath) {
+		Path parent = arffPath.toAbsolutePath().getParent();
+		return parent != null ? parent : Paths.get(System.getProperty("java.io.tmpdir"));
+	}
 
+	// Type inference shared by every CSV ingest path: a column is NUMERIC while all
+	// of its non-missing cells parse as doubles, nominal while it has fewer than
+	// NOMINAL_LIMIT distinct values and STRING otherwise. Once a column is no
+	// longer numeric, every cell is one of its labels, numbers included. A column
+	// demoted from numeric after numeric cells were seen becomes STRING, since
+	// those values were not tracked as nominal labels.
+	static class ColumnType {
+		final String name;
+		private boolean numeric = true;
+		private boolean numericSeen;
+		private Set<String> values = new LinkedHashSet<>();
 
-	private static Map<String, String> detectColumnTypes(BufferedReader br, String[] headers) throws IOException {
-		Map<String, String> columnTypes = new HashMap<>();
-		int sampleSize = 100;  // Number of rows to sample for type detection
-		List<String[]> samples = new ArrayList<>();
+		ColumnType(String name) {
+			this.name = name;
+		}
 
-		// Collect samples
-		String line;
-		while ((line = br.readLine()) != null && sampleSize-- > 0) {
-			samples.add(line.split(","));
+		// A numeric cell of a column that is still numeric
+		void acceptNumeric() {
+			numericSeen = true;
 		}
 
-		// Detect type for each column based on samples
-		for (int i = 0; i < headers.length; i++) {
-			String header = headers[i];
-			boolean isNumeric = true;
-			Set<String> uniqueValues = new HashSet<>();
+		// Returns true if the value was accepted as a number
+		boolean accept(String value) {
+			if (numeric && isNumeric(value)) {
+				acceptNumeric();
+				return true;
+			}
+			if (numeric) {
+				numeric = false;
+				if (numericSeen) values = null;
+			}
+			if (values != null) {
+				values.add(value);
+				if (values.size() >= NOMINAL_LIMIT) values = null;
+			}
+			return false;
+		}
 
-			for (String[] sample : samples) {
-				if (i < sample.length) {
-					String value = sample[i].trim();
-					if (value.isEmpty() || value.equals("?")) continue;
-					uniqueValues.add(value);
+		boolean numeric() {
+			return numeric;
+		}
 
-					// Check if numeric
-					if (isNumeric && !isNumeric(value)) {
-						isNumeric = false;
-					}
-				}
+		// The column as it reads from the ARFF header arffType() writes
+		Attribute attribute() {
+			if (numeric) {
+				return new Attribute(name);
 			}
+			return values != null ? new Attribute(name, new ArrayList<>(values)) : new Attribute(name, (List<String>) null);
+		}
 
-			// Assign type based on analysis
-			if (isNumeric) {
-				columnTypes.put(header, "NUMERIC");
-			} else if (uniqueValues.size() < 20) {
-				columnTypes.put(header, "{" + String.join(",", uniqueValues) + "}");
+		String arffType() {
+			if (numeric) {
+				return "NUMERIC";
+			} else if (values != null) {
+				StringJoiner joiner = new StringJoiner(",", "{", "}");
+				for (String value : values) {
+					joiner.add(quote(value));
+				}
+				return joiner.toString();
 			} else {
-				columnTypes.put(header, "STRING");
+				return "STRING";
+			}
+		}
+	}
+
+	// ARFF quoting, compatible with weka.core.Utils.quote
+	static String quote(String value) {
+		boolean needsQuotes = value.isEmpty() || value.equals("?");
+		for (int i = 0; i < value.length() && !needsQuotes; i++) {
+			switch (value.charAt(i)) {
+				case ' ': case '\t': case '\n': case '\r': case ',': case '\'': case '"':
+				case '\\': case '{': case '}': case '%':
+					needsQuotes = true;
 			}
 		}
+		if (!needsQuotes) return value;
 
-		return columnTypes;
+		StringBuilder sb = new StringBuilder(value.length() + 2).append('\'');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '\'': sb.append("\\'"); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default: sb.append(c);
+			}
+		}
+		return sb.append('\'').toString();
+	}
+
+	// Allocation-free check for plain decimal numbers ([+-]digits[.digits][e[+-]digits]).
+	// Anything else falls back to Double.parseDouble so the accepted syntax is unchanged.
+	static boolean isNumeric(char[] c, int start, int end) {
+		int i = start;
+		if (i < end && (c[i] == '+' || c[i] == '-')) i++;
+		int digits = 0;
+		while (i < end && c[i] >= '0' && c[i] <= '9') { i++; digits++; }
+		if (i < end && c[i] == '.') {
+			i++;
+			while (i < end && c[i] >= '0' && c[i] <= '9') { i++; digits++; }
+		}
+		if (digits > 0 && i < end && (c[i] == 'e' || c[i] == 'E')) {
+			int exponent = ++i;
+			if (i < end && (c[i] == '+' || c[i] == '-')) exponent = ++i;
+			while (i < end && c[i] >= '0' && c[i] <= '9') i++;
+			if (i == exponent) return false;
+		}
+		return digits > 0 && i == end;
 	}
 
-	private static boolean isNumeric(String str) {
+	static boolean isNumeric(String str) {
 		try {
 			Double.parseDouble(str);
 			return true;
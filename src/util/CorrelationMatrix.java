@@ -0,0 +1,292 @@
+package util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import weka.core.Instances;
+
+// Pearson or Spearman correlations between all numeric attributes at once.
+//
+// Every column is centered and scaled to unit length once (missing values take
+// the column mean, as CorrelationAttributeEval does), so the whole matrix is the
+// Gram matrix U * U^T of the k x n standardized columns. It is computed in
+// TILE x TILE blocks of column pairs, in parallel, each block walking the rows
+// in CHUNK-sized slices so the rows it touches stay in cache. Spearman uses
+// the same path on (tie-averaged) ranks.
+public class CorrelationMatrix {
+	public enum Method { PEARSON, SPEARMAN }
+
+	private final static int TILE = 16;
+	private final static int CHUNK = 4096;
+
+	// Longest side of the heat map in pixels (64 MB of RGB pixels)
+	private final static int MAX_HEAT_MAP_SIDE = 4096;
+	private final static int CELL = 56;
+	// Smallest cells that still get their value, and their attribute names
+	private final static int VALUE_CELL = 40;
+	private final static int NAME_CELL = 8;
+
+	private final int[] attributes;
+	private final String[] names;
+	private final double[][] values;
+	private final Method method;
+
+	private CorrelationMatrix(int[] attributes, String[] names, double[][] values, Method method) {
+		this.attributes = attributes;
+		this.names = names;
+		this.values = values;
+		this.method = method;
+	}
+
+	public static CorrelationMatrix compute(Instances dataset, Method method) throws Exception {
+		List<Integer> numeric = new ArrayList<>();
+		for (int j = 0; j < dataset.numAttributes(); j++) {
+			if (dataset.attribute(j).isNumeric()) {
+				numeric.add(j);
+			}
+		}
+		int k = numeric.size();
+		int n = dataset.numInstances();
+		int[] attributes = new int[k];
+		String[] names = new String[k];
+		for (int a = 0; a < k; a++) {
+			attributes[a] = numeric.get(a);
+			names[a] = dataset.attribute(attributes[a]).name();
+		}
+
+		double[][] columns = new double[k][];
+		Parallel.forEach(k, a -> {
+			double[] column = dataset.attributeToDoubleArray(attributes[a]);
+			if (method == Method.SPEARMAN) {
+				rank(column);
+			}
+			standardize(column);
+			columns[a] = column;
+		});
+
+		double[][] values = new double[k][k];
+		int tiles = (k + TILE - 1) / TILE;
+		int pairs = tiles * (tiles + 1) / 2;
+		Parallel.forEach(pairs, p -> {
+			// p -> (ti, tj) with ti <= tj, row by row of the upper triangle of tiles
+			int ti = 0;
+			int rest = p;
+			while (rest >= tiles - ti) {
+				rest -= tiles - ti;
+				ti++;
+			}
+			multiplyTile(columns, values, ti * TILE, (ti + rest) * TILE, n);
+		});
+		for (int a = 0; a < k; a++) {
+			for (int b = 0; b < a; b++) {
+				values[a][b] = values[b][a];
+			}
+		}
+		return new CorrelationMatrix(attributes, names, values, method);
+	}
+
+	public int size() {
+		return attributes.length;
+	}
+
+	// Index in the dataset of the i-th attribute of the matrix
+	public int attributeIndex(int i) {
+		return attributes[i];
+	}
+
+	public String name(int i) {
+		return names[i];
+	}
+
+	public double get(int i, int j) {
+		return values[i][j];
+	}
+
+	public Method method() {
+		return method;
+	}
+
+	public void writeCsv(String path) throws IOException {
+		try (PrintWriter writer = new PrintWriter(new FileWriter(path))) {
+			StringBuilder header = new StringBuilder("attribute");
+			for (String name : names) {
+				header.append(',').append(name);
+			}
+			writer.println(header);
+			for (int i = 0; i < size(); i++) {
+				StringBuilder row = new StringBuilder(names[i]);
+				for (int j = 0; j < size(); j++) {
+					row.append(',').append(String.format("%.6f", values[i][j]));
+				}
+				writer.println(row);
+			}
+		}
+	}
+
+	// Blue (-1) to white (0) to red (+1), with the value printed in each cell.
+	// Cells shrink to keep the image within MAX_HEAT_MAP_SIDE, losing their value
+	// and then the names once these no longer fit; past one pixel per cell, the
+	// rows and columns are sampled evenly.
+	public void writeHeatMap(String path) throws IOException {
+		int margin = 110;
+		int grid = MAX_HEAT_MAP_SIDE - margin - 10;
+		int cell = Math.max(1, Math.min(CELL, grid / Math.max(1, size())));
+		int shown = Math.min(size(), grid / cell);
+		int side = margin + cell * shown + 10;
+		int fontSize = Math.min(11, cell);
+		BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, side, side);
+			g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, fontSize));
+			for (int a = 0; a < shown; a++) {
+				int i = (int) ((long) a * size() / shown);
+				if (cell >= NAME_CELL) {
+					g.setColor(Color.BLACK);
+					g.drawString(names[i], 4, margin + a * cell + cell / 2 + fontSize / 3 + 1);
+					drawVertical(g, names[i], margin + a * cell + cell / 2 + fontSize / 3 + 1, margin - 6);
+				}
+				for (int b = 0; b < shown; b++) {
+					double r = values[i][(int) ((long) b * size() / shown)];
+					g.setColor(color(r));
+					g.fillRect(margin + b * cell, margin + a * cell, cell, cell);
+					if (cell >= VALUE_CELL) {
+						g.setColor(Math.abs(r) > 0.6 ? Color.WHITE : Color.BLACK);
+						g.drawString(String.format("%.2f", r), margin + b * cell + cell / 2 - 13, margin + a * cell + cell / 2 + 4);
+					}
+				}
+			}
+		} finally {
+			g.dispose();
+		}
+		ImageIO.write(image, "png", new File(path));
+	}
+
+	private static void drawVertical(Graphics2D g, String text, int x, int y) {
+		Graphics2D rotated = (Graphics2D) g.create();
+		try {
+			rotated.translate(x, y);
+			rotated.rotate(-Math.PI / 2);
+			rotated.drawString(text, 0, 0);
+		} finally {
+			rotated.dispose();
+		}
+	}
+
+	private static Color color(double r) {
+		if (Double.isNaN(r)) {
+			return Color.LIGHT_GRAY;
+		}
+		float t = (float) Math.min(1, Math.abs(r));
+		int fade = Math.round(255 * (1 - t));
+		return r >= 0 ? new Color(255 - Math.round(75 * t), fade, fade) : new Color(fade, fade, 255 - Math.round(75 * t));
+	}
+
+	// Centers the column and scales it to unit length; missing values become the
+	// mean (0 after centering). Constant columns stay all 0.
+	private static void standardize(double[] column) {
+		double sum = 0;
+		int valid = 0;
+		for (double value : column) {
+			if (!Double.isNaN(value)) {
+				sum += value;
+				valid++;
+			}
+		}
+		double mean = valid == 0 ? 0 : sum / valid;
+		double squares = 0;
+		for (int i = 0; i < column.length; i++) {
+			column[i] = Double.isNaN(column[i]) ? 0 : column[i] - mean;
+			squares += column[i] * column[i];
+		}
+		double norm = Math.sqrt(squares);
+		for (int i = 0; i < column.length; i++) {
+			column[i] = norm > 0 ? column[i] / norm : 0;
+		}
+	}
+
+	// Replaces the values with their 1-based ranks, ties getting the average rank
+	private static void rank(double[] column) {
+		double[] sorted = column.clone();
+		int valid = Quantiles.moveMissingLast(sorted);
+		Arrays.sort(sorted, 0, valid);
+		for (int i = 0; i < column.length; i++) {
+			if (Double.isNaN(column[i])) continue;
+			int first = lowerBound(sorted, valid, column[i]);
+			int last = lowerBound(sorted, valid, Math.nextUp(column[i])) - 1;
+			column[i] = (first + last) / 2.0 + 1;
+		}
+	}
+
+	private static int lowerBound(double[] sorted, int size, double value) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static void multiplyTile(double[][] columns, double[][] values, int rowStart, int colStart, int n) {
+		int k = columns.length;
+		int rowEnd = Math.min(k, rowStart + TILE);
+		int colEnd = Math.min(k, colStart + TILE);
+		for (int from = 0; from < n; from += CHUNK) {
+			int to = Math.min(n, from + CHUNK);
+			for (int a = rowStart; a < rowEnd; a++) {
+				double[] x = columns[a];
+				int b = Math.max(a, colStart);
+				// Four columns per pass: x[i] is loaded once and the four sums are independent
+				for (; b + 4 <= colEnd; b += 4) {
+					double[] y0 = columns[b];
+					double[] y1 = columns[b + 1];
+					double[] y2 = columns[b + 2];
+					double[] y3 = columns[b + 3];
+					double dot0 = 0, dot1 = 0, dot2 = 0, dot3 = 0;
+					for (int i = from; i < to; i++) {
+						double xi = x[i];
+						dot0 += xi * y0[i];
+						dot1 += xi * y1[i];
+						dot2 += xi * y2[i];
+						dot3 += xi * y3[i];
+					}
+					values[a][b] += dot0;
+					values[a][b + 1] += dot1;
+					values[a][b + 2] += dot2;
+					values[a][b + 3] += dot3;
+				}
+				for (; b < colEnd; b++) {
+					double[] y = columns[b];
+					double dot = 0;
+					for (int i = from; i < to; i++) {
+						dot += x[i] * y[i];
+					}
+					values[a][b] += dot;
+				}
+			}
+		}
+		// Unit-length columns: the diagonal is 1 unless the column was constant
+		for (int a = Math.max(rowStart, colStart); a < Math.min(rowEnd, colEnd); a++) {
+			values[a][a] = values[a][a] > 0 ? 1 : 0;
+		}
+	}
+}
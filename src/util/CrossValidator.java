@@ -0,0 +1,164 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Instances;
+
+// Fold-parallel replacement for Evaluation.crossValidateModel followed by
+// buildClassifier on the full dataset.
+//
+// The folds are generated exactly as crossValidateModel does (same randomize,
+// stratify and trainCV calls on the same Random), the fold models and the final
+// model are built concurrently, and the folds are then evaluated in fold order
+// on a single Evaluation. Only model building runs in parallel, so the
+// statistics are bit-identical to the sequential run with the same seed.
+public class CrossValidator {
+	private final int numThreads;
+
+	public CrossValidator() {
+		this(Parallel.THREADS);
+	}
+
+	public CrossValidator(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	// Cross-validates a copy of model per fold and trains model itself on the whole dataset
+	public Evaluation crossValidateAndBuild(Classifier model, Instances dataset, int numFolds, Random random) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		try {
+			return crossValidateAndBuild(model, dataset, numFolds, random, pool);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	public Evaluation crossValidateAndBuild(Classifier model, Instances dataset, int numFolds, Random random,
+			ExecutorService pool) throws Exception {
+		return submit(model, dataset, new Folds(dataset, numFolds, random), pool).await();
+	}
+
+	// Queues the fold models and the final model on pool without waiting for them,
+	// so several classifiers can share one pool and one set of folds
+	public static Run submit(Classifier model, Instances dataset, Folds folds, ExecutorService pool) throws Exception {
+		int numFolds = folds.numFolds();
+
+		// Copy before the final model starts training so the fold models never see its state
+		List<Classifier> copies = new ArrayList<>(numFolds);
+		for (int i = 0; i < numFolds; i++) {
+			copies.add(AbstractClassifier.makeCopy(model));
+		}
+
+		// Each build gets its own Instances (sharing the value arrays) since the folds and
+		// the dataset may be used by other classifiers at the same time
+		Instances full = new Instances(dataset);
+		Future<?> finalModel = pool.submit(() -> {
+			model.buildClassifier(full);
+			return null;
+		});
+		List<Future<Classifier>> foldModels = new ArrayList<>(numFolds);
+		for (int i = 0; i < numFolds; i++) {
+			Classifier copy = copies.get(i);
+			Instances train = new Instances(folds.train(i));
+			foldModels.add(pool.submit(() -> {
+				copy.buildClassifier(train);
+				return copy;
+			}));
+		}
+		return new Run(dataset, folds, foldModels, finalModel);
+	}
+
+	public static class Run {
+		private final Instances dataset;
+		private final Folds folds;
+		private final List<Future<Classifier>> foldModels;
+		private final Future<?> finalModel;
+
+		private Run(Instances dataset, Folds folds, List<Future<Classifier>> foldModels, Future<?> finalModel) {
+			this.dataset = dataset;
+			this.folds = folds;
+			this.foldModels = foldModels;
+			this.finalModel = finalModel;
+		}
+
+		// Evaluates the folds in order as their models complete, then waits for the final model
+		public Evaluation await() throws Exception {
+			FoldEvaluation eval = new FoldEvaluation(dataset);
+			for (int i = 0; i < folds.numFolds(); i++) {
+				Classifier foldModel = get(foldModels.get(i));
+				eval.setPriors(folds.train(i));
+				eval.evaluateModel(foldModel, folds.test(i));
+			}
+			eval.setNumFolds(folds.numFolds());
+
+			get(finalModel);
+			return eval;
+		}
+	}
+
+	static <T> T get(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	// Fold partitions as produced by Evaluation.crossValidateModel. The training
+	// sets consume the Random in fold order, so they are all generated up front.
+	public static class Folds {
+		private final Instances data;
+		private final int numFolds;
+		private final Instances[] train;
+
+		public Folds(Instances dataset, int numFolds, Random random) {
+			this.numFolds = numFolds;
+			data = new Instances(dataset);
+			data.randomize(random);
+			if (data.classAttribute().isNominal()) {
+				data.stratify(numFolds);
+			}
+			train = new Instances[numFolds];
+			for (int i = 0; i < numFolds; i++) {
+				train[i] = data.trainCV(numFolds, i, random);
+			}
+		}
+
+		public int numFolds() {
+			return numFolds;
+		}
+
+		public Instances train(int fold) {
+			return train[fold];
+		}
+
+		public Instances test(int fold) {
+			return data.testCV(numFolds, fold);
+		}
+	}
+
+	private static class FoldEvaluation extends Evaluation {
+		private static final long serialVersionUID = 1L;
+
+		FoldEvaluation(Instances data) throws Exception {
+			super(data);
+		}
+
+		void setNumFolds(int numFolds) {
+			m_NumFolds = numFolds;
+		}
+	}
+}
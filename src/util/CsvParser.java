@@ -0,0 +1,509 @@
+package util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+// Parallel CSV ingest: the file is memory-mapped and split at line starts into
+// one byte range per thread, the ranges are parsed concurrently, straight from
+// the bytes, and the values are assembled into the columns of a ColumnStore.
+// Records follow CsvReader (RFC-4180 quoting, blank lines skipped, empty or "?"
+// unquoted cells missing) and the column types follow Converter.ColumnType, so
+// the dataset is the one Converter.csv2Arff's output loads as.
+//
+// Splitting at line starts assumes no quoted field spans a split. Every range
+// must end where the next one starts; if one does not, the ranges are
+// dropped and the file is parsed again in one range.
+//
+// Plain decimals of up to 15 significant digits with a power of ten within
+// 10^22 are converted with one exact multiplication or division, which is
+// Double.parseDouble's result; other cells go through Double.parseDouble.
+public class CsvParser {
+	// Smallest range worth a thread of its own
+	private static final int MIN_CHUNK = 1 << 20;
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	// The characters Double.parseDouble accepts (decimal, hexadecimal, NaN,
+	// Infinity, type suffixes, surrounding control characters); a cell with any
+	// other one is text
+	private static final boolean[] NUMBER_CHARS = new boolean[128];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+		for (char c : "0123456789abcdefABCDEF+-.xXpPNInity".toCharArray()) {
+			NUMBER_CHARS[c] = true;
+		}
+		// Trimmed by Double.parseDouble
+		for (char c = 0; c <= ' '; c++) {
+			NUMBER_CHARS[c] = true;
+		}
+	}
+
+	public static Instances parse(String path, String relation) throws IOException {
+		return parse(path, relation, 0);
+	}
+
+	// ranges: the number of ranges to split the data into, 0 for one per thread
+	// (with at least MIN_CHUNK bytes each)
+	static Instances parse(String path, String relation, int ranges) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			long size = channel.size();
+			Chunk header = new Chunk(map(channel, 0, size), 0, 0, size, -1, null);
+			if (!header.nextRecord()) {
+				throw new IOException("Empty CSV file: " + path);
+			}
+			String[] names = header.fields();
+			long dataStart = header.position();
+
+			int chunks = ranges > 0 ? ranges
+					: (int) Math.min(Parallel.THREADS, Math.max(1, (size - dataStart) / MIN_CHUNK));
+			long[] starts = new long[chunks + 1];
+			starts[0] = dataStart;
+			starts[chunks] = size;
+			for (int c = 1; c < chunks; c++) {
+				starts[c] = Math.max(starts[c - 1], lineStart(channel, dataStart + (size - dataStart) * c / chunks, size));
+			}
+
+			Chunk[] parsed = parseChunks(channel, starts, names.length, null);
+			for (int c = 0; c < chunks; c++) {
+				if (parsed[c].position() != starts[c + 1]) {
+					// A record crosses a split: a quoted field holds a line break
+					parsed = parseChunks(channel, new long[] { dataStart, size }, names.length, null);
+					starts = new long[] { dataStart, size };
+					break;
+				}
+			}
+			return assemble(channel, starts, parsed, names, relation);
+		}
+	}
+
+	private static Chunk[] parseChunks(FileChannel channel, long[] starts, int numColumns, boolean[] keepText)
+			throws IOException {
+		Chunk[] parsed = new Chunk[starts.length - 1];
+		try {
+			Parallel.forEach(parsed.length, c -> {
+				parsed[c] = new Chunk(map(channel, starts[c], channel.size()), starts[c], starts[c], starts[c + 1],
+						numColumns, keepText);
+				parsed[c].parseAll();
+			});
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+		return parsed;
+	}
+
+	private static Instances assemble(FileChannel channel, long[] starts, Chunk[] parsed, String[] names,
+			String relation) throws IOException {
+		// Errors are reported once the split is known to be right, with their record number in the file
+		long records = 1;
+		for (Chunk chunk : parsed) {
+			if (chunk.error != null) {
+				throw new IOException("Record " + (records + chunk.errorRecord) + " " + chunk.error);
+			}
+			records += chunk.rows;
+		}
+
+		int numColumns = names.length;
+		Converter.ColumnType[] types = columnTypes(names, parsed, null);
+
+		// The numeric cells of a nominal or string column are labels or strings too,
+		// so the ranges are read again keeping their text
+		boolean[] keepText = new boolean[numColumns];
+		boolean reparse = false;
+		for (int j = 0; j < numColumns; j++) {
+			for (Chunk chunk : parsed) {
+				if (!types[j].numeric() && chunk.numbers[j] > 0) {
+					keepText[j] = true;
+					reparse = true;
+				}
+			}
+		}
+		if (reparse) {
+			parsed = parseChunks(channel, starts, numColumns, keepText);
+			types = columnTypes(names, parsed, keepText);
+		}
+		List<Attribute> attributes = new ArrayList<>(numColumns);
+		for (Converter.ColumnType type : types) {
+			attributes.add(type.attribute());
+		}
+
+		int rows = 0;
+		int[] offsets = new int[parsed.length];
+		for (int c = 0; c < parsed.length; c++) {
+			offsets[c] = rows;
+			rows += parsed[c].rows;
+		}
+		int numRows = rows;
+		double[][] columns = new double[numColumns][];
+		Chunk[] chunks = parsed;
+		try {
+			Parallel.forEach(numColumns, j -> {
+				double[] column = new double[numRows];
+				Attribute attribute = attributes.get(j);
+				Map<String, Integer> labels = new HashMap<>();
+				for (int v = 0; attribute.isNominal() && v < attribute.numValues(); v++) {
+					labels.put(attribute.value(v), v);
+				}
+				for (int c = 0; c < chunks.length; c++) {
+					Chunk chunk = chunks[c];
+					if (attribute.isNumeric() || chunk.texts[j] == null) {
+						System.arraycopy(chunk.values[j], 0, column, offsets[c], chunk.rows);
+						continue;
+					}
+					for (int i = 0; i < chunk.rows; i++) {
+						String text = chunk.texts[j][i];
+						column[offsets[c] + i] = text == null ? Double.NaN
+								: attribute.isNominal() ? labels.get(text) : attribute.addStringValue(text);
+					}
+				}
+				columns[j] = column;
+			});
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+		return ColumnStore.of(relation, attributes, columns, null, -1).toInstances();
+	}
+
+	// The cells in file order through ColumnType: for each range, the numbers before
+	// its first text, then its distinct texts in order of appearance. The columns
+	// whose text is kept have all of their distinct cells there, numbers included.
+	private static Converter.ColumnType[] columnTypes(String[] names, Chunk[] parsed, boolean[] keepText) {
+		Converter.ColumnType[] types = new Converter.ColumnType[names.length];
+		for (int j = 0; j < names.length; j++) {
+			types[j] = new Converter.ColumnType(names[j]);
+			boolean kept = keepText != null && keepText[j];
+			for (Chunk chunk : parsed) {
+				if (!kept && chunk.numberFirst[j] && types[j].numeric()) {
+					types[j].acceptNumeric();
+				}
+				for (String text : chunk.distinct.get(j)) {
+					types[j].accept(text);
+				}
+			}
+		}
+		return types;
+	}
+
+	// The first line start at or after position
+	private static long lineStart(FileChannel channel, long position, long size) throws IOException {
+		MappedByteBuffer bytes = map(channel, position - 1, size);
+		for (int i = 0; i < bytes.limit(); i++) {
+			if (bytes.get(i) == '\n') {
+				return position + i;
+			}
+		}
+		return size;
+	}
+
+	// Up to 2 GB from position: a range is mapped from its start to past its end,
+	// since its last record may run over it
+	private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, Integer.MAX_VALUE));
+	}
+
+	// One range of records, parsed into growing columns
+	private static class Chunk {
+		final MappedByteBuffer bytes;
+		final long base;
+		final int end;
+		final int numColumns;
+		final boolean[] keepText;
+		int pos;
+
+		// Fields of the current record, unquoted
+		byte[] field = new byte[64];
+		int[] fieldStarts = new int[16];
+		int[] fieldEnds = new int[16];
+		boolean[] fieldQuoted = new boolean[16];
+		int numFields;
+
+		int rows;
+		double[][] values;
+		String[][] texts;           // by row, only for the columns with text
+		int[] numbers;              // numeric cells
+		boolean[] numberFirst;      // a numeric cell before the first text
+		List<Set<String>> distinct; // texts (and kept numbers) in order of appearance, up to NOMINAL_LIMIT
+		String error;
+		int errorRecord;
+
+		Chunk(MappedByteBuffer bytes, long base, long start, long end, int numColumns, boolean[] keepText) {
+			this.bytes = bytes;
+			this.base = base;
+			this.pos = (int) (start - base);
+			this.end = (int) Math.min(end - base, bytes.limit());
+			this.numColumns = numColumns;
+			this.keepText = keepText;
+		}
+
+		long position() {
+			return base + pos;
+		}
+
+		String[] fields() {
+			String[] fields = new String[numFields];
+			for (int f = 0; f < numFields; f++) {
+				fields[f] = text(f);
+			}
+			return fields;
+		}
+
+		void parseAll() {
+			values = new double[numColumns][1024];
+			texts = new String[numColumns][];
+			numbers = new int[numColumns];
+			numberFirst = new boolean[numColumns];
+			distinct = new ArrayList<>(numColumns);
+			for (int j = 0; j < numColumns; j++) {
+				distinct.add(new LinkedHashSet<>());
+			}
+			try {
+				while (skipBlankLines(end) && nextRecord()) {
+					if (numFields > numColumns) {
+						if (error == null) {
+							error = "has " + numFields + " fields, expected " + numColumns;
+							errorRecord = rows + 1;
+						}
+						// Read on to find where the range ends
+						continue;
+					}
+					addRow();
+				}
+			} catch (IOException e) {
+				// Only reported if the range starts at a record
+				if (error == null) {
+					error = e.getMessage();
+					errorRecord = rows + 1;
+				}
+				pos = bytes.limit();
+			}
+		}
+
+		private void addRow() {
+			if (rows == values[0].length) {
+				int capacity = rows * 2;
+				for (int j = 0; j < numColumns; j++) {
+					values[j] = Arrays.copyOf(values[j], capacity);
+					if (texts[j] != null) {
+						texts[j] = Arrays.copyOf(texts[j], capacity);
+					}
+				}
+			}
+			for (int j = 0; j < numColumns; j++) {
+				double value = Double.NaN;
+				String text = null;
+				if (j < numFields && !isMissing(j)) {
+					value = number(j);
+					text = Double.isNaN(value) ? text(j) : null;
+					if (text != null && !isNaN(text)) {
+						if (distinct.get(j).size() < Converter.NOMINAL_LIMIT) {
+							distinct.get(j).add(text);
+						}
+					} else {
+						text = null;
+						numbers[j]++;
+						numberFirst[j] |= distinct.get(j).isEmpty();
+						if (keepText != null && keepText[j]) {
+							text = text(j);
+							if (distinct.get(j).size() < Converter.NOMINAL_LIMIT) {
+								distinct.get(j).add(text);
+							}
+						}
+					}
+				}
+				values[j][rows] = value;
+				if (text != null) {
+					if (texts[j] == null) {
+						texts[j] = new String[values[j].length];
+					}
+					texts[j][rows] = text;
+				}
+			}
+			rows++;
+		}
+
+		// Skips blank lines up to limit, returns false if no record starts before it
+		private boolean skipBlankLines(int limit) {
+			while (pos < limit && (bytes.get(pos) == '\n' || bytes.get(pos) == '\r')) {
+				pos++;
+			}
+			return pos < limit;
+		}
+
+		// Reads the next non-blank record, as CsvReader.next does
+		boolean nextRecord() throws IOException {
+			int limit = bytes.limit();
+			if (!skipBlankLines(limit)) {
+				return false;
+			}
+			numFields = 0;
+			int length = 0;
+			while (true) {
+				if (numFields == fieldStarts.length) {
+					int n = numFields * 2;
+					fieldStarts = Arrays.copyOf(fieldStarts, n);
+					fieldEnds = Arrays.copyOf(fieldEnds, n);
+					fieldQuoted = Arrays.copyOf(fieldQuoted, n);
+				}
+				int c = read(limit);
+				while (c == ' ' || c == '\t') {
+					c = read(limit);
+				}
+				int start = length;
+				boolean quoted = c == '"';
+				if (quoted) {
+					while (true) {
+						c = read(limit);
+						if (c == -1) {
+							throw new IOException("has an unterminated quoted field");
+						}
+						if (c == '"') {
+							c = read(limit);
+							if (c != '"') {
+								break;
+							}
+						}
+						length = append(length, c);
+					}
+					// Lenient: keep anything between the closing quote and the delimiter
+					while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+						if (c != ' ' && c != '\t') {
+							length = append(length, c);
+						}
+						c = read(limit);
+					}
+				} else {
+					while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+						length = append(length, c);
+						c = read(limit);
+					}
+				}
+				int fieldEnd = length;
+				while (!quoted && fieldEnd > start && (field[fieldEnd - 1] == ' ' || field[fieldEnd - 1] == '\t')) {
+					fieldEnd--;
+				}
+				fieldStarts[numFields] = start;
+				fieldEnds[numFields] = fieldEnd;
+				fieldQuoted[numFields] = quoted;
+				numFields++;
+				if (c == ',') {
+					continue;
+				}
+				if (c == '\r' && pos < limit && bytes.get(pos) == '\n') {
+					pos++;
+				}
+				return true;
+			}
+		}
+
+		private int read(int limit) {
+			return pos < limit ? bytes.get(pos++) & 0xFF : -1;
+		}
+
+		private int append(int length, int c) {
+			if (length == field.length) {
+				field = Arrays.copyOf(field, length * 2);
+			}
+			field[length] = (byte) c;
+			return length + 1;
+		}
+
+		private boolean isMissing(int f) {
+			int length = fieldEnds[f] - fieldStarts[f];
+			return !fieldQuoted[f] && (length == 0 || (length == 1 && field[fieldStarts[f]] == '?'));
+		}
+
+		private String text(int f) {
+			return new String(field, fieldStarts[f], fieldEnds[f] - fieldStarts[f], StandardCharsets.UTF_8);
+		}
+
+		// Whether a NaN from number() is the cell's value rather than "not a number"
+		private static boolean isNaN(String text) {
+			return text.trim().endsWith("NaN") && Converter.isNumeric(text);
+		}
+
+		// The cell as a double, NaN if it is not numeric (as Converter.isNumeric)
+		private double number(int f) {
+			int i = fieldStarts[f];
+			int end = fieldEnds[f];
+			boolean negative = i < end && field[i] == '-';
+			if (i < end && (field[i] == '+' || field[i] == '-')) i++;
+			long mantissa = 0;
+			int digits = 0;
+			int significant = 0;
+			int scale = 0;
+			while (i < end && field[i] >= '0' && field[i] <= '9') {
+				significant += significant > 0 || field[i] != '0' ? 1 : 0;
+				mantissa = significant <= 18 ? mantissa * 10 + (field[i] - '0') : mantissa;
+				scale += significant > 18 ? 1 : 0;
+				i++;
+				digits++;
+			}
+			if (i < end && field[i] == '.') {
+				i++;
+				while (i < end && field[i] >= '0' && field[i] <= '9') {
+					significant += significant > 0 || field[i] != '0' ? 1 : 0;
+					if (significant <= 18) {
+						mantissa = mantissa * 10 + (field[i] - '0');
+						scale--;
+					}
+					i++;
+					digits++;
+				}
+			}
+			int exponent = 0;
+			if (digits > 0 && i < end && (field[i] == 'e' || field[i] == 'E')) {
+				int start = ++i;
+				boolean negativeExponent = i < end && field[i] == '-';
+				if (i < end && (field[i] == '+' || field[i] == '-')) start = ++i;
+				while (i < end && field[i] >= '0' && field[i] <= '9') {
+					exponent = Math.min(exponent * 10 + (field[i] - '0'), 100000);
+					i++;
+				}
+				if (i == start) {
+					return slowNumber(f);
+				}
+				exponent = negativeExponent ? -exponent : exponent;
+			}
+			if (digits == 0 || i != end) {
+				return slowNumber(f);
+			}
+			scale += exponent;
+			if (significant > 15 || scale < -22 || scale > 22) {
+				return slowNumber(f);
+			}
+			double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+			return negative ? -value : value;
+		}
+
+		private double slowNumber(int f) {
+			for (int i = fieldStarts[f]; i < fieldEnds[f]; i++) {
+				if (field[i] < 0 || !NUMBER_CHARS[field[i]]) {
+					return Double.NaN;
+				}
+			}
+			String text = text(f);
+			return Converter.isNumeric(text) ? Double.parseDouble(text) : Double.NaN;
+		}
+	}
+}
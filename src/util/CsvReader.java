@@ -0,0 +1,183 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// Streaming RFC-4180 tokenizer. Records are decoded into one reusable char
+// array and exposed as [start, end) ranges so callers can inspect cells
+// without allocating a String per field.
+public class CsvReader implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Reader in;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+
+	private char[] chars = new char[1024];
+	private int length;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private boolean[] quoted = new boolean[16];
+	private int count;
+	private long recordNumber;
+
+	public CsvReader(Reader in) {
+		this.in = in;
+	}
+
+	// Reads the next non-blank record, returns false at end of input
+	public boolean next() throws IOException {
+		int c;
+		do {
+			c = read();
+			if (c == '\r') {
+				c = skipLineFeed();
+			}
+		} while (c == '\n');
+		if (c == -1) {
+			return false;
+		}
+
+		length = 0;
+		count = 0;
+		recordNumber++;
+		while (true) {
+			c = readField(c);
+			if (c == ',') {
+				c = read();
+				continue;
+			}
+			if (c == '\r') {
+				skipLineFeed();
+			}
+			return true;
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public char[] chars() {
+		return chars;
+	}
+
+	public int start(int i) {
+		return starts[i];
+	}
+
+	public int end(int i) {
+		return ends[i];
+	}
+
+	public boolean isQuoted(int i) {
+		return quoted[i];
+	}
+
+	// Empty unquoted cells and "?" are treated as missing, as in the ARFF format
+	public boolean isMissing(int i) {
+		if (quoted[i]) {
+			return false;
+		}
+		int len = ends[i] - starts[i];
+		return len == 0 || (len == 1 && chars[starts[i]] == '?');
+	}
+
+	public String get(int i) {
+		return new String(chars, starts[i], ends[i] - starts[i]);
+	}
+
+	public long recordNumber() {
+		return recordNumber;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	// Decodes one field starting with c and returns the delimiter that ended it
+	private int readField(int c) throws IOException {
+		if (count == starts.length) {
+			int n = count * 2;
+			starts = Arrays.copyOf(starts, n);
+			ends = Arrays.copyOf(ends, n);
+			quoted = Arrays.copyOf(quoted, n);
+		}
+
+		while (c == ' ' || c == '\t') {
+			c = read();
+		}
+
+		int start = length;
+		boolean isQuoted = c == '"';
+		if (isQuoted) {
+			while (true) {
+				c = read();
+				if (c == -1) {
+					throw new IOException("Unterminated quoted field in record " + recordNumber);
+				}
+				if (c == '"') {
+					c = read();
+					if (c != '"') {
+						break;
+					}
+				}
+				append((char) c);
+			}
+			// Lenient: keep anything between the closing quote and the delimiter
+			while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+				if (c != ' ' && c != '\t') {
+					append((char) c);
+				}
+				c = read();
+			}
+		} else {
+			while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+				append((char) c);
+				c = read();
+			}
+		}
+
+		int end = length;
+		if (!isQuoted) {
+			while (end > start && (chars[end - 1] == ' ' || chars[end - 1] == '\t')) {
+				end--;
+			}
+		}
+		starts[count] = start;
+		ends[count] = end;
+		quoted[count] = isQuoted;
+		count++;
+		return c;
+	}
+
+	private void append(char c) {
+		if (length == chars.length) {
+			chars = Arrays.copyOf(chars, length * 2);
+		}
+		chars[length++] = c;
+	}
+
+	private int skipLineFeed() throws IOException {
+		int c = read();
+		if (c != '\n' && c != -1) {
+			pos--;
+		}
+		return '\n';
+	}
+
+	private int read() throws IOException {
+		if (pos == limit) {
+			int n = in.read(buffer, 0, buffer.length);
+			if (n <= 0) {
+				return -1;
+			}
+			pos = 0;
+			limit = n;
+		}
+		return buffer[pos++];
+	}
+}
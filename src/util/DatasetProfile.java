@@ -0,0 +1,353 @@
+package util;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+// Exploratory statistics of every attribute from one pass over the rows, in
+// place of an attributeStats() scan per attribute and section:
+// - missing counts;
+// - numeric: mean, standard deviation, min and max as attributeStats'
+//   numericStats (weighted, skipping zero weights), and PERCENTILES from a
+//   QuantileSketch (exact below its k values);
+// - nominal: the count of each value;
+// - numeric attributes against a numeric class: the Pearson correlation as
+//   Utils.correlation gives it (1 if either side is constant), over the rows
+//   where both values are present.
+//
+// The rows are split in ranges accumulated in parallel, one Accumulator each
+// (Welford moments and co-moments, sketches, counts), then merged in range
+// order so that repeated runs give the same figures.
+public class DatasetProfile {
+	public final static double[] PERCENTILES = { 25, 50, 75 };
+
+	private static final int MIN_CHUNK = 4096;
+
+	private final Instances structure;
+	private final int rows;
+	private final int target;
+	private final Accumulator total;
+
+	// Statistics of one range of rows, mergeable with those of the next range
+	private static class Accumulator {
+		final long[] missing;
+		final double[] weights;     // numeric: total weight of the values
+		final double[] means;
+		final double[] m2;
+		final double[] min;
+		final double[] max;
+		final QuantileSketch[] sketches;
+		final long[][] counts;      // nominal: per value
+		final long[] pairs;         // numeric against the target: rows with both values
+		final double[] meanX;
+		final double[] meanY;
+		final double[] sxx;
+		final double[] syy;
+		final double[] sxy;
+
+		Accumulator(Instances structure) {
+			int m = structure.numAttributes();
+			missing = new long[m];
+			weights = new double[m];
+			means = new double[m];
+			m2 = new double[m];
+			min = new double[m];
+			max = new double[m];
+			sketches = new QuantileSketch[m];
+			counts = new long[m][];
+			pairs = new long[m];
+			meanX = new double[m];
+			meanY = new double[m];
+			sxx = new double[m];
+			syy = new double[m];
+			sxy = new double[m];
+			for (int j = 0; j < m; j++) {
+				Attribute attribute = structure.attribute(j);
+				min[j] = max[j] = Double.NaN;
+				if (attribute.isNumeric()) {
+					sketches[j] = new QuantileSketch();
+				} else if (attribute.isNominal()) {
+					counts[j] = new long[attribute.numValues()];
+				}
+			}
+		}
+
+		void add(Instance instance, int target) {
+			double weight = instance.weight();
+			double y = target < 0 ? Double.NaN : instance.value(target);
+			for (int j = 0; j < missing.length; j++) {
+				double value = instance.value(j);
+				if (Double.isNaN(value)) {
+					missing[j]++;
+					continue;
+				}
+				if (counts[j] != null) {
+					counts[j][(int) value]++;
+					continue;
+				}
+				if (sketches[j] == null) {
+					continue;
+				}
+				sketches[j].update(value);
+				if (weight > 0) {
+					// Weighted Welford update, as weka.experiment.Stats
+					weights[j] += weight;
+					if (weights[j] == weight) {
+						means[j] = min[j] = max[j] = value;
+					} else {
+						double delta = weight * (value - means[j]);
+						means[j] += delta / weights[j];
+						m2[j] += delta * (value - means[j]);
+						min[j] = Math.min(min[j], value);
+						max[j] = Math.max(max[j], value);
+					}
+				}
+				if (j != target && !Double.isNaN(y)) {
+					long n = ++pairs[j];
+					double dx = value - meanX[j];
+					double dy = y - meanY[j];
+					meanX[j] += dx / n;
+					meanY[j] += dy / n;
+					sxx[j] += dx * (value - meanX[j]);
+					syy[j] += dy * (y - meanY[j]);
+					sxy[j] += dx * (y - meanY[j]);
+				}
+			}
+		}
+
+		// Adds the statistics of the rows after this range (Chan et al. for the moments)
+		void merge(Accumulator next) {
+			for (int j = 0; j < missing.length; j++) {
+				missing[j] += next.missing[j];
+				if (counts[j] != null) {
+					for (int v = 0; v < counts[j].length; v++) {
+						counts[j][v] += next.counts[j][v];
+					}
+				}
+				if (sketches[j] == null) {
+					continue;
+				}
+				sketches[j].merge(next.sketches[j]);
+				if (next.weights[j] > 0) {
+					double w = weights[j] + next.weights[j];
+					double delta = next.means[j] - means[j];
+					m2[j] += next.m2[j] + delta * delta * weights[j] * next.weights[j] / w;
+					means[j] += delta * next.weights[j] / w;
+					min[j] = weights[j] > 0 ? Math.min(min[j], next.min[j]) : next.min[j];
+					max[j] = weights[j] > 0 ? Math.max(max[j], next.max[j]) : next.max[j];
+					weights[j] = w;
+				}
+				if (next.pairs[j] > 0) {
+					long n = pairs[j] + next.pairs[j];
+					double dx = next.meanX[j] - meanX[j];
+					double dy = next.meanY[j] - meanY[j];
+					double f = (double) pairs[j] * next.pairs[j] / n;
+					sxx[j] += next.sxx[j] + dx * dx * f;
+					syy[j] += next.syy[j] + dy * dy * f;
+					sxy[j] += next.sxy[j] + dx * dy * f;
+					meanX[j] += dx * next.pairs[j] / n;
+					meanY[j] += dy * next.pairs[j] / n;
+					pairs[j] = n;
+				}
+			}
+		}
+	}
+
+	private DatasetProfile(Instances structure, int rows, int target, Accumulator total) {
+		this.structure = structure;
+		this.rows = rows;
+		this.target = target;
+		this.total = total;
+	}
+
+	// Correlations are with the class, when it is numeric
+	public static DatasetProfile compute(Instances dataset) throws Exception {
+		Instances structure = new Instances(dataset, 0);
+		int target = dataset.classIndex() >= 0 && dataset.classAttribute().isNumeric() ? dataset.classIndex() : -1;
+		int numInstances = dataset.numInstances();
+		int chunks = Parallel.chunks(numInstances, MIN_CHUNK);
+		Accumulator[] ranges = new Accumulator[chunks];
+		Parallel.forEach(chunks, t -> {
+			Accumulator range = new Accumulator(structure);
+			int end = Parallel.chunkStart(t + 1, chunks, numInstances);
+			for (int i = Parallel.chunkStart(t, chunks, numInstances); i < end; i++) {
+				range.add(dataset.instance(i), target);
+			}
+			ranges[t] = range;
+		});
+		Accumulator total = chunks > 0 ? ranges[0] : new Accumulator(structure);
+		for (int t = 1; t < chunks; t++) {
+			total.merge(ranges[t]);
+		}
+		return new DatasetProfile(structure, numInstances, target, total);
+	}
+
+	public Instances structure() {
+		return structure;
+	}
+
+	public int rows() {
+		return rows;
+	}
+
+	public long missing(int attribute) {
+		return total.missing[attribute];
+	}
+
+	// NaN for non-numeric attributes or without values
+	public double mean(int attribute) {
+		return total.weights[attribute] > 0 ? total.means[attribute] : Double.NaN;
+	}
+
+	// Sample standard deviation; NaN with a total weight of at most 1
+	public double stdDev(int attribute) {
+		return total.weights[attribute] > 1 ? Math.sqrt(Math.max(0, total.m2[attribute] / (total.weights[attribute] - 1)))
+				: Double.NaN;
+	}
+
+	public double min(int attribute) {
+		return total.min[attribute];
+	}
+
+	public double max(int attribute) {
+		return total.max[attribute];
+	}
+
+	// NaN for non-numeric attributes or without values
+	public double percentile(int attribute, double percentile) {
+		QuantileSketch sketch = total.sketches[attribute];
+		return sketch == null || sketch.count() == 0 ? Double.NaN : sketch.percentile(percentile);
+	}
+
+	// Count of each value of a nominal attribute, null for the others
+	public long[] counts(int attribute) {
+		return total.counts[attribute];
+	}
+
+	// Index of the numeric class the correlations are with, -1 if none
+	public int target() {
+		return target;
+	}
+
+	// NaN without a numeric target, for the target itself and for non-numeric attributes
+	public double targetCorrelation(int attribute) {
+		if (target < 0 || attribute == target || total.sketches[attribute] == null) {
+			return Double.NaN;
+		}
+		if (total.pairs[attribute] <= 1) {
+			return 1;
+		}
+		double sxx = total.sxx[attribute];
+		double syy = total.syy[attribute];
+		return sxx * syy == 0 ? 1 : total.sxy[attribute] / Math.sqrt(Math.abs(sxx * syy));
+	}
+
+	// The statistics as the sections of a text report
+	public String report() {
+		String nl = System.lineSeparator();
+		StringBuilder report = new StringBuilder();
+		report.append("1. Data overview:").append(nl);
+		report.append(" - Number of instances: ").append(total.missing.length == 0 ? 0 : rows()).append(nl);
+		report.append(" - Number of attributes: ").append(structure.numAttributes()).append(nl);
+
+		report.append(nl).append("2. Data types of attributes:").append(nl);
+		for (int j = 0; j < structure.numAttributes(); j++) {
+			report.append(" - ").append(structure.attribute(j).name())
+					.append(" (Type: ").append(Attribute.typeToString(structure.attribute(j))).append(")").append(nl);
+		}
+
+		report.append(nl).append("3. Basic statistics for numeric attributes:").append(nl);
+		for (int j = 0; j < structure.numAttributes(); j++) {
+			if (structure.attribute(j).isNumeric()) {
+				report.append(" - ").append(structure.attribute(j).name()).append(":").append(nl);
+				report.append("   + Mean: ").append(mean(j)).append(nl);
+				report.append("   + Std Dev: ").append(stdDev(j)).append(nl);
+				report.append("   + Min: ").append(min(j)).append(nl);
+				report.append("   + Max: ").append(max(j)).append(nl);
+				report.append("   + Quartiles: ");
+				for (int p = 0; p < PERCENTILES.length; p++) {
+					report.append(p > 0 ? ", " : "").append(percentile(j, PERCENTILES[p]));
+				}
+				report.append(nl);
+			}
+		}
+
+		report.append(nl).append("4. Distribution of values for nominal attributes:").append(nl);
+		for (int j = 0; j < structure.numAttributes(); j++) {
+			if (structure.attribute(j).isNominal()) {
+				report.append(" - ").append(structure.attribute(j).name()).append(" (Nominal):").append(nl);
+				long[] counts = counts(j);
+				for (int v = 0; v < counts.length; v++) {
+					report.append("   + ").append(structure.attribute(j).value(v)).append(": ").append(counts[v]).append(nl);
+				}
+			}
+		}
+
+		report.append(nl).append("5. Missing values in each attribute:").append(nl);
+		for (int j = 0; j < structure.numAttributes(); j++) {
+			report.append(" - ").append(structure.attribute(j).name()).append(": ").append(missing(j))
+					.append(" missing values").append(nl);
+		}
+
+		report.append(nl).append("6. Correlation between attributes and target variable");
+		if (target < 0) {
+			report.append(": no numeric target").append(nl);
+		} else {
+			report.append(" (").append(structure.attribute(target).name()).append("):").append(nl);
+			for (int j = 0; j < structure.numAttributes(); j++) {
+				if (j != target && structure.attribute(j).isNumeric()) {
+					report.append(" - Correlation between ").append(structure.attribute(j).name())
+							.append(" and target: ").append(targetCorrelation(j)).append(nl);
+				}
+			}
+		}
+		return report.toString();
+	}
+
+	// One row per attribute; nominal counts as value=count separated by ;
+	public void writeCsv(String path) throws IOException {
+		try (PrintWriter writer = new PrintWriter(new FileWriter(path))) {
+			StringBuilder header = new StringBuilder("attribute,type,missing,mean,std_dev,min,max");
+			for (double percentile : PERCENTILES) {
+				header.append(",p").append((int) percentile);
+			}
+			writer.println(header.append(",target_correlation,counts"));
+			for (int j = 0; j < structure.numAttributes(); j++) {
+				Attribute attribute = structure.attribute(j);
+				StringBuilder row = new StringBuilder(cell(attribute.name()));
+				row.append(',').append(Attribute.typeToString(attribute)).append(',').append(missing(j));
+				row.append(',').append(number(mean(j))).append(',').append(number(stdDev(j)));
+				row.append(',').append(number(min(j))).append(',').append(number(max(j)));
+				for (double percentile : PERCENTILES) {
+					row.append(',').append(number(percentile(j, percentile)));
+				}
+				row.append(',').append(number(targetCorrelation(j))).append(',');
+				if (counts(j) != null) {
+					StringBuilder counts = new StringBuilder();
+					for (int v = 0; v < attribute.numValues(); v++) {
+						counts.append(v > 0 ? ";" : "").append(attribute.value(v)).append('=').append(counts(j)[v]);
+					}
+					row.append(cell(counts.toString()));
+				}
+				writer.println(row);
+			}
+		}
+	}
+
+	// Quoted when it holds a separator or a quote
+	private static String cell(String text) {
+		if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+			return text;
+		}
+		return '"' + text.replace("\"", "\"\"") + '"';
+	}
+
+	// Blank for undefined values
+	private static String number(double value) {
+		return Double.isNaN(value) ? "" : String.valueOf(value);
+	}
+}
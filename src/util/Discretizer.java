@@ -0,0 +1,563 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import weka.core.Attribute;
+import weka.core.ContingencyTables;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// Binning of every numeric attribute (except the class) into a nominal one,
+// with the labels of Weka's Discretize ('(-inf-a]', '(a-b]', '(b-inf)', or
+// 'All' for a single bin). Cut points are found per attribute with the columns
+// processed in parallel, and each value is put in its bin by a binary search
+// over the attribute's cut points.
+//
+// - Equal width: bins of (max - min) / bins. With findNumBins the number of
+//   bins is chosen by cross-validated entropy, with the same arithmetic as
+//   Discretize -O, so the output is Discretize's. This needs the weight at or
+//   below each candidate cut point min + k * (max - min) / b, which is summed
+//   per gap between consecutive candidates instead of once per candidate.
+// - Equal frequency: the bin edges are the quantiles of a QuantileSketch,
+//   exact up to SKETCH_K values and approximate beyond, in bounded memory.
+// - MDL: Fayyad & Irani's supervised binning against a nominal class, as
+//   weka.filters.supervised.attribute.Discretize. In memory every distinct
+//   value is a candidate cut point; as a ChunkedFilter the candidates are the
+//   values kept by a QuantileSketch, which is every value up to SKETCH_K.
+//   Rows with a missing class are left out of the statistics.
+public class Discretizer implements ChunkedFilter {
+	public enum Method {
+		EQUAL_WIDTH, EQUAL_FREQUENCY, MDL
+	}
+
+	public final static int DEFAULT_BINS = 10;
+
+	// Digits of the cut points in the labels (Discretize -precision)
+	public final static int PRECISION = 6;
+
+	private static final int SKETCH_K = 8 * QuantileSketch.DEFAULT_K;
+	private static final int MIN_CHUNK = 4096;
+
+	// The values of one column split at sorted distinct bounds: gap g holds the
+	// values in (bounds[g - 1], bounds[g]], the last gap those above every bound
+	private static class Gaps {
+		final double[] bounds;
+		final double[] weights;
+		final long[] rows;
+		final double[] low;
+		final double[] high;
+		final double[][] classWeights; // per gap and class, MDL only
+
+		Gaps(double[] bounds, int numClasses) {
+			this.bounds = bounds;
+			int n = bounds.length + 1;
+			weights = new double[n];
+			rows = new long[n];
+			low = new double[n];
+			high = new double[n];
+			Arrays.fill(low, Double.POSITIVE_INFINITY);
+			Arrays.fill(high, Double.NEGATIVE_INFINITY);
+			classWeights = numClasses > 0 ? new double[n][numClasses] : null;
+		}
+
+		void add(double value, double weight, double classValue) {
+			if (classWeights != null && Double.isNaN(classValue)) {
+				return;
+			}
+			int g = firstAtLeast(bounds, value);
+			weights[g] += weight;
+			rows[g]++;
+			low[g] = Math.min(low[g], value);
+			high[g] = Math.max(high[g], value);
+			if (classWeights != null) {
+				classWeights[g][(int) classValue] += weight;
+			}
+		}
+	}
+
+	// Statistics and cut points of one numeric attribute
+	private class Column {
+		final int index;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		QuantileSketch sketch;
+		Gaps gaps;
+		double[] cutPoints; // null for a single bin
+
+		Column(int index) {
+			this.index = index;
+			if (method != Method.EQUAL_WIDTH) {
+				sketch = new QuantileSketch(SKETCH_K);
+			}
+		}
+
+		void observe(double value, double weight, double classValue, int pass) {
+			if (Double.isNaN(value)) {
+				return;
+			}
+			if (pass == 1) {
+				gaps.add(value, weight, classValue);
+			} else if (sketch != null) {
+				sketch.update(value);
+			} else {
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+		}
+
+		void endPass(int pass) {
+			switch (method) {
+			case EQUAL_WIDTH:
+				if (pass == 0 && findNumBins && min <= max) {
+					gaps = new Gaps(candidates(min, max, bins), 0);
+				} else if (pass == 0) {
+					cutPoints = equalWidth(min, max, bins);
+				} else {
+					cutPoints = findNumBins(min, max, bins, gaps);
+				}
+				break;
+			case EQUAL_FREQUENCY:
+				cutPoints = equalFrequency(sketch, bins);
+				break;
+			case MDL:
+				if (pass == 0) {
+					int[] at = new int[1];
+					sketch.forEach((value, weight) -> at[0]++);
+					double[] retained = new double[at[0]];
+					at[0] = 0;
+					sketch.forEach((value, weight) -> retained[at[0]++] = value);
+					sketch = null;
+					gaps = new Gaps(distinct(retained), numClasses);
+				} else {
+					cutPoints = mdl(gaps);
+				}
+				break;
+			}
+			if (pass == 1) {
+				gaps = null;
+			}
+		}
+	}
+
+	private final Method method;
+	private final int bins;
+	private final boolean findNumBins;
+	private final String classAttribute;
+
+	private Instances structure;
+	private int classIndex;
+	private int numClasses;
+	private Column[] columns;
+	private Instances outputStructure;
+
+	private Discretizer(Method method, int bins, boolean findNumBins, String classAttribute) {
+		if (bins < 1) {
+			throw new IllegalArgumentException("Number of bins must be >= 1: " + bins);
+		}
+		this.method = method;
+		this.bins = bins;
+		this.findNumBins = findNumBins;
+		this.classAttribute = classAttribute;
+	}
+
+	// Bins of equal width; with findNumBins, up to bins of them (Discretize -O)
+	public static Discretizer equalWidth(int bins, boolean findNumBins) {
+		return new Discretizer(Method.EQUAL_WIDTH, bins, findNumBins, null);
+	}
+
+	public static Discretizer equalFrequency(int bins) {
+		return new Discretizer(Method.EQUAL_FREQUENCY, bins, false, null);
+	}
+
+	// classAttribute: the nominal class by name, or null for the dataset's class
+	public static Discretizer mdl(String classAttribute) {
+		return new Discretizer(Method.MDL, 1, false, classAttribute);
+	}
+
+	public Instances apply(Instances dataset) throws Exception {
+		init(dataset);
+		int numInstances = dataset.numInstances();
+		double[][] values = new double[columns.length][numInstances];
+		double[] weights = new double[numInstances];
+		double[] classValues = new double[numInstances];
+		for (int i = 0; i < numInstances; i++) {
+			Instance instance = dataset.instance(i);
+			for (int c = 0; c < columns.length; c++) {
+				values[c][i] = instance.value(columns[c].index);
+			}
+			weights[i] = instance.weight();
+			classValues[i] = classIndex >= 0 ? instance.value(classIndex) : Double.NaN;
+		}
+
+		Parallel.forEach(columns.length, c -> {
+			Column column = columns[c];
+			int first = 0;
+			if (method == Method.MDL) {
+				// Every distinct value is a candidate cut point
+				column.sketch = null;
+				column.gaps = new Gaps(distinct(values[c].clone()), numClasses);
+				first = 1;
+			}
+			for (int pass = first; pass < statisticsPasses(); pass++) {
+				for (int i = 0; i < numInstances; i++) {
+					column.observe(values[c][i], weights[i], classValues[i], pass);
+				}
+				column.endPass(pass);
+			}
+		});
+
+		Instances output = header(dataset);
+		double[][] rows = bins(dataset);
+		for (int i = 0; i < numInstances; i++) {
+			output.add(dataset.instance(i).copy(rows[i]));
+		}
+		return output;
+	}
+
+	public void init(Instances structure) {
+		this.structure = structure.stringFreeStructure();
+		classIndex = classAttribute != null ? indexOf(structure, classAttribute) : structure.classIndex();
+		if (method == Method.MDL) {
+			if (classIndex < 0 || !structure.attribute(classIndex).isNominal()) {
+				throw new IllegalArgumentException("MDL discretization needs a nominal class attribute");
+			}
+			numClasses = structure.attribute(classIndex).numValues();
+		}
+		ArrayList<Column> numeric = new ArrayList<>();
+		for (int j = 0; j < structure.numAttributes(); j++) {
+			if (structure.attribute(j).isNumeric() && j != classIndex) {
+				numeric.add(new Column(j));
+			}
+		}
+		columns = numeric.toArray(new Column[0]);
+		outputStructure = null;
+	}
+
+	public int statisticsPasses() {
+		return method == Method.EQUAL_FREQUENCY || (method == Method.EQUAL_WIDTH && !findNumBins) ? 1 : 2;
+	}
+
+	public void observe(Instances chunk, int pass) throws Exception {
+		Parallel.forEach(columns.length, c -> {
+			Column column = columns[c];
+			for (int i = 0; i < chunk.numInstances(); i++) {
+				Instance instance = chunk.instance(i);
+				double classValue = classIndex >= 0 ? instance.value(classIndex) : Double.NaN;
+				column.observe(instance.value(column.index), instance.weight(), classValue, pass);
+			}
+		});
+	}
+
+	public void endPass(int pass) {
+		for (Column column : columns) {
+			column.endPass(pass);
+		}
+	}
+
+	public Instances outputStructure() {
+		if (outputStructure == null) {
+			outputStructure = header(structure);
+		}
+		return new Instances(outputStructure, 0);
+	}
+
+	public Instances process(Instances chunk) throws Exception {
+		Instances output = outputStructure();
+		double[][] rows = bins(chunk);
+		for (int i = 0; i < rows.length; i++) {
+			ChunkReader.add(output, chunk.instance(i).copy(rows[i]));
+		}
+		return output;
+	}
+
+	// Cut points of the attribute after the last apply or statistics pass, null for a single bin
+	public double[] cutPoints(String attribute) {
+		for (Column column : columns) {
+			if (structure.attribute(column.index).name().equals(attribute)) {
+				return column.cutPoints == null ? null : column.cutPoints.clone();
+			}
+		}
+		throw new IllegalArgumentException("Not a discretized attribute: " + attribute);
+	}
+
+	// The rows of input with every numeric column replaced by its bin
+	private double[][] bins(Instances input) throws Exception {
+		int numInstances = input.numInstances();
+		double[][] rows = new double[numInstances][];
+		int chunks = Parallel.chunks(numInstances, MIN_CHUNK);
+		Parallel.forEach(chunks, t -> {
+			int end = Parallel.chunkStart(t + 1, chunks, numInstances);
+			for (int i = Parallel.chunkStart(t, chunks, numInstances); i < end; i++) {
+				double[] values = input.instance(i).toDoubleArray();
+				for (Column column : columns) {
+					double value = values[column.index];
+					if (!Double.isNaN(value)) {
+						values[column.index] = column.cutPoints == null ? 0 : firstAtLeast(column.cutPoints, value);
+					}
+				}
+				rows[i] = values;
+			}
+		});
+		return rows;
+	}
+
+	private Instances header(Instances input) {
+		ArrayList<Attribute> attributes = new ArrayList<>(input.numAttributes());
+		int c = 0;
+		for (int j = 0; j < input.numAttributes(); j++) {
+			if (c < columns.length && columns[c].index == j) {
+				attributes.add(new Attribute(input.attribute(j).name(), labels(columns[c++].cutPoints)));
+			} else {
+				attributes.add((Attribute) input.attribute(j).copy());
+			}
+		}
+		String name = input.relationName() + "-discretized-" + method.name().toLowerCase().replace('_', '-');
+		Instances header = new Instances(name, attributes, 0);
+		header.setClassIndex(input.classIndex());
+		return header;
+	}
+
+	private static ArrayList<String> labels(double[] cutPoints) {
+		ArrayList<String> labels = new ArrayList<>();
+		if (cutPoints == null) {
+			labels.add("'All'");
+			return labels;
+		}
+		for (int j = 0; j <= cutPoints.length; j++) {
+			String from = j == 0 ? "-inf" : Utils.doubleToString(cutPoints[j - 1], PRECISION);
+			if (j == cutPoints.length) {
+				labels.add("'(" + from + "-inf)'");
+			} else {
+				labels.add("'(" + from + "-" + Utils.doubleToString(cutPoints[j], PRECISION) + "]'");
+			}
+		}
+		return labels;
+	}
+
+	private static int indexOf(Instances structure, String name) {
+		Attribute attribute = structure.attribute(name);
+		if (attribute == null) {
+			throw new IllegalArgumentException("No attribute " + name + " in " + structure.relationName());
+		}
+		return attribute.index();
+	}
+
+	// Index of the first element of the sorted array that is >= value, or its
+	// length; a value equal to a cut point belongs to the bin the cut point ends
+	private static int firstAtLeast(double[] sorted, double value) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	// The distinct values of a, sorted, without missing values (sorts a)
+	private static double[] distinct(double[] a) {
+		Arrays.sort(a);
+		int n = 0;
+		for (int i = 0; i < a.length && !Double.isNaN(a[i]); i++) {
+			if (n == 0 || a[i] > a[n - 1]) {
+				a[n++] = a[i];
+			}
+		}
+		return Arrays.copyOf(a, n);
+	}
+
+	private static double[] equalWidth(double min, double max, int bins) {
+		double binWidth = (max - min) / bins;
+		if (bins < 2 || !(binWidth > 0)) {
+			return null;
+		}
+		double[] cutPoints = new double[bins - 1];
+		for (int i = 1; i < bins; i++) {
+			cutPoints[i - 1] = min + binWidth * i;
+		}
+		return cutPoints;
+	}
+
+	// Every cut point Discretize.findNumBins compares values with
+	private static double[] candidates(double min, double max, int bins) {
+		double[] candidates = new double[bins * (bins + 1) / 2];
+		int n = 0;
+		for (int b = 1; b <= bins; b++) {
+			double binWidth = (max - min) / b;
+			for (int k = 0; k < b; k++) {
+				candidates[n++] = min + ((double) k + 1) * binWidth;
+			}
+		}
+		return distinct(candidates);
+	}
+
+	// Discretize.findNumBins on the weight per gap between candidate cut points
+	private static double[] findNumBins(double min, double max, int bins, Gaps gaps) {
+		if (gaps == null) {
+			return null;
+		}
+		// cumulative[g]: the weight at or below bounds[g]
+		double[] cumulative = new double[gaps.bounds.length];
+		double sum = 0;
+		for (int g = 0; g < cumulative.length; g++) {
+			sum += gaps.weights[g];
+			cumulative[g] = sum;
+		}
+		double bestEntropy = Double.MAX_VALUE;
+		int bestNumBins = 1;
+		double binWidth = 0;
+		for (int b = 1; b <= bins; b++) {
+			binWidth = (max - min) / b;
+			double entropy = 0;
+			double below = 0;
+			for (int k = 0; k < b; k++) {
+				double atOrBelow = cumulative[firstAtLeast(gaps.bounds, min + ((double) k + 1) * binWidth)];
+				double weight = atOrBelow - below;
+				below = atOrBelow;
+				if (weight < 2) {
+					entropy = Double.MAX_VALUE;
+					break;
+				}
+				entropy -= weight * Math.log((weight - 1) / binWidth);
+			}
+			if (entropy < bestEntropy) {
+				bestEntropy = entropy;
+				bestNumBins = b;
+			}
+		}
+		if (bestNumBins < 2 || !(binWidth > 0)) {
+			return null;
+		}
+		// As Discretize does, the cut points keep the width of the last candidate, (max - min) / bins
+		double[] cutPoints = new double[bestNumBins - 1];
+		for (int i = 1; i < bestNumBins; i++) {
+			cutPoints[i - 1] = min + binWidth * i;
+		}
+		return cutPoints;
+	}
+
+	// Midpoints between the values either side of each quantile edge, dropping
+	// edges that fall inside a run of equal values or repeat the previous one
+	private static double[] equalFrequency(QuantileSketch sketch, int bins) {
+		long count = sketch.count();
+		if (count == 0) {
+			return null;
+		}
+		double max = sketch.valueAtRank(count - 1);
+		double[] cutPoints = new double[bins - 1];
+		int n = 0;
+		for (int k = 1; k < bins; k++) {
+			long rank = count * k / bins;
+			if (rank == 0) {
+				continue;
+			}
+			double below = sketch.valueAtRank(rank - 1);
+			double above = sketch.valueAtRank(rank);
+			double cutPoint = below < above ? (below + above) / 2 : below;
+			if (cutPoint < max && (n == 0 || cutPoint > cutPoints[n - 1])) {
+				cutPoints[n++] = cutPoint;
+			}
+		}
+		return n == 0 ? null : Arrays.copyOf(cutPoints, n);
+	}
+
+	private double[] mdl(Gaps gaps) {
+		int[] nonEmpty = new int[gaps.rows.length];
+		int n = 0;
+		for (int g = 0; g < gaps.rows.length; g++) {
+			if (gaps.rows[g] > 0) {
+				nonEmpty[n++] = g;
+			}
+		}
+		return cutPointsForSubset(gaps, Arrays.copyOf(nonEmpty, n), 0, n);
+	}
+
+	// Supervised Discretize.cutPointsForSubset over the gaps from first to
+	// lastPlusOne (indices into nonEmpty), a cut point possible between any two
+	private double[] cutPointsForSubset(Gaps gaps, int[] nonEmpty, int first, int lastPlusOne) {
+		long rows = 0;
+		double numInstances = 0;
+		double[][] counts = new double[2][numClasses];
+		for (int i = first; i < lastPlusOne; i++) {
+			int g = nonEmpty[i];
+			rows += gaps.rows[g];
+			numInstances += gaps.weights[g];
+			for (int k = 0; k < numClasses; k++) {
+				counts[1][k] += gaps.classWeights[g][k];
+			}
+		}
+		if (rows < 2) {
+			return null;
+		}
+
+		double[] priorCounts = counts[1].clone();
+		double priorEntropy = ContingencyTables.entropy(priorCounts);
+		double bestEntropy = priorEntropy;
+		double bestCutPoint = 0;
+		int bestIndex = -1;
+		double[][] bestCounts = new double[2][numClasses];
+		for (int i = first; i < lastPlusOne - 1; i++) {
+			int g = nonEmpty[i];
+			for (int k = 0; k < numClasses; k++) {
+				counts[0][k] += gaps.classWeights[g][k];
+				counts[1][k] -= gaps.classWeights[g][k];
+			}
+			double entropy = ContingencyTables.entropyConditionedOnRows(counts);
+			if (entropy < bestEntropy) {
+				bestCutPoint = (gaps.high[g] + gaps.low[nonEmpty[i + 1]]) / 2.0;
+				bestEntropy = entropy;
+				bestIndex = i;
+				System.arraycopy(counts[0], 0, bestCounts[0], 0, numClasses);
+				System.arraycopy(counts[1], 0, bestCounts[1], 0, numClasses);
+			}
+		}
+		if (priorEntropy - bestEntropy <= 0 || !fayyadAndIranisMDL(priorCounts, bestCounts, numInstances, rows - 1)) {
+			return null;
+		}
+
+		double[] left = cutPointsForSubset(gaps, nonEmpty, first, bestIndex + 1);
+		double[] right = cutPointsForSubset(gaps, nonEmpty, bestIndex + 1, lastPlusOne);
+		int numLeft = left == null ? 0 : left.length;
+		int numRight = right == null ? 0 : right.length;
+		double[] cutPoints = new double[numLeft + 1 + numRight];
+		if (left != null) {
+			System.arraycopy(left, 0, cutPoints, 0, numLeft);
+		}
+		cutPoints[numLeft] = bestCutPoint;
+		if (right != null) {
+			System.arraycopy(right, 0, cutPoints, numLeft + 1, numRight);
+		}
+		return cutPoints;
+	}
+
+	// numCutPoints: the number of rows - 1, as Discretize without better encoding
+	private static boolean fayyadAndIranisMDL(double[] priorCounts, double[][] bestCounts, double numInstances,
+			long numCutPoints) {
+		double priorEntropy = ContingencyTables.entropy(priorCounts);
+		double gain = priorEntropy - ContingencyTables.entropyConditionedOnRows(bestCounts);
+		int numClassesTotal = present(priorCounts);
+		int numClassesLeft = present(bestCounts[0]);
+		int numClassesRight = present(bestCounts[1]);
+		double entropyLeft = ContingencyTables.entropy(bestCounts[0]);
+		double entropyRight = ContingencyTables.entropy(bestCounts[1]);
+		double delta = Utils.log2(Math.pow(3, numClassesTotal) - 2)
+				- ((numClassesTotal * priorEntropy) - (numClassesRight * entropyRight) - (numClassesLeft * entropyLeft));
+		return gain > (Utils.log2(numCutPoints) + delta) / numInstances;
+	}
+
+	private static int present(double[] counts) {
+		int n = 0;
+		for (double count : counts) {
+			if (count > 0) {
+				n++;
+			}
+		}
+		return n;
+	}
+}
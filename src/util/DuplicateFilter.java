@@ -0,0 +1,357 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+// Removes repeated rows by hashing the raw attribute values, keeping the first
+// occurrence of each row in the original order.
+//
+// Rows are hashed in parallel chunks, then the hash space is split into one
+// partition per thread; each partition scans the rows in order with its own
+// open-addressing table of row indexes, confirming every hash match with an
+// exact value comparison. Besides one long hash per row, memory is one int
+// slot per unique row (at most half full), and the output matches a
+// sequential scan.
+//
+// With a tolerance > 0, numeric values are compared after rounding to the
+// nearest multiple of the tolerance, so rows that only differ by less than the
+// tolerance on the same grid cell count as near duplicates. Nominal and string
+// values are always compared exactly.
+//
+// As a ChunkedFilter, the statistics pass writes every row (its index, hash
+// and keys, with string values by content) to one of SPILL_PARTITIONS temp
+// files chosen by the high hash bits. The files are then deduplicated in
+// parallel, each in memory on its own (about 1/SPILL_PARTITIONS of the data
+// per thread), and only a bit per row is kept to tell process which rows to
+// skip.
+public class DuplicateFilter implements ChunkedFilter {
+	private static final int MIN_CHUNK = 4096;
+	private static final int SPILL_PARTITIONS = 256;
+
+	private final double tolerance;
+
+	// Chunked mode
+	private Instances structure;
+	private boolean[] numeric;
+	private boolean[] strings;
+	private Path spillDirectory;
+	private DataOutputStream[] spills;
+	private long rows;
+	private long[] duplicates; // one bit per row
+	private long row;
+	private long removed;
+
+	public DuplicateFilter() {
+		this(0.0);
+	}
+
+	public DuplicateFilter(double tolerance) {
+		if (tolerance < 0 || Double.isNaN(tolerance)) {
+			throw new IllegalArgumentException("Tolerance must be >= 0: " + tolerance);
+		}
+		this.tolerance = tolerance;
+	}
+
+	public Instances apply(Instances dataset) throws Exception {
+		int numInstances = dataset.numInstances();
+		boolean[] numeric = new boolean[dataset.numAttributes()];
+		for (int j = 0; j < numeric.length; j++) {
+			numeric[j] = tolerance > 0 && dataset.attribute(j).isNumeric();
+		}
+
+		long[] hashes = new long[numInstances];
+		int chunks = Parallel.chunks(numInstances, MIN_CHUNK);
+		Parallel.forEach(chunks, c -> {
+			int end = Parallel.chunkStart(c + 1, chunks, numInstances);
+			for (int i = Parallel.chunkStart(c, chunks, numInstances); i < end; i++) {
+				hashes[i] = hash(dataset.instance(i), numeric, null);
+			}
+		});
+
+		// Partition by the high hash bits; the table uses the low bits
+		boolean[] keep = new boolean[numInstances];
+		int partitions = Math.max(1, Integer.highestOneBit(chunks));
+		int shift = 64 - Integer.numberOfTrailingZeros(partitions);
+		Parallel.forEach(partitions, p -> {
+			RowTable table = new RowTable(dataset, hashes, numeric);
+			for (int i = 0; i < numInstances; i++) {
+				if (partitions == 1 || (int) (hashes[i] >>> shift) == p) {
+					keep[i] = table.add(i);
+				}
+			}
+		});
+
+		int unique = 0;
+		for (boolean k : keep) {
+			if (k) unique++;
+		}
+		ColumnStore store = ColumnStore.backing(dataset);
+		if (store != null) {
+			// A view of the unique rows, without copying them
+			int[] rows = new int[unique];
+			for (int i = 0, n = 0; i < numInstances; i++) {
+				if (keep[i]) {
+					rows[n++] = i;
+				}
+			}
+			return store.select(rows).toInstances();
+		}
+		Instances filteredDataset = new Instances(dataset, unique);
+		for (int i = 0; i < numInstances; i++) {
+			if (keep[i]) {
+				filteredDataset.add(dataset.instance(i));
+			}
+		}
+		return filteredDataset;
+	}
+
+	public void init(Instances structure) {
+		this.structure = new Instances(structure, 0);
+		numeric = new boolean[structure.numAttributes()];
+		strings = new boolean[structure.numAttributes()];
+		for (int j = 0; j < numeric.length; j++) {
+			numeric[j] = tolerance > 0 && structure.attribute(j).isNumeric();
+			strings[j] = structure.attribute(j).isString();
+		}
+		rows = 0;
+		rewind();
+	}
+
+	public int statisticsPasses() {
+		return 1;
+	}
+
+	public void observe(Instances chunk, int pass) throws IOException {
+		if (spills == null) {
+			spillDirectory = Files.createTempDirectory("duplicates");
+			spills = new DataOutputStream[SPILL_PARTITIONS];
+			for (int p = 0; p < SPILL_PARTITIONS; p++) {
+				spills[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile(p))));
+			}
+		}
+		int shift = 64 - Integer.numberOfTrailingZeros(SPILL_PARTITIONS);
+		for (int i = 0; i < chunk.numInstances(); i++) {
+			Instance instance = chunk.instance(i);
+			long hash = hash(instance, numeric, strings);
+			DataOutputStream out = spills[(int) (hash >>> shift)];
+			out.writeLong(rows++);
+			out.writeLong(hash);
+			for (int j = 0; j < numeric.length; j++) {
+				if (strings[j] && !instance.isMissing(j)) {
+					byte[] bytes = instance.stringValue(j).getBytes(StandardCharsets.UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				} else {
+					if (strings[j]) {
+						out.writeInt(-1);
+					}
+					out.writeLong(Double.doubleToLongBits(key(instance.value(j), numeric[j])));
+				}
+			}
+		}
+	}
+
+	public void endPass(int pass) throws Exception {
+		duplicates = new long[(int) ((rows + 63) >>> 6)];
+		if (spills == null) {
+			return;
+		}
+		try {
+			for (DataOutputStream out : spills) {
+				out.close();
+			}
+			// Partitions are independent; rows are read back in their original order
+			long[][] found = new long[SPILL_PARTITIONS][];
+			Parallel.forEach(SPILL_PARTITIONS, p -> found[p] = duplicatesIn(spillFile(p)));
+			for (long[] rowsFound : found) {
+				for (long duplicate : rowsFound) {
+					duplicates[(int) (duplicate >>> 6)] |= 1L << duplicate;
+				}
+			}
+		} finally {
+			for (int p = 0; p < SPILL_PARTITIONS; p++) {
+				Files.deleteIfExists(spillFile(p));
+			}
+			Files.deleteIfExists(spillDirectory);
+			spills = null;
+		}
+	}
+
+	public Instances outputStructure() {
+		return new Instances(structure, 0);
+	}
+
+	public void rewind() {
+		row = 0;
+		removed = 0;
+	}
+
+	public Instances process(Instances chunk) {
+		Instances unique = new Instances(chunk, chunk.numInstances());
+		for (int i = 0; i < chunk.numInstances(); i++, row++) {
+			if ((duplicates[(int) (row >>> 6)] & (1L << row)) == 0) {
+				unique.add(chunk.instance(i));
+			} else {
+				removed++;
+			}
+		}
+		return unique;
+	}
+
+	public String summary() {
+		return "Duplicate rows removed: " + removed;
+	}
+
+	private Path spillFile(int partition) {
+		return spillDirectory.resolve(partition + ".bin");
+	}
+
+	// Row indexes of the rows in a spill file that repeat an earlier row of it
+	private long[] duplicatesIn(Path file) throws IOException {
+		Set<SpilledRow> seen = new HashSet<>();
+		long[] found = new long[16];
+		int count = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			while (true) {
+				long index;
+				try {
+					index = in.readLong();
+				} catch (EOFException e) {
+					break;
+				}
+				SpilledRow spilled = new SpilledRow(in.readLong(), numeric.length);
+				for (int j = 0; j < numeric.length; j++) {
+					int length = strings[j] ? in.readInt() : -1;
+					if (length >= 0) {
+						byte[] bytes = new byte[length];
+						in.readFully(bytes);
+						spilled.strings[j] = new String(bytes, StandardCharsets.UTF_8);
+					} else {
+						spilled.keys[j] = in.readLong();
+					}
+				}
+				if (!seen.add(spilled)) {
+					if (count == found.length) {
+						found = Arrays.copyOf(found, count * 2);
+					}
+					found[count++] = index;
+				}
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	private static class SpilledRow {
+		final long hash;
+		final long[] keys;
+		final String[] strings;
+
+		SpilledRow(long hash, int numAttributes) {
+			this.hash = hash;
+			this.keys = new long[numAttributes];
+			this.strings = new String[numAttributes];
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			SpilledRow row = (SpilledRow) other;
+			return hash == row.hash && Arrays.equals(keys, row.keys) && Arrays.equals(strings, row.strings);
+		}
+	}
+
+	private double key(double value, boolean numeric) {
+		return numeric && !Double.isNaN(value) ? Math.rint(value / tolerance) : value;
+	}
+
+	// strings: the string attributes to hash by content rather than by index, or null
+	private long hash(Instance instance, boolean[] numeric, boolean[] strings) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (int j = 0; j < numeric.length; j++) {
+			long bits = strings != null && strings[j] && !instance.isMissing(j) ? instance.stringValue(j).hashCode()
+					: Double.doubleToLongBits(key(instance.value(j), numeric[j]));
+			h = (h ^ bits) * 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		// Final avalanche so both the high (partition) and low (slot) bits are well mixed
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private boolean sameRow(Instance a, Instance b, boolean[] numeric) {
+		for (int j = 0; j < numeric.length; j++) {
+			if (Double.doubleToLongBits(key(a.value(j), numeric[j])) != Double.doubleToLongBits(key(b.value(j), numeric[j]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Open-addressing set of row indexes with linear probing
+	private class RowTable {
+		private final Instances dataset;
+		private final long[] hashes;
+		private final boolean[] numeric;
+		private int[] slots = new int[1024]; // row index + 1, 0 = empty
+		private int size;
+
+		RowTable(Instances dataset, long[] hashes, boolean[] numeric) {
+			this.dataset = dataset;
+			this.hashes = hashes;
+			this.numeric = numeric;
+		}
+
+		// Returns true if row was not in the table yet
+		boolean add(int row) {
+			if (size * 2 >= slots.length) {
+				grow();
+			}
+			long hash = hashes[row];
+			int mask = slots.length - 1;
+			for (int s = (int) hash & mask; ; s = (s + 1) & mask) {
+				int other = slots[s] - 1;
+				if (other < 0) {
+					slots[s] = row + 1;
+					size++;
+					return true;
+				}
+				if (hashes[other] == hash && sameRow(dataset.instance(other), dataset.instance(row), numeric)) {
+					return false;
+				}
+			}
+		}
+
+		private void grow() {
+			int[] old = slots;
+			slots = new int[old.length * 2];
+			int mask = slots.length - 1;
+			for (int entry : old) {
+				if (entry == 0) continue;
+				int s = (int) hashes[entry - 1] & mask;
+				while (slots[s] != 0) {
+					s = (s + 1) & mask;
+				}
+				slots[s] = entry;
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package util;
+
+import java.util.Arrays;
+
+// One percentile of a column read in several passes, found exactly in bounded
+// memory. The QuantileSketch of the first pass brackets the value between two
+// of its estimates; the next pass counts the values below the bracket and at
+// either end of it (so ties take no memory) and keeps the ones strictly inside
+// it, among which the value is selected. If the sketch's rank error was wider
+// than the bracket, the bracket moves to the side holding the rank, twice as
+// wide, for another pass.
+//
+// The rank follows Quantiles.percentiles: missing values count towards n and
+// sort last, so a percentile falling on them is NaN.
+class ExactQuantile {
+	// Bracket half-width in sketch error units of count / k ranks
+	private static final int MARGIN = 4;
+
+	private final QuantileSketch sketch;
+	private final long rank;
+	private long margin;
+	private double low;
+	private double high;
+	private long below;
+	private long atLow;
+	private long atHigh;
+	private double[] window;
+	private int size;
+	private double value = Double.NaN;
+	private boolean done;
+
+	// rows: every row of the column, missing or not; k: the sketch's k
+	ExactQuantile(QuantileSketch sketch, double percentile, long rows, int k) {
+		this.sketch = sketch;
+		this.rank = Math.min((long) Math.ceil(percentile / 100.0 * rows), rows - 1);
+		long valid = sketch.count();
+		if (rank < 0 || rank >= valid) {
+			done = true;
+		} else if (valid < k) {
+			// Nothing compacted yet: the sketch holds every value
+			value = sketch.valueAtRank(rank);
+			done = true;
+		} else {
+			margin = MARGIN * (valid / k) + 1;
+			low = rank - margin <= 0 ? Double.NEGATIVE_INFINITY : sketch.valueAtRank(rank - margin);
+			high = rank + margin >= valid - 1 ? Double.POSITIVE_INFINITY : sketch.valueAtRank(rank + margin);
+			window = new double[1024];
+		}
+	}
+
+	boolean done() {
+		return done;
+	}
+
+	double value() {
+		return value;
+	}
+
+	void update(double v) {
+		if (done || Double.isNaN(v)) {
+			return;
+		}
+		if (v < low) {
+			below++;
+		} else if (v == low) {
+			atLow++;
+		} else if (v == high) {
+			atHigh++;
+		} else if (v < high) {
+			if (size == window.length) {
+				window = Arrays.copyOf(window, size * 2);
+			}
+			window[size++] = v;
+		}
+	}
+
+	void endPass() {
+		if (done) {
+			return;
+		}
+		// Sorted, the bracket holds atLow copies of low, the window, then atHigh copies of high
+		long inside = rank - below;
+		if (inside >= 0 && inside < atLow + size + atHigh) {
+			value = inside < atLow ? low
+					: inside < atLow + size ? Quantiles.select(window, 0, size, (int) (inside - atLow)) : high;
+			window = null;
+			done = true;
+			return;
+		}
+		margin *= 2;
+		if (rank < below) {
+			high = Math.nextDown(low);
+			low = rank - margin <= 0 ? Double.NEGATIVE_INFINITY : Math.min(high, sketch.valueAtRank(rank - margin));
+		} else {
+			low = Math.nextUp(high);
+			high = rank + margin >= sketch.count() - 1 ? Double.POSITIVE_INFINITY
+					: Math.max(low, sketch.valueAtRank(rank + margin));
+		}
+		below = 0;
+		atLow = 0;
+		atHigh = 0;
+		size = 0;
+	}
+}
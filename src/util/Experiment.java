@@ -0,0 +1,79 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// Compares several classifiers on one dataset. The fold partitions are built
+// once and shared, and every fold model and final model of every classifier is
+// queued on the same pool. Since the folds only depend on the dataset and the
+// seed, each result equals a separate crossValidateModel run with that seed.
+public class Experiment {
+	public static class Result {
+		public final String className;
+		public final String options;
+		public final Classifier model;
+		public final Evaluation eval;
+
+		Result(String className, String options, Classifier model, Evaluation eval) {
+			this.className = className;
+			this.options = options;
+			this.model = model;
+			this.eval = eval;
+		}
+
+		public String name() {
+			return className.substring(className.lastIndexOf('.') + 1);
+		}
+	}
+
+	private final List<String> classNames = new ArrayList<>();
+	private final List<String> options = new ArrayList<>();
+	private final int numThreads;
+
+	public Experiment() {
+		this(Parallel.THREADS);
+	}
+
+	public Experiment(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	// e.g. add("weka.classifiers.trees.J48", "-C 0.25 -M 2")
+	public Experiment add(String className, String options) {
+		classNames.add(className);
+		this.options.add(options == null ? "" : options);
+		return this;
+	}
+
+	public List<Result> run(Instances dataset, int numFolds, Random random) throws Exception {
+		CrossValidator.Folds folds = new CrossValidator.Folds(dataset, numFolds, random);
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Classifier> models = new ArrayList<>();
+			List<CrossValidator.Run> runs = new ArrayList<>();
+			for (int c = 0; c < classNames.size(); c++) {
+				Classifier model = AbstractClassifier.forName(classNames.get(c), Utils.splitOptions(options.get(c)));
+				models.add(model);
+				runs.add(CrossValidator.submit(model, dataset, folds, pool));
+			}
+
+			List<Result> results = new ArrayList<>();
+			for (int c = 0; c < runs.size(); c++) {
+				Evaluation eval = runs.get(c).await();
+				results.add(new Result(classNames.get(c), options.get(c), models.get(c), eval));
+			}
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package util;
+
+import java.lang.reflect.Field;
+
+// Reads and restores the protected and private state of trained Weka models,
+// which has no public accessors (J48's tree, OneR's rule, the estimators of
+// NaiveBayes)
+final class Fields {
+	private Fields() {
+	}
+
+	static Object get(Object target, Class<?> type, String name) throws ReflectiveOperationException {
+		return field(type, name).get(target);
+	}
+
+	static void set(Object target, Class<?> type, String name, Object value) throws ReflectiveOperationException {
+		field(type, name).set(target, value);
+	}
+
+	private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+		Field field = type.getDeclaredField(name);
+		field.setAccessible(true);
+		return field;
+	}
+}
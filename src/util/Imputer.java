@@ -0,0 +1,409 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+// Missing value handling on column buffers, without going through strings.
+//
+// Per column, decided once from its missing ratio: if some values are missing
+// but fewer than the threshold, the rows missing them are dropped; otherwise
+// missing values are imputed (numeric: mean, median or the mean of the k
+// nearest complete neighbours; nominal: mode, or the neighbours' majority).
+// String columns and columns with no valid value are left as they are.
+//
+// As a ChunkedFilter, one statistics pass counts the missing values and
+// accumulates the means, modes and (in a QuantileSketch, exact below its k
+// values) the medians; the same fills are then applied chunk by chunk. KNN
+// compares every pair of rows and needs the dataset in memory.
+public class Imputer implements ChunkedFilter {
+	public enum Strategy { MEAN, MEDIAN, KNN }
+
+	public final static int DEFAULT_NEIGHBOURS = 5;
+
+	private final double threshold;
+	private final Strategy strategy;
+	private final int neighbours;
+
+	private long droppedRows;
+	private long imputedValues;
+
+	// Decided per column from the missing ratio (chunked mode also keeps its statistics here)
+	private Instances structure;
+	private boolean[] dropRow;
+	private boolean[] impute;
+	private double[] fills;
+	private long rowCount;
+	private long[] missingCounts;
+	private double[] sums;
+	private long[] valid;
+	private long[][] valueCounts;
+	private QuantileSketch[] sketches;
+
+	public Imputer(double threshold, Strategy strategy) {
+		this(threshold, strategy, DEFAULT_NEIGHBOURS);
+	}
+
+	public Imputer(double threshold, Strategy strategy, int neighbours) {
+		this.threshold = threshold;
+		this.strategy = strategy;
+		this.neighbours = Math.max(1, neighbours);
+	}
+
+	public Instances apply(Instances dataset) throws Exception {
+		int rowCount = dataset.numInstances();
+		int columnCount = dataset.numAttributes();
+
+		// Column buffers, copied column by column from a column-backed dataset,
+		// otherwise filled in one pass over the rows
+		ColumnStore source = ColumnStore.backing(dataset);
+		double[][] columns = new double[columnCount][];
+		long[] missingCounts = new long[columnCount];
+		if (source != null) {
+			for (int j = 0; j < columnCount; j++) {
+				columns[j] = source.column(j);
+				for (double value : columns[j]) {
+					if (Double.isNaN(value)) {
+						missingCounts[j]++;
+					}
+				}
+			}
+		} else {
+			for (int j = 0; j < columnCount; j++) {
+				columns[j] = new double[rowCount];
+			}
+			for (int i = 0; i < rowCount; i++) {
+				Instance instance = dataset.instance(i);
+				for (int j = 0; j < columnCount; j++) {
+					double value = instance.value(j);
+					columns[j][i] = value;
+					if (Double.isNaN(value)) {
+						missingCounts[j]++;
+					}
+				}
+			}
+		}
+
+		decide(dataset, rowCount, missingCounts);
+		boolean[] dropRow = this.dropRow;
+		boolean[] impute = this.impute;
+
+		boolean[] keep = new boolean[rowCount];
+		Arrays.fill(keep, true);
+		droppedRows = 0;
+		for (int j = 0; j < columnCount; j++) {
+			if (!dropRow[j]) continue;
+			for (int i = 0; i < rowCount; i++) {
+				if (keep[i] && Double.isNaN(columns[j][i])) {
+					keep[i] = false;
+					droppedRows++;
+				}
+			}
+		}
+
+		imputedValues = 0;
+		for (int j = 0; j < columnCount; j++) {
+			if (!impute[j]) continue;
+			for (int i = 0; i < rowCount; i++) {
+				if (keep[i] && Double.isNaN(columns[j][i])) imputedValues++;
+			}
+		}
+		if (strategy == Strategy.KNN) {
+			imputeNeighbours(dataset, columns, impute, keep);
+		} else {
+			Parallel.forEach(columnCount, j -> {
+				if (impute[j]) {
+					double fill = dataset.attribute(j).isNominal()
+							? mode(columns[j], dataset.attribute(j).numValues())
+							: strategy == Strategy.MEDIAN ? median(columns[j]) : mean(columns[j]);
+					fill(columns[j], fill);
+				}
+			});
+		}
+
+		// The buffers become the output's columns, of which the kept rows are a view
+		List<Attribute> attributes = new ArrayList<>(columnCount);
+		for (int j = 0; j < columnCount; j++) {
+			attributes.add(dataset.attribute(j));
+		}
+		double[] weights = new double[rowCount];
+		boolean weighted = false;
+		for (int i = 0; i < rowCount; i++) {
+			weights[i] = dataset.instance(i).weight();
+			weighted |= weights[i] != 1.0;
+		}
+		int[] kept = new int[(int) (rowCount - droppedRows)];
+		for (int i = 0, n = 0; i < rowCount; i++) {
+			if (keep[i]) {
+				kept[n++] = i;
+			}
+		}
+		return ColumnStore.of(dataset.relationName(), attributes, columns, weighted ? weights : null, dataset.classIndex())
+				.select(kept).toInstances();
+	}
+
+	public void init(Instances structure) {
+		if (strategy == Strategy.KNN) {
+			throw new IllegalArgumentException("KNN imputation needs the whole dataset in memory");
+		}
+		int columnCount = structure.numAttributes();
+		this.structure = new Instances(structure, 0);
+		rowCount = 0;
+		missingCounts = new long[columnCount];
+		sums = new double[columnCount];
+		valid = new long[columnCount];
+		valueCounts = new long[columnCount][];
+		sketches = new QuantileSketch[columnCount];
+		for (int j = 0; j < columnCount; j++) {
+			if (structure.attribute(j).isNominal()) {
+				valueCounts[j] = new long[structure.attribute(j).numValues()];
+			} else if (structure.attribute(j).isNumeric() && strategy == Strategy.MEDIAN) {
+				sketches[j] = new QuantileSketch();
+			}
+		}
+		rewind();
+	}
+
+	public int statisticsPasses() {
+		return 1;
+	}
+
+	public void observe(Instances chunk, int pass) {
+		int columnCount = chunk.numAttributes();
+		for (int i = 0; i < chunk.numInstances(); i++) {
+			Instance instance = chunk.instance(i);
+			for (int j = 0; j < columnCount; j++) {
+				double value = instance.value(j);
+				if (Double.isNaN(value)) {
+					missingCounts[j]++;
+				} else if (valueCounts[j] != null) {
+					valueCounts[j][(int) value]++;
+				} else {
+					// Same summation order as mean() over the whole column
+					sums[j] += value;
+					valid[j]++;
+					if (sketches[j] != null) {
+						sketches[j].update(value);
+					}
+				}
+			}
+		}
+		rowCount += chunk.numInstances();
+	}
+
+	public void endPass(int pass) {
+		decide(structure, rowCount, missingCounts);
+		fills = new double[structure.numAttributes()];
+		for (int j = 0; j < fills.length; j++) {
+			if (!impute[j]) continue;
+			if (valueCounts[j] != null) {
+				int best = 0;
+				for (int v = 1; v < valueCounts[j].length; v++) {
+					if (valueCounts[j][v] > valueCounts[j][best]) best = v;
+				}
+				fills[j] = best;
+			} else {
+				fills[j] = strategy == Strategy.MEDIAN ? sketches[j].percentile(50) : sums[j] / valid[j];
+			}
+		}
+	}
+
+	public Instances outputStructure() {
+		return new Instances(structure, 0);
+	}
+
+	public void rewind() {
+		droppedRows = 0;
+		imputedValues = 0;
+	}
+
+	public Instances process(Instances chunk) {
+		int columnCount = chunk.numAttributes();
+		Instances cleaned = new Instances(chunk, chunk.numInstances());
+		rows:
+		for (int i = 0; i < chunk.numInstances(); i++) {
+			Instance instance = chunk.instance(i);
+			double[] values = instance.toDoubleArray();
+			for (int j = 0; j < columnCount; j++) {
+				if (dropRow[j] && Double.isNaN(values[j])) {
+					droppedRows++;
+					continue rows;
+				}
+			}
+			for (int j = 0; j < columnCount; j++) {
+				if (impute[j] && Double.isNaN(values[j])) {
+					values[j] = fills[j];
+					imputedValues++;
+				}
+			}
+			cleaned.add(new DenseInstance(instance.weight(), values));
+		}
+		return cleaned;
+	}
+
+	public String summary() {
+		return "Rows removed: " + droppedRows + ", values imputed (" + strategy + "): " + imputedValues;
+	}
+
+	private void decide(Instances structure, long rowCount, long[] missingCounts) {
+		int columnCount = structure.numAttributes();
+		dropRow = new boolean[columnCount];
+		impute = new boolean[columnCount];
+		for (int j = 0; j < columnCount; j++) {
+			double missingPercentage = (double) missingCounts[j] / rowCount;
+			boolean imputable = structure.attribute(j).isNumeric() || structure.attribute(j).isNominal();
+			if (missingCounts[j] > 0 && missingPercentage < threshold) {
+				dropRow[j] = true;
+			} else if (missingCounts[j] > 0 && missingCounts[j] < rowCount && imputable) {
+				impute[j] = true;
+			}
+		}
+	}
+
+	private static void fill(double[] column, double value) {
+		for (int i = 0; i < column.length; i++) {
+			if (Double.isNaN(column[i])) {
+				column[i] = value;
+			}
+		}
+	}
+
+	private static double mean(double[] column) {
+		double sum = 0;
+		int valid = 0;
+		for (double value : column) {
+			if (!Double.isNaN(value)) {
+				sum += value;
+				valid++;
+			}
+		}
+		return sum / valid;
+	}
+
+	private static double median(double[] column) {
+		double[] values = column.clone();
+		int valid = Quantiles.moveMissingLast(values);
+		return Quantiles.select(values, 0, valid, Quantiles.percentileIndex(50, valid));
+	}
+
+	private static double mode(double[] column, int numValues) {
+		int[] counts = new int[numValues];
+		for (double value : column) {
+			if (!Double.isNaN(value)) {
+				counts[(int) value]++;
+			}
+		}
+		int best = 0;
+		for (int v = 1; v < numValues; v++) {
+			if (counts[v] > counts[best]) best = v;
+		}
+		return best;
+	}
+
+	// Each kept row with a value to impute looks for the nearest kept rows that have
+	// that value, using range-normalised distance over the numeric columns both rows
+	// have (nominal columns count 0/1). Rows are processed in parallel and only read
+	// the original values, so the result does not depend on the order.
+	private void imputeNeighbours(Instances dataset, double[][] columns, boolean[] impute, boolean[] keep) throws Exception {
+		int rowCount = dataset.numInstances();
+		int columnCount = columns.length;
+		double[] ranges = new double[columnCount];
+		boolean[] nominal = new boolean[columnCount];
+		boolean[] usable = new boolean[columnCount];
+		for (int j = 0; j < columnCount; j++) {
+			nominal[j] = dataset.attribute(j).isNominal();
+			usable[j] = nominal[j] || dataset.attribute(j).isNumeric();
+			if (dataset.attribute(j).isNumeric()) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (double value : columns[j]) {
+					if (!Double.isNaN(value)) {
+						min = Math.min(min, value);
+						max = Math.max(max, value);
+					}
+				}
+				ranges[j] = max > min ? max - min : 1;
+			}
+		}
+
+		double[][] original = new double[columnCount][];
+		for (int j = 0; j < columnCount; j++) {
+			original[j] = impute[j] ? columns[j].clone() : columns[j];
+		}
+
+		Parallel.forEach(Parallel.chunks(rowCount, 64), c -> {
+			int chunks = Parallel.chunks(rowCount, 64);
+			int end = Parallel.chunkStart(c + 1, chunks, rowCount);
+			double[] distances = new double[neighbours];
+			int[] nearest = new int[neighbours];
+			for (int i = Parallel.chunkStart(c, chunks, rowCount); i < end; i++) {
+				if (!keep[i]) continue;
+				for (int j = 0; j < columnCount; j++) {
+					if (!impute[j] || !Double.isNaN(original[j][i])) continue;
+
+					int found = 0;
+					for (int other = 0; other < rowCount; other++) {
+						if (other == i || !keep[other] || Double.isNaN(original[j][other])) continue;
+						double d = distance(original, ranges, nominal, usable, i, other);
+						// Insertion into the sorted list of the k best so far
+						if (found < neighbours || d < distances[found - 1]) {
+							int at = found < neighbours ? found++ : found - 1;
+							while (at > 0 && distances[at - 1] > d) {
+								distances[at] = distances[at - 1];
+								nearest[at] = nearest[at - 1];
+								at--;
+							}
+							distances[at] = d;
+							nearest[at] = other;
+						}
+					}
+					if (found == 0) continue;
+					columns[j][i] = nominal[j]
+							? vote(original[j], nearest, found, dataset.attribute(j).numValues())
+							: average(original[j], nearest, found);
+				}
+			}
+		});
+	}
+
+	private static double distance(double[][] columns, double[] ranges, boolean[] nominal, boolean[] usable, int a, int b) {
+		double sum = 0;
+		for (int j = 0; j < columns.length; j++) {
+			if (!usable[j]) continue;
+			double x = columns[j][a];
+			double y = columns[j][b];
+			if (Double.isNaN(x) || Double.isNaN(y)) {
+				sum += 1;
+			} else if (nominal[j]) {
+				sum += x == y ? 0 : 1;
+			} else {
+				double d = (x - y) / ranges[j];
+				sum += d * d;
+			}
+		}
+		return sum;
+	}
+
+	private static double average(double[] column, int[] nearest, int found) {
+		double sum = 0;
+		for (int n = 0; n < found; n++) {
+			sum += column[nearest[n]];
+		}
+		return sum / found;
+	}
+
+	private static double vote(double[] column, int[] nearest, int found, int numValues) {
+		int[] counts = new int[numValues];
+		int best = (int) column[nearest[0]];
+		for (int n = 0; n < found; n++) {
+			int value = (int) column[nearest[n]];
+			if (++counts[value] > counts[best]) best = value;
+		}
+		return best;
+	}
+}
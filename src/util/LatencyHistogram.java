@@ -0,0 +1,80 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free latency histogram in nanoseconds. Buckets are log-linear: 16 per
+// power of two, so any reported percentile is within 1/16 (~6%) of the true
+// value, with a fixed 8 KB of counters whatever the number of samples.
+public class LatencyHistogram {
+	private final static int SUB_BUCKETS = 16;
+	private final static int SUB_BITS = 4;
+
+	private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final LongAdder total = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		total.increment();
+		sum.add(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	public long count() {
+		return total.sum();
+	}
+
+	public double meanNanos() {
+		long n = total.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	public long maxNanos() {
+		return max.get();
+	}
+
+	// Upper bound of the bucket holding the value at the percentile (0-100)
+	public long percentileNanos(double percentile) {
+		long n = total.sum();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+		long seen = 0;
+		for (int b = 0; b < counts.length(); b++) {
+			seen += counts.get(b);
+			if (seen >= rank) {
+				return Math.min(upperBound(b), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public String summary() {
+		return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", count(),
+				meanNanos() / 1e3, percentileNanos(50) / 1e3, percentileNanos(99) / 1e3, percentileNanos(99.9) / 1e3,
+				maxNanos() / 1e3);
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+}
@@ -5,24 +5,37 @@ import java.io.IOException;
 
 import weka.core.Instances;
 import weka.core.converters.ArffLoader;
-import weka.core.converters.CSVLoader;
 
 public class Loader {
+	// Served from the columnar cache when it is up to date, otherwise the ARFF is
+	// parsed and the cache refreshed for the next caller
 	public static Instances loadArff(String src) {
+		Instances cached = ColumnarCache.read(src);
+		if (cached != null) {
+			Profiler.input(cached);
+			return cached;
+		}
+
 		try {
 			ArffLoader loader = new ArffLoader();
 			loader.setSource(new File(src));
-			return loader.getDataSet();
+			Instances data = loader.getDataSet();
+			ColumnarCache.write(src, data);
+			Profiler.input(data);
+			return data;
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to load ARFF file: " + src, e);
 		}
 	}
 
+	// Parsed in parallel by CsvParser, with Converter's column types; the relation
+	// is named after the file, as CSVLoader names it
 	public static Instances loadCsv(String src) {
 		try {
-			CSVLoader loader = new CSVLoader();
-			loader.setSource(new File(src));
-			return loader.getDataSet();
+			String relation = new File(src).getName().replaceFirst("\\.[^.]*$", "");
+			Instances data = CsvParser.parse(src, relation);
+			Profiler.input(data);
+			return data;
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to load CSV file: " + src, e);
 		}
@@ -0,0 +1,387 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.rules.OneR;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.estimators.DiscreteEstimator;
+import weka.estimators.Estimator;
+import weka.estimators.KernelEstimator;
+import weka.estimators.NormalEstimator;
+
+// Compact binary format for the models of the Run* commands, in place of Java
+// serialization of the whole Weka object graph:
+//
+//   int     MAGIC ("PDMF")
+//   short   VERSION
+//   byte    model type (J48, NAIVE_BAYES, NAIVE_BAYES_UPDATEABLE, ONE_R)
+//   ...     training header: relation, then each attribute's name, type and
+//           nominal values or date format; class index
+//   ...     model state
+//   int     CRC32 of everything before it
+//
+// J48 and OneR are stored as the arrays of CompiledJ48 and CompiledOneR and load
+// as those, which classify exactly as the Weka models. NaiveBayes is stored as
+// the state of its estimators and loads as a NaiveBayes (or NaiveBayesUpdateable)
+// again, so it can still be printed and updated. The embedded header lets
+// scoring check its input without the training ARFF. Files written with
+// SerializationHelper are still read.
+public class ModelFile {
+	public final static int MAGIC = 0x50444D46;
+	public final static int VERSION = 1;
+
+	private final static byte J48_TREE = 1;
+	private final static byte NAIVE_BAYES = 2;
+	private final static byte NAIVE_BAYES_UPDATEABLE = 3;
+	private final static byte ONE_R = 4;
+
+	private final static byte NUMERIC = 0;
+	private final static byte NOMINAL = 1;
+	private final static byte STRING = 2;
+	private final static byte DATE = 3;
+
+	private final static byte NO_ESTIMATOR = 0;
+	private final static byte DISCRETE = 1;
+	private final static byte NORMAL = 2;
+	private final static byte KERNEL = 3;
+
+	private final Classifier model;
+	private final Instances header;
+
+	private ModelFile(Classifier model, Instances header) {
+		this.model = model;
+		this.header = header;
+	}
+
+	public Classifier model() {
+		return model;
+	}
+
+	// Layout of the training data, class included; null for an old Java-serialized
+	// model that does not keep it
+	public Instances header() {
+		return header;
+	}
+
+	// header: the layout of the data the model was trained on, class index set
+	public static void write(String path, Classifier model, Instances header) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		if (model instanceof J48 || model instanceof CompiledJ48) {
+			out.writeByte(J48_TREE);
+			writeHeader(out, header);
+			(model instanceof J48 ? CompiledJ48.compile((J48) model) : (CompiledJ48) model).write(out);
+		} else if (model instanceof OneR || model instanceof CompiledOneR) {
+			out.writeByte(ONE_R);
+			writeHeader(out, header);
+			(model instanceof OneR ? CompiledOneR.compile((OneR) model, header) : (CompiledOneR) model).write(out);
+		} else if (model instanceof NaiveBayes) {
+			out.writeByte(model instanceof NaiveBayesUpdateable ? NAIVE_BAYES_UPDATEABLE : NAIVE_BAYES);
+			writeHeader(out, header);
+			writeNaiveBayes(out, (NaiveBayes) model);
+		} else {
+			throw new IllegalArgumentException("No compact format for " + model.getClass().getName());
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int) crc.getValue());
+		out.flush();
+		Files.write(Paths.get(path), bytes.toByteArray());
+	}
+
+	public static ModelFile read(String path) throws Exception {
+		byte[] bytes = Files.readAllBytes(Paths.get(path));
+		if (bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED) {
+			return legacy((Classifier) SerializationHelper.read(new ByteArrayInputStream(bytes)));
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		if (bytes.length < 11 || in.readInt() != MAGIC) {
+			throw new IOException(path + " is not a model file");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - 4);
+		int expected = new DataInputStream(new ByteArrayInputStream(bytes, bytes.length - 4, 4)).readInt();
+		if ((int) crc.getValue() != expected) {
+			throw new IOException(path + " is corrupted (checksum mismatch)");
+		}
+		int version = in.readShort();
+		if (version > VERSION) {
+			throw new IOException(path + " has format version " + version + ", this build reads up to " + VERSION);
+		}
+
+		byte type = in.readByte();
+		Instances header = readHeader(in);
+		switch (type) {
+		case J48_TREE:
+			return new ModelFile(new CompiledJ48(header, in), header);
+		case ONE_R:
+			return new ModelFile(new CompiledOneR(in), header);
+		case NAIVE_BAYES:
+		case NAIVE_BAYES_UPDATEABLE:
+			NaiveBayes model = type == NAIVE_BAYES ? new NaiveBayes() : new NaiveBayesUpdateable();
+			readNaiveBayes(in, model, header);
+			return new ModelFile(model, header);
+		default:
+			throw new IOException(path + " holds an unknown model type " + type);
+		}
+	}
+
+	private static ModelFile legacy(Classifier model) throws Exception {
+		if (model instanceof NaiveBayes) {
+			return new ModelFile(model, ((NaiveBayes) model).getHeader());
+		}
+		if (model instanceof J48) {
+			return new ModelFile(model, CompiledJ48.compile((J48) model).header());
+		}
+		return new ModelFile(model, null);
+	}
+
+	private static void writeHeader(DataOutputStream out, Instances header) throws IOException {
+		out.writeUTF(header.relationName());
+		out.writeInt(header.numAttributes());
+		for (int j = 0; j < header.numAttributes(); j++) {
+			Attribute attribute = header.attribute(j);
+			out.writeUTF(attribute.name());
+			switch (attribute.type()) {
+			case Attribute.NUMERIC:
+				out.writeByte(NUMERIC);
+				break;
+			case Attribute.NOMINAL:
+			case Attribute.STRING:
+				out.writeByte(attribute.isNominal() ? NOMINAL : STRING);
+				out.writeInt(attribute.numValues());
+				for (int v = 0; v < attribute.numValues(); v++) {
+					out.writeUTF(attribute.value(v));
+				}
+				break;
+			case Attribute.DATE:
+				out.writeByte(DATE);
+				out.writeUTF(attribute.getDateFormat());
+				break;
+			default:
+				throw new IllegalArgumentException("No compact format for attribute " + attribute.name() + " of type "
+						+ Attribute.typeToString(attribute));
+			}
+		}
+		out.writeInt(header.classIndex());
+	}
+
+	private static Instances readHeader(DataInputStream in) throws IOException {
+		String relation = in.readUTF();
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		int n = in.readInt();
+		for (int j = 0; j < n; j++) {
+			String name = in.readUTF();
+			byte type = in.readByte();
+			switch (type) {
+			case NUMERIC:
+				attributes.add(new Attribute(name));
+				break;
+			case NOMINAL:
+			case STRING:
+				List<String> values = new ArrayList<>();
+				for (int v = in.readInt(); v > 0; v--) {
+					values.add(in.readUTF());
+				}
+				if (type == NOMINAL) {
+					attributes.add(new Attribute(name, values));
+				} else {
+					Attribute attribute = new Attribute(name, (List<String>) null);
+					values.forEach(attribute::addStringValue);
+					attributes.add(attribute);
+				}
+				break;
+			case DATE:
+				attributes.add(new Attribute(name, in.readUTF()));
+				break;
+			default:
+				throw new IOException("Unknown attribute type " + type);
+			}
+		}
+		Instances header = new Instances(relation, attributes, 0);
+		header.setClassIndex(in.readInt());
+		return header;
+	}
+
+	private static void writeNaiveBayes(DataOutputStream out, NaiveBayes model) throws Exception {
+		if (model.getUseSupervisedDiscretization()) {
+			throw new IllegalArgumentException("NaiveBayes with supervised discretization (-D) is not supported");
+		}
+		out.writeBoolean(model.getUseKernelEstimator());
+		out.writeBoolean(model.getDisplayModelInOldFormat());
+		writeEstimator(out, (Estimator) Fields.get(model, NaiveBayes.class, "m_ClassDistribution"));
+		Estimator[][] distributions = (Estimator[][]) Fields.get(model, NaiveBayes.class, "m_Distributions");
+		out.writeInt(distributions.length);
+		for (Estimator[] attribute : distributions) {
+			out.writeInt(attribute.length);
+			for (Estimator estimator : attribute) {
+				writeEstimator(out, estimator);
+			}
+		}
+	}
+
+	private static void readNaiveBayes(DataInputStream in, NaiveBayes model, Instances header) throws Exception {
+		model.setUseKernelEstimator(in.readBoolean());
+		model.setDisplayModelInOldFormat(in.readBoolean());
+		Fields.set(model, NaiveBayes.class, "m_Instances", header);
+		Fields.set(model, NaiveBayes.class, "m_NumClasses", header.numClasses());
+		Fields.set(model, NaiveBayes.class, "m_ClassDistribution", readEstimator(in));
+		Estimator[][] distributions = new Estimator[in.readInt()][];
+		for (int a = 0; a < distributions.length; a++) {
+			distributions[a] = new Estimator[in.readInt()];
+			for (int c = 0; c < distributions[a].length; c++) {
+				distributions[a][c] = readEstimator(in);
+			}
+		}
+		Fields.set(model, NaiveBayes.class, "m_Distributions", distributions);
+	}
+
+	// The estimators' fields are written as they are, so a loaded model gives the
+	// same probabilities to the last bit
+	private static void writeEstimator(DataOutputStream out, Estimator estimator) throws Exception {
+		if (estimator == null) {
+			out.writeByte(NO_ESTIMATOR);
+		} else if (estimator instanceof DiscreteEstimator) {
+			double[] counts = (double[]) Fields.get(estimator, DiscreteEstimator.class, "m_Counts");
+			out.writeByte(DISCRETE);
+			writeCounts(out, counts);
+			out.writeDouble(field(estimator, DiscreteEstimator.class, "m_SumOfCounts"));
+			out.writeDouble(field(estimator, DiscreteEstimator.class, "m_FPrior"));
+		} else if (estimator instanceof NormalEstimator) {
+			out.writeByte(NORMAL);
+			for (String name : new String[] { "m_Precision", "m_SumOfWeights", "m_SumOfValues", "m_SumOfValuesSq",
+					"m_Mean", "m_StandardDev" }) {
+				out.writeDouble(field(estimator, NormalEstimator.class, name));
+			}
+		} else if (estimator instanceof KernelEstimator) {
+			int n = (Integer) Fields.get(estimator, KernelEstimator.class, "m_NumValues");
+			out.writeByte(KERNEL);
+			out.writeDouble(field(estimator, KernelEstimator.class, "m_Precision"));
+			out.writeInt(n);
+			writeDoubles(out, (double[]) Fields.get(estimator, KernelEstimator.class, "m_Values"), n);
+			writeDoubles(out, (double[]) Fields.get(estimator, KernelEstimator.class, "m_Weights"), n);
+			out.writeDouble(field(estimator, KernelEstimator.class, "m_SumOfWeights"));
+			out.writeDouble(field(estimator, KernelEstimator.class, "m_StandardDev"));
+			out.writeBoolean((Boolean) Fields.get(estimator, KernelEstimator.class, "m_AllWeightsOne"));
+		} else {
+			throw new IllegalArgumentException("No compact format for " + estimator.getClass().getName());
+		}
+	}
+
+	private static Estimator readEstimator(DataInputStream in) throws Exception {
+		byte type = in.readByte();
+		switch (type) {
+		case NO_ESTIMATOR:
+			return null;
+		case DISCRETE: {
+			double[] counts = readCounts(in);
+			DiscreteEstimator estimator = new DiscreteEstimator(counts.length, false);
+			System.arraycopy(counts, 0, Fields.get(estimator, DiscreteEstimator.class, "m_Counts"), 0, counts.length);
+			Fields.set(estimator, DiscreteEstimator.class, "m_SumOfCounts", in.readDouble());
+			Fields.set(estimator, DiscreteEstimator.class, "m_FPrior", in.readDouble());
+			return estimator;
+		}
+		case NORMAL: {
+			NormalEstimator estimator = new NormalEstimator(in.readDouble());
+			for (String name : new String[] { "m_SumOfWeights", "m_SumOfValues", "m_SumOfValuesSq", "m_Mean",
+					"m_StandardDev" }) {
+				Fields.set(estimator, NormalEstimator.class, name, in.readDouble());
+			}
+			return estimator;
+		}
+		case KERNEL: {
+			KernelEstimator estimator = new KernelEstimator(in.readDouble());
+			int n = in.readInt();
+			// Room for one more value, as the arrays only grow when full
+			Fields.set(estimator, KernelEstimator.class, "m_Values", readDoubles(in, n, n + 1));
+			Fields.set(estimator, KernelEstimator.class, "m_Weights", readDoubles(in, n, n + 1));
+			Fields.set(estimator, KernelEstimator.class, "m_NumValues", n);
+			Fields.set(estimator, KernelEstimator.class, "m_SumOfWeights", in.readDouble());
+			Fields.set(estimator, KernelEstimator.class, "m_StandardDev", in.readDouble());
+			Fields.set(estimator, KernelEstimator.class, "m_AllWeightsOne", in.readBoolean());
+			return estimator;
+		}
+		default:
+			throw new IOException("Unknown estimator type " + type);
+		}
+	}
+
+	private static double field(Object target, Class<?> type, String name) throws ReflectiveOperationException {
+		return (Double) Fields.get(target, type, name);
+	}
+
+	// Counts of unweighted data are whole numbers, written as varints (one byte
+	// below 128) instead of eight-byte doubles
+	private static void writeCounts(DataOutputStream out, double[] counts) throws IOException {
+		boolean whole = true;
+		for (double count : counts) {
+			whole &= count >= 0 && count < Integer.MAX_VALUE && count == Math.rint(count);
+		}
+		out.writeInt(counts.length);
+		out.writeBoolean(whole);
+		if (!whole) {
+			writeDoubles(out, counts, counts.length);
+			return;
+		}
+		for (double count : counts) {
+			int value = (int) count;
+			while ((value & ~0x7F) != 0) {
+				out.writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte(value);
+		}
+	}
+
+	private static double[] readCounts(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if (!in.readBoolean()) {
+			return readDoubles(in, n, 0);
+		}
+		double[] counts = new double[n];
+		for (int i = 0; i < n; i++) {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = in.readByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			}
+			counts[i] = value;
+		}
+		return counts;
+	}
+
+	private static void writeDoubles(DataOutputStream out, double[] values, int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			out.writeDouble(values[i]);
+		}
+	}
+
+	private static double[] readDoubles(DataInputStream in, int n, int capacity) throws IOException {
+		double[] values = new double[Math.max(n, capacity)];
+		for (int i = 0; i < n; i++) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+}
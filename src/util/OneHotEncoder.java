@@ -0,0 +1,290 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+// One-hot encoding of the categorical attributes (nominal with more than two
+// values, and string) into indicator attributes. Layouts wider than DENSE_LIMIT
+// get SparseInstance rows so that only the indicators that are set take memory
+// and ARFF space (ArffSaver writes sparse rows as {index value, ...}); narrower
+// ones keep dense rows, which ColumnarCache can store. Indicators are nominal
+// {0,1}, as NominalToBinary -N, so numeric steps such as capping leave them alone.
+//
+// An attribute with at most maxValues values gets one indicator per value,
+// named attribute=value in place of the attribute. Beyond that:
+// - TOP_VALUES keeps the maxValues most frequent values and puts the rest in
+//   attribute=other (ties keep the declared or first-seen order);
+// - HASHING puts each value in one of buckets indicators attribute#b by the
+//   hash of its label, without counting values first. String attributes are
+//   always hashed in this mode, so the encoding follows from the layout alone.
+//
+// A missing value leaves all the attribute's indicators missing. The class and
+// the other attributes are copied, zeros left out of the sparse rows.
+public class OneHotEncoder implements ChunkedFilter {
+	public enum Mode {
+		TOP_VALUES, HASHING
+	}
+
+	// Columns with more values are the ones Converter keeps as strings
+	public final static int DEFAULT_MAX_VALUES = Converter.NOMINAL_LIMIT;
+	public final static int DEFAULT_BUCKETS = 32;
+	public final static String OTHER = "other";
+	// Widest output layout still written as dense rows
+	public final static int DENSE_LIMIT = 64;
+
+	private static final int MIN_CHUNK = 4096;
+	private static final List<String> INDICATOR = Arrays.asList("0", "1");
+
+	// How one categorical attribute is encoded
+	private static class Column {
+		final int index;
+		final boolean string;
+		final Map<String, long[]> counts = new LinkedHashMap<>(); // by first appearance
+		int offset;        // first output attribute
+		int width;         // number of indicators
+		boolean hashed;
+		Map<String, Integer> slots; // value -> indicator; the others go to OTHER if width > slots.size()
+
+		Column(int index, boolean string) {
+			this.index = index;
+			this.string = string;
+		}
+
+		// Indicator of the row's value
+		int slot(Instance instance) {
+			String value = string ? instance.stringValue(index) : instance.attribute(index).value((int) instance.value(index));
+			if (hashed) {
+				return Math.floorMod(value.hashCode(), width);
+			}
+			Integer slot = slots.get(value);
+			return slot != null ? slot : width - 1;
+		}
+	}
+
+	private final Mode mode;
+	private final int maxValues;
+	private final int buckets;
+
+	private Instances structure;
+	private Column[] columns;
+	private int[] outputIndex; // per input attribute, its output attribute (the first indicator)
+	private Instances outputStructure;
+	private boolean sparse;
+	private String summary;
+
+	public OneHotEncoder() {
+		this(Mode.TOP_VALUES, DEFAULT_MAX_VALUES, DEFAULT_BUCKETS);
+	}
+
+	// buckets: the indicators per hashed attribute, used by HASHING only
+	public OneHotEncoder(Mode mode, int maxValues, int buckets) {
+		if (maxValues < 1 || buckets < 1) {
+			throw new IllegalArgumentException("Values and buckets must be >= 1: " + maxValues + ", " + buckets);
+		}
+		this.mode = mode;
+		this.maxValues = maxValues;
+		this.buckets = buckets;
+	}
+
+	public Instances apply(Instances dataset) throws Exception {
+		init(dataset);
+		if (statisticsPasses() > 0) {
+			Parallel.forEach(columns.length, c -> count(columns[c], dataset));
+			endPass(0);
+		}
+		Instances output = outputStructure();
+		for (Instance row : encode(dataset)) {
+			output.add(row);
+		}
+		return output;
+	}
+
+	public void init(Instances structure) {
+		this.structure = new Instances(structure, 0);
+		List<Column> categorical = new ArrayList<>();
+		for (int j = 0; j < structure.numAttributes(); j++) {
+			Attribute attribute = structure.attribute(j);
+			if (j != structure.classIndex() && (attribute.isString() || (attribute.isNominal() && attribute.numValues() > 2))) {
+				categorical.add(new Column(j, attribute.isString()));
+			}
+		}
+		columns = categorical.toArray(new Column[0]);
+		outputStructure = null;
+		if (statisticsPasses() == 0) {
+			layout();
+		}
+	}
+
+	// One pass to count values, unless every encoding follows from the layout
+	public int statisticsPasses() {
+		if (mode == Mode.HASHING) {
+			return 0;
+		}
+		for (Column column : columns) {
+			if (column.string || structure.attribute(column.index).numValues() > maxValues) {
+				return 1;
+			}
+		}
+		return 0;
+	}
+
+	public void observe(Instances chunk, int pass) throws Exception {
+		Parallel.forEach(columns.length, c -> count(columns[c], chunk));
+	}
+
+	public void endPass(int pass) {
+		layout();
+	}
+
+	public Instances outputStructure() {
+		return new Instances(outputStructure, 0);
+	}
+
+	public Instances process(Instances chunk) throws Exception {
+		Instances output = outputStructure();
+		for (Instance row : encode(chunk)) {
+			output.add(row);
+		}
+		return output;
+	}
+
+	public String summary() {
+		return summary;
+	}
+
+	private void count(Column column, Instances rows) {
+		if (!column.string && structure.attribute(column.index).numValues() <= maxValues) {
+			return;
+		}
+		for (int i = 0; i < rows.numInstances(); i++) {
+			Instance instance = rows.instance(i);
+			if (!instance.isMissing(column.index)) {
+				String value = column.string ? instance.stringValue(column.index)
+						: instance.attribute(column.index).value((int) instance.value(column.index));
+				column.counts.computeIfAbsent(value, v -> new long[1])[0]++;
+			}
+		}
+	}
+
+	// Chooses each column's indicators and builds the output layout
+	private void layout() {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		outputIndex = new int[structure.numAttributes()];
+		StringBuilder report = new StringBuilder();
+		int c = 0;
+		for (int j = 0; j < structure.numAttributes(); j++) {
+			Attribute attribute = structure.attribute(j);
+			outputIndex[j] = attributes.size();
+			if (c == columns.length || columns[c].index != j) {
+				attributes.add((Attribute) attribute.copy());
+				continue;
+			}
+			Column column = columns[c++];
+			column.offset = attributes.size();
+			List<String> names = indicators(column, attribute);
+			for (String name : names) {
+				attributes.add(new Attribute(name, INDICATOR));
+			}
+			column.width = names.size();
+			int distinct = column.string ? column.counts.size() : attribute.numValues();
+			report.append(String.format(" - %s: %s -> %d indicators%n",
+					attribute.name(), column.hashed ? "hashed" : distinct + " values", column.width));
+			column.counts.clear();
+		}
+		outputStructure = new Instances(structure.relationName() + "-encoded", attributes, 0);
+		sparse = attributes.size() > DENSE_LIMIT;
+		outputStructure.setClassIndex(structure.classIndex() < 0 ? -1 : outputIndex[structure.classIndex()]);
+		summary = columns.length == 0 ? null : "Encoded attributes:" + System.lineSeparator() + report.toString().stripTrailing();
+	}
+
+	private List<String> indicators(Column column, Attribute attribute) {
+		List<String> names = new ArrayList<>();
+		column.hashed = mode == Mode.HASHING && (column.string || attribute.numValues() > maxValues);
+		if (column.hashed) {
+			for (int b = 0; b < buckets; b++) {
+				names.add(attribute.name() + "#" + b);
+			}
+			return names;
+		}
+
+		List<String> values = new ArrayList<>();
+		if (!column.string && attribute.numValues() <= maxValues) {
+			for (int v = 0; v < attribute.numValues(); v++) {
+				values.add(attribute.value(v));
+			}
+		} else {
+			if (!column.string) {
+				// Declared order for ties, and values that never occur last
+				Map<String, long[]> counts = new LinkedHashMap<>();
+				for (int v = 0; v < attribute.numValues(); v++) {
+					counts.put(attribute.value(v), column.counts.getOrDefault(attribute.value(v), new long[1]));
+				}
+				column.counts.clear();
+				column.counts.putAll(counts);
+			}
+			values.addAll(column.counts.keySet());
+			// Stable, so ties keep their order
+			values.sort((a, b) -> Long.compare(column.counts.get(b)[0], column.counts.get(a)[0]));
+		}
+		boolean other = values.size() > maxValues;
+		column.slots = new HashMap<>();
+		for (String value : values.subList(0, Math.min(values.size(), maxValues))) {
+			column.slots.put(value, column.slots.size());
+			names.add(attribute.name() + "=" + value);
+		}
+		if (other || names.isEmpty()) {
+			names.add(attribute.name() + "=" + OTHER);
+		}
+		return names;
+	}
+
+	// The rows of the output layout (SparseInstances if it is wider than
+	// DENSE_LIMIT), encoded in parallel ranges
+	private Instance[] encode(Instances input) throws Exception {
+		int numInstances = input.numInstances();
+		int numAttributes = outputStructure.numAttributes();
+		Instance[] rows = new Instance[numInstances];
+		int chunks = Parallel.chunks(numInstances, MIN_CHUNK);
+		Parallel.forEach(chunks, t -> {
+			int end = Parallel.chunkStart(t + 1, chunks, numInstances);
+			double[] values = new double[numAttributes];
+			int[] indices = new int[numAttributes];
+			for (int i = Parallel.chunkStart(t, chunks, numInstances); i < end; i++) {
+				Instance instance = input.instance(i);
+				int n = 0;
+				int c = 0;
+				for (int j = 0; j < structure.numAttributes(); j++) {
+					if (c < columns.length && columns[c].index == j) {
+						Column column = columns[c++];
+						if (instance.isMissing(j)) {
+							for (int s = 0; s < column.width; s++) {
+								indices[n] = column.offset + s;
+								values[n++] = Double.NaN;
+							}
+						} else {
+							indices[n] = column.offset + column.slot(instance);
+							values[n++] = 1;
+						}
+					} else if (instance.value(j) != 0) {
+						indices[n] = outputIndex[j];
+						values[n++] = instance.value(j);
+					}
+				}
+				Instance row = new SparseInstance(instance.weight(), Arrays.copyOf(values, n), Arrays.copyOf(indices, n),
+						numAttributes);
+				rows[i] = sparse ? row : new DenseInstance(row.weight(), row.toDoubleArray());
+			}
+		});
+		return rows;
+	}
+}
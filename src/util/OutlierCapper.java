@@ -0,0 +1,275 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+// IQR capping of every numeric attribute. The numeric columns are copied out
+// once, Q1/Q3 are found per column by selection (no sort) with the columns
+// processed in parallel, values are capped in the column buffers, and the
+// result is assembled in a single pass over the rows.
+//
+// Values outside [Q1 - outlierFactor * IQR, Q3 + outlierFactor * IQR] are
+// capped to that range; those also beyond extremeFactor * IQR are counted as
+// extreme, matching the -O/-E factors of Weka's InterquartileRange filter.
+//
+// As a ChunkedFilter, Q1/Q3 are the same exact values: a QuantileSketch per
+// column answers them in one statistics pass while it holds every value, and
+// beyond that brackets them for a second pass (see ExactQuantile).
+public class OutlierCapper implements ChunkedFilter {
+	public final static double DEFAULT_OUTLIER_FACTOR = 1.5;
+	public final static double DEFAULT_EXTREME_FACTOR = 3.0;
+
+	public static class ColumnReport {
+		public final String attribute;
+		public final double q1;
+		public final double q3;
+		public final double lower;
+		public final double upper;
+		public final long capped;
+		public final long extreme;
+
+		ColumnReport(String attribute, double q1, double q3, double lower, double upper, long capped, long extreme) {
+			this.attribute = attribute;
+			this.q1 = q1;
+			this.q3 = q3;
+			this.lower = lower;
+			this.upper = upper;
+			this.capped = capped;
+			this.extreme = extreme;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: Q1=%s Q3=%s bounds=[%s, %s] capped=%d (extreme=%d)",
+					attribute, q1, q3, lower, upper, capped, extreme);
+		}
+	}
+
+	private final double outlierFactor;
+	private final double extremeFactor;
+	private List<ColumnReport> report = new ArrayList<>();
+
+	// Chunked mode
+	private Instances structure;
+	private int[] columnIndex;
+	private QuantileSketch[] sketches;
+	private long rows;
+	private ExactQuantile[][] quartiles;
+	private int passes;
+	private double[][] bounds; // per column: q1, q3, lower, upper, extreme lower, extreme upper
+	private long[] capped;
+	private long[] extreme;
+
+	private static final int SKETCH_K = 8 * QuantileSketch.DEFAULT_K;
+
+	public OutlierCapper() {
+		this(DEFAULT_OUTLIER_FACTOR, DEFAULT_EXTREME_FACTOR);
+	}
+
+	public OutlierCapper(double outlierFactor, double extremeFactor) {
+		this.outlierFactor = outlierFactor;
+		this.extremeFactor = extremeFactor;
+	}
+
+	public Instances apply(Instances dataset) throws Exception {
+		int numInstances = dataset.numInstances();
+		int[] numeric = new int[dataset.numAttributes()];
+		int numColumns = 0;
+		for (int j = 0; j < dataset.numAttributes(); j++) {
+			if (dataset.attribute(j).isNumeric()) {
+				numeric[numColumns++] = j;
+			}
+		}
+		int[] columnIndex = Arrays.copyOf(numeric, numColumns);
+
+		double[][] columns = new double[numColumns][numInstances];
+		for (int i = 0; i < numInstances; i++) {
+			Instance instance = dataset.instance(i);
+			for (int c = 0; c < numColumns; c++) {
+				columns[c][i] = instance.value(columnIndex[c]);
+			}
+		}
+
+		ColumnReport[] reports = new ColumnReport[numColumns];
+		Parallel.forEach(numColumns, c -> reports[c] = cap(dataset.attribute(columnIndex[c]).name(), columns[c]));
+		report = Arrays.asList(reports);
+
+		Instances cleanedDataset = new Instances(dataset, numInstances);
+		for (int i = 0; i < numInstances; i++) {
+			Instance instance = dataset.instance(i);
+			double[] values = instance.toDoubleArray();
+			for (int c = 0; c < numColumns; c++) {
+				values[columnIndex[c]] = columns[c][i];
+			}
+			// copy keeps sparse rows sparse
+			cleanedDataset.add(instance.copy(values));
+		}
+		return cleanedDataset;
+	}
+
+	// Per numeric attribute statistics of the last apply
+	public List<ColumnReport> report() {
+		return report;
+	}
+
+	public void init(Instances structure) {
+		this.structure = new Instances(structure, 0);
+		int[] numeric = new int[structure.numAttributes()];
+		int numColumns = 0;
+		for (int j = 0; j < structure.numAttributes(); j++) {
+			if (structure.attribute(j).isNumeric()) {
+				numeric[numColumns++] = j;
+			}
+		}
+		columnIndex = Arrays.copyOf(numeric, numColumns);
+		sketches = new QuantileSketch[numColumns];
+		for (int c = 0; c < numColumns; c++) {
+			sketches[c] = new QuantileSketch(SKETCH_K);
+		}
+		rows = 0;
+		passes = 1;
+		bounds = new double[numColumns][];
+		capped = new long[numColumns];
+		extreme = new long[numColumns];
+	}
+
+	// One pass, more while the sketches only bracket some quartiles
+	public int statisticsPasses() {
+		return passes;
+	}
+
+	public void observe(Instances chunk, int pass) {
+		for (int i = 0; i < chunk.numInstances(); i++) {
+			Instance instance = chunk.instance(i);
+			for (int c = 0; c < columnIndex.length; c++) {
+				double value = instance.value(columnIndex[c]);
+				if (pass == 0) {
+					sketches[c].update(value);
+				} else {
+					quartiles[c][0].update(value);
+					quartiles[c][1].update(value);
+				}
+			}
+		}
+		if (pass == 0) {
+			rows += chunk.numInstances();
+		}
+	}
+
+	public void endPass(int pass) {
+		if (pass == 0) {
+			quartiles = new ExactQuantile[columnIndex.length][];
+			for (int c = 0; c < columnIndex.length; c++) {
+				quartiles[c] = new ExactQuantile[] { new ExactQuantile(sketches[c], 25, rows, SKETCH_K),
+						new ExactQuantile(sketches[c], 75, rows, SKETCH_K) };
+			}
+		}
+		boolean done = true;
+		for (ExactQuantile[] column : quartiles) {
+			for (ExactQuantile quartile : column) {
+				if (pass > 0) {
+					quartile.endPass();
+				}
+				done &= quartile.done();
+			}
+		}
+		if (!done) {
+			passes = pass + 2;
+			return;
+		}
+
+		for (int c = 0; c < columnIndex.length; c++) {
+			double q1 = quartiles[c][0].value();
+			double q3 = quartiles[c][1].value();
+			double iqr = q3 - q1;
+			bounds[c] = new double[] { q1, q3, q1 - outlierFactor * iqr, q3 + outlierFactor * iqr,
+					q1 - extremeFactor * iqr, q3 + extremeFactor * iqr };
+		}
+		rewind();
+	}
+
+	public Instances outputStructure() {
+		return new Instances(structure, 0);
+	}
+
+	public void rewind() {
+		Arrays.fill(capped, 0);
+		Arrays.fill(extreme, 0);
+		updateReport();
+	}
+
+	public Instances process(Instances chunk) {
+		Instances cleanedDataset = new Instances(chunk, chunk.numInstances());
+		for (int i = 0; i < chunk.numInstances(); i++) {
+			Instance instance = chunk.instance(i);
+			double[] values = instance.toDoubleArray();
+			for (int c = 0; c < columnIndex.length; c++) {
+				double[] b = bounds[c];
+				double value = values[columnIndex[c]];
+				if (value < b[2]) {
+					values[columnIndex[c]] = b[2];
+					capped[c]++;
+					if (value < b[4]) extreme[c]++;
+				} else if (value > b[3]) {
+					values[columnIndex[c]] = b[3];
+					capped[c]++;
+					if (value > b[5]) extreme[c]++;
+				}
+			}
+			// copy keeps sparse rows sparse
+			cleanedDataset.add(instance.copy(values));
+		}
+		updateReport();
+		return cleanedDataset;
+	}
+
+	public String summary() {
+		StringBuilder summary = new StringBuilder("Outliers capped:");
+		for (ColumnReport column : report) {
+			summary.append(System.lineSeparator()).append(" - ").append(column);
+		}
+		return summary.toString();
+	}
+
+	// Rebuilds report from the chunked mode's bounds and counts
+	private void updateReport() {
+		ColumnReport[] reports = new ColumnReport[columnIndex.length];
+		for (int c = 0; c < columnIndex.length; c++) {
+			double[] b = bounds[c];
+			reports[c] = b == null ? null
+					: new ColumnReport(structure.attribute(columnIndex[c]).name(), b[0], b[1], b[2], b[3], capped[c], extreme[c]);
+		}
+		report = Arrays.asList(reports);
+	}
+
+	private ColumnReport cap(String attribute, double[] column) {
+		double[] quartiles = Quantiles.percentiles(column, 25, 75);
+		double q1 = quartiles[0];
+		double q3 = quartiles[1];
+		double iqr = q3 - q1;
+		double lowerBound = q1 - outlierFactor * iqr;
+		double upperBound = q3 + outlierFactor * iqr;
+		double extremeLower = q1 - extremeFactor * iqr;
+		double extremeUpper = q3 + extremeFactor * iqr;
+
+		int capped = 0;
+		int extreme = 0;
+		for (int i = 0; i < column.length; i++) {
+			double value = column[i];
+			if (value < lowerBound) {
+				column[i] = lowerBound;
+				capped++;
+				if (value < extremeLower) extreme++;
+			} else if (value > upperBound) {
+				column[i] = upperBound;
+				capped++;
+				if (value > extremeUpper) extreme++;
+			}
+		}
+		return new ColumnReport(attribute, q1, q3, lowerBound, upperBound, capped, extreme);
+	}
+}
@@ -0,0 +1,308 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.AbstractSaver;
+import weka.core.converters.ArffLoader;
+import weka.core.converters.ArffSaver;
+
+// Flags or removes rows holding outliers or extreme values in any numeric
+// attribute, in the spirit of InterquartileRange + RemoveWithValues.
+//
+// A value is an outlier beyond outlierFactor and extreme beyond extremeFactor
+// units from the center, where center and unit depend on the method:
+//   IQR     Q1/Q3 and the interquartile range
+//   ZSCORE  mean and standard deviation
+//   MAD     median and 1.4826 * median absolute deviation
+//
+// Statistics are accumulated per column in constant memory (Welford moments
+// and a QuantileSketch), so filter() can process ARFF files larger than the
+// heap with two streaming passes: one for the statistics and one that writes
+// the kept or flagged rows, or as a ChunkedFilter with one statistics pass.
+// Columns with no spread (unit of 0) never flag.
+public class OutlierDetector implements ChunkedFilter {
+	public enum Method { IQR, ZSCORE, MAD }
+
+	public enum Action { REMOVE, FLAG }
+
+	public final static double DEFAULT_OUTLIER_FACTOR = 3.0;
+	public final static double DEFAULT_EXTREME_FACTOR = 6.0;
+
+	private static final int OUTLIER = 1;
+	private static final int EXTREME = 2;
+	private static final double MAD_SCALE = 1.4826;
+
+	private final Method method;
+	private final Action action;
+	private final double outlierFactor;
+	private final double extremeFactor;
+
+	private Instances structure;
+	private int[] columns;
+	private ColumnStats[] stats;
+	private long rows;
+	private long outlierRows;
+	private long extremeRows;
+	private long written;
+
+	public OutlierDetector() {
+		this(Method.IQR, Action.REMOVE, DEFAULT_OUTLIER_FACTOR, DEFAULT_EXTREME_FACTOR);
+	}
+
+	public OutlierDetector(Method method, Action action, double outlierFactor, double extremeFactor) {
+		if (extremeFactor < outlierFactor) {
+			throw new IllegalArgumentException("Extreme factor " + extremeFactor + " is below outlier factor " + outlierFactor);
+		}
+		this.method = method;
+		this.action = action;
+		this.outlierFactor = outlierFactor;
+		this.extremeFactor = extremeFactor;
+	}
+
+	public Instances apply(Instances dataset) throws Exception {
+		init(dataset);
+		Parallel.forEach(columns.length, c -> {
+			for (int i = 0; i < dataset.numInstances(); i++) {
+				stats[c].update(dataset.instance(i).value(columns[c]));
+			}
+		});
+		endPass(0);
+
+		// Removed rows leave a view of the others when the dataset is column-backed
+		ColumnStore store = action == Action.REMOVE ? ColumnStore.backing(dataset) : null;
+		int[] kept = new int[store != null ? dataset.numInstances() : 0];
+		int n = 0;
+		Instances output = outputStructure();
+		for (int i = 0; i < dataset.numInstances(); i++) {
+			Instance instance = emit(dataset.instance(i), output, false);
+			if (instance != null && store != null) {
+				kept[n++] = i;
+			} else if (instance != null) {
+				output.add(instance);
+			}
+		}
+		return store != null ? store.select(Arrays.copyOf(kept, n)).toInstances() : output;
+	}
+
+	// Streams src through the detector into dest without loading either file
+	public void filter(String src, String dest) throws IOException {
+		ArffLoader loader = new ArffLoader();
+		loader.setSource(new File(src));
+		Instances structure = loader.getStructure();
+		init(structure);
+		Instance instance;
+		while ((instance = loader.getNextInstance(structure)) != null) {
+			for (int c = 0; c < columns.length; c++) {
+				stats[c].update(instance.value(columns[c]));
+			}
+		}
+		endPass(0);
+
+		loader = new ArffLoader();
+		loader.setSource(new File(src));
+		structure = loader.getStructure();
+		Instances output = outputStructure();
+		ArffSaver saver = new ArffSaver();
+		saver.setRetrieval(AbstractSaver.INCREMENTAL);
+		saver.setStructure(output);
+		saver.setFile(new File(dest));
+		while ((instance = loader.getNextInstance(structure)) != null) {
+			Instance out = emit(instance, output, true);
+			if (out != null) {
+				saver.writeIncremental(out);
+			}
+		}
+		saver.writeIncremental(null);
+	}
+
+	public String summary() {
+		return String.format("%s (outlier > %s, extreme > %s): %d rows, %d with outliers, %d with extreme values, %d %s",
+				method, outlierFactor, extremeFactor, rows, outlierRows, extremeRows, written,
+				action == Action.REMOVE ? "kept" : "flagged");
+	}
+
+	// Per numeric attribute: name, outlier bounds and extreme bounds of the last run
+	public List<String> bounds() {
+		List<String> lines = new ArrayList<>();
+		for (ColumnStats column : stats) {
+			lines.add(column.toString());
+		}
+		return lines;
+	}
+
+	public void init(Instances structure) {
+		this.structure = new Instances(structure, 0);
+		int[] numeric = new int[structure.numAttributes()];
+		int n = 0;
+		for (int j = 0; j < structure.numAttributes(); j++) {
+			if (structure.attribute(j).isNumeric() && j != structure.classIndex()) {
+				numeric[n++] = j;
+			}
+		}
+		columns = Arrays.copyOf(numeric, n);
+		stats = new ColumnStats[n];
+		for (int c = 0; c < n; c++) {
+			stats[c] = new ColumnStats(structure.attribute(columns[c]).name());
+		}
+		rewind();
+	}
+
+	public int statisticsPasses() {
+		return 1;
+	}
+
+	public void observe(Instances chunk, int pass) {
+		for (int i = 0; i < chunk.numInstances(); i++) {
+			Instance instance = chunk.instance(i);
+			for (int c = 0; c < columns.length; c++) {
+				stats[c].update(instance.value(columns[c]));
+			}
+		}
+	}
+
+	public void endPass(int pass) {
+		for (ColumnStats column : stats) {
+			column.finish();
+		}
+	}
+
+	public void rewind() {
+		rows = outlierRows = extremeRows = written = 0;
+	}
+
+	public Instances process(Instances chunk) {
+		Instances output = outputStructure(chunk);
+		for (int i = 0; i < chunk.numInstances(); i++) {
+			Instance instance = emit(chunk.instance(i), output, false);
+			if (instance != null) {
+				output.add(instance);
+			}
+		}
+		return output;
+	}
+
+	public Instances outputStructure() {
+		return outputStructure(structure);
+	}
+
+	private Instances outputStructure(Instances structure) {
+		Instances output = new Instances(structure, 0);
+		if (action == Action.FLAG) {
+			List<String> flags = Arrays.asList("no", "yes");
+			output.insertAttributeAt(new Attribute("Outlier", flags), output.numAttributes());
+			output.insertAttributeAt(new Attribute("ExtremeValue", flags), output.numAttributes());
+		}
+		return output;
+	}
+
+	// Returns the row to write for instance, or null if it is removed. With
+	// oneRow, the row is written before the next one is emitted and output only
+	// holds its string values; otherwise output shares the string values of
+	// instance's dataset.
+	private Instance emit(Instance instance, Instances output, boolean oneRow) {
+		rows++;
+		int flags = 0;
+		for (int c = 0; c < columns.length && flags != (OUTLIER | EXTREME); c++) {
+			flags |= stats[c].classify(instance.value(columns[c]));
+		}
+		if ((flags & OUTLIER) != 0) outlierRows++;
+		if ((flags & EXTREME) != 0) extremeRows++;
+
+		if (action == Action.REMOVE) {
+			if (flags != 0) {
+				return null;
+			}
+			written++;
+			return instance;
+		}
+
+		int numAttributes = instance.numAttributes();
+		double[] values = Arrays.copyOf(instance.toDoubleArray(), numAttributes + 2);
+		values[numAttributes] = (flags & OUTLIER) != 0 ? 1 : 0;
+		values[numAttributes + 1] = (flags & EXTREME) != 0 ? 1 : 0;
+		for (int j = 0; j < numAttributes && oneRow; j++) {
+			// String values are carried over one row at a time, as the incremental loader does
+			if (instance.attribute(j).isString() && !instance.isMissing(j)) {
+				output.attribute(j).setStringValue(instance.stringValue(j));
+				values[j] = 0;
+			}
+		}
+		Instance flagged = new DenseInstance(instance.weight(), values);
+		flagged.setDataset(output);
+		written++;
+		return flagged;
+	}
+
+	private class ColumnStats {
+		final String name;
+		final QuantileSketch sketch = new QuantileSketch();
+		long n;
+		double mean;
+		double m2;
+		double outlierLow, outlierHigh, extremeLow, extremeHigh;
+
+		ColumnStats(String name) {
+			this.name = name;
+		}
+
+		void update(double value) {
+			if (Double.isNaN(value)) {
+				return;
+			}
+			n++;
+			double delta = value - mean;
+			mean += delta / n;
+			m2 += delta * (value - mean);
+			if (method != Method.ZSCORE) {
+				sketch.update(value);
+			}
+		}
+
+		void finish() {
+			double low, high, unit;
+			switch (method) {
+				case ZSCORE:
+					low = high = mean;
+					unit = n > 1 ? Math.sqrt(m2 / (n - 1)) : 0;
+					break;
+				case MAD:
+					low = high = sketch.percentile(50);
+					unit = MAD_SCALE * sketch.medianAbsoluteDeviation(low);
+					break;
+				default:
+					low = sketch.percentile(25);
+					high = sketch.percentile(75);
+					unit = high - low;
+			}
+			if (!(unit > 0)) {
+				// Constant (or mostly constant) column: no spread to measure distances with
+				outlierLow = extremeLow = Double.NEGATIVE_INFINITY;
+				outlierHigh = extremeHigh = Double.POSITIVE_INFINITY;
+				return;
+			}
+			outlierLow = low - outlierFactor * unit;
+			outlierHigh = high + outlierFactor * unit;
+			extremeLow = low - extremeFactor * unit;
+			extremeHigh = high + extremeFactor * unit;
+		}
+
+		int classify(double value) {
+			if (value < extremeLow || value > extremeHigh) return EXTREME;
+			if (value < outlierLow || value > outlierHigh) return OUTLIER;
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: outlier [%s, %s], extreme [%s, %s]", name, outlierLow, outlierHigh, extremeLow, extremeHigh);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Shared worker pool for the data-parallel engines in util. A ForkJoinPool is
+// used so a task may itself call forEach without starving the pool.
+public class Parallel {
+	// Number of worker threads, overridable with -Ddm.threads=N
+	public final static int THREADS = Math.max(1, Integer.getInteger("dm.threads", Runtime.getRuntime().availableProcessors()));
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(THREADS);
+
+	public interface Task {
+		void run(int index) throws Exception;
+	}
+
+	// Runs task(0) .. task(count - 1) in parallel and rethrows the first failure
+	public static void forEach(int count, Task task) throws Exception {
+		if (count <= 1 || THREADS == 1) {
+			for (int i = 0; i < count; i++) {
+				task.run(i);
+			}
+			return;
+		}
+
+		List<ForkJoinTask<Object>> tasks = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int index = i;
+			tasks.add(ForkJoinTask.adapt(() -> {
+				task.run(index);
+				return null;
+			}));
+		}
+		try {
+			if (ForkJoinTask.inForkJoinPool()) {
+				ForkJoinTask.invokeAll(tasks);
+			} else {
+				POOL.submit(() -> ForkJoinTask.invokeAll(tasks)).get();
+			}
+		} catch (ExecutionException | RuntimeException e) {
+			Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+			// adapt() wraps checked exceptions in a RuntimeException
+			if (cause instanceof RuntimeException && cause.getCause() instanceof Exception) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	// Splits [0, size) into at most THREADS contiguous ranges of at least minChunk elements
+	public static int chunks(int size, int minChunk) {
+		return Math.max(1, Math.min(THREADS, size / Math.max(1, minChunk)));
+	}
+
+	public static int chunkStart(int chunk, int chunks, int size) {
+		return (int) ((long) size * chunk / chunks);
+	}
+}
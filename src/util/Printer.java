@@ -1,5 +1,7 @@
 package util;
 
+import java.util.List;
+
 import weka.classifiers.evaluation.Evaluation;
 
 public class Printer {
@@ -13,4 +15,22 @@ public class Printer {
 		System.out.println("Error Rate = " + eval.errorRate());
 		System.out.println();
 	}
+
+	public static void printComparisonTable(List<Experiment.Result> results) throws Exception {
+		String row = "%-14s %-16s %10s %8s %10s %8s %10s %11s%n";
+		System.out.println();
+		System.out.println("=== Classifier comparison (weighted averages) ===");
+		System.out.printf(row, "Classifier", "Options", "Correct %", "Kappa", "Precision", "Recall", "fMeasure", "Error Rate");
+		for (Experiment.Result result : results) {
+			Evaluation eval = result.eval;
+			System.out.printf(row, result.name(), result.options,
+					String.format("%.4f", eval.pctCorrect()),
+					String.format("%.4f", eval.kappa()),
+					String.format("%.4f", eval.weightedPrecision()),
+					String.format("%.4f", eval.weightedRecall()),
+					String.format("%.4f", eval.weightedFMeasure()),
+					String.format("%.4f", eval.errorRate()));
+		}
+		System.out.println();
+	}
 }
@@ -0,0 +1,360 @@
+package util;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import weka.core.Instances;
+
+// Records wall time, CPU time, allocated bytes, peak heap and the size of the
+// data going in and out of each measured stage, and exports them as a run report.
+//
+// CPU time is the process CPU time and allocations are summed over all live
+// threads, so the work a stage hands to thread pools is included (allocations of
+// threads that end during the stage are not, nor can work running concurrently in
+// other stages be told apart). Peak heap is the sum of the heap pools' peaks;
+// those are process-wide, so a stage that overlaps another one outside its own
+// nesting gets none (-1), while the stages enclosing both still get theirs.
+// Measurements nest per thread, and a task handed to a pool names its parent
+// (measure(parent, ...)); rows and attributes are reported by Loader and Saver
+// (or by the caller) to the innermost one on the calling thread.
+//
+// Each measurement is also committed as a "projectdm.Stage" JFR event, which
+// costs nothing unless a recording is running (-XX:StartFlightRecording).
+public class Profiler {
+	public final static String REPORT_JSON = "data/run_report.json";
+	public final static String REPORT_CSV = "data/run_report.csv";
+
+	public interface Task<T> {
+		T run() throws Exception;
+	}
+
+	public static class Measurement {
+		public final String name;
+		public final int depth;
+		final Measurement parent;
+		public final long startMillis;
+		public long wallNanos;
+		public long cpuNanos;
+		public long allocatedBytes;
+		public long peakHeapBytes;       // -1 if it overlapped another stage
+		public int rowsIn = -1;
+		public int rowsOut = -1;
+		public int attributesIn = -1;
+		public int attributesOut = -1;
+		public String error;
+
+		private long peakSoFar;
+		private boolean overlapped;
+
+		Measurement(String name, Measurement parent) {
+			this.name = name;
+			this.parent = parent;
+			this.depth = parent == null ? 0 : parent.depth + 1;
+			this.startMillis = System.currentTimeMillis();
+		}
+
+		boolean isWithin(Measurement other) {
+			for (Measurement m = parent; m != null; m = m.parent) {
+				if (m == other) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	@Name("projectdm.Stage")
+	@Label("Stage")
+	@Category("Project DM")
+	static class StageEvent extends Event {
+		@Label("Name")
+		String name;
+		@Label("CPU Time")
+		@Timespan
+		long cpuTime;
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+		@Label("Peak Heap")
+		@DataAmount
+		long peakHeap;
+		@Label("Rows In")
+		int rowsIn;
+		@Label("Rows Out")
+		int rowsOut;
+		@Label("Attributes In")
+		int attributesIn;
+		@Label("Attributes Out")
+		int attributesOut;
+		@Label("Failed")
+		boolean failed;
+	}
+
+	private final static List<Measurement> measurements = new ArrayList<>();
+	private final static ThreadLocal<Deque<Measurement>> active = ThreadLocal.withInitial(ArrayDeque::new);
+	// Measurements running on any thread, guarding the heap peaks
+	private final static List<Measurement> open = new ArrayList<>();
+
+	public static <T> T measure(String name, Task<T> task) throws Exception {
+		Deque<Measurement> stack = active.get();
+		return measure(new Measurement(name, stack.peek()), stack, task);
+	}
+
+	// For a task handed to a thread pool: measured as a child of parent (current()
+	// on the thread handing it out), not of what the pool thread is running, which
+	// it may have stolen the task from while waiting
+	public static <T> T measure(Measurement parent, String name, Task<T> task) throws Exception {
+		Deque<Measurement> outer = active.get();
+		Deque<Measurement> stack = new ArrayDeque<>();
+		active.set(stack);
+		try {
+			return measure(new Measurement(name, parent), stack, task);
+		} finally {
+			active.set(outer);
+		}
+	}
+
+	// The innermost measurement running on this thread, or null
+	public static Measurement current() {
+		return active.get().peek();
+	}
+
+	private static <T> T measure(Measurement measurement, Deque<Measurement> stack, Task<T> task) throws Exception {
+		stack.push(measurement);
+		StageEvent event = new StageEvent();
+		event.begin();
+		start(measurement);
+		Map<Long, Long> allocatedBefore = threadAllocatedBytes();
+		long cpuBefore = processCpuTime();
+		long start = System.nanoTime();
+		try {
+			return task.run();
+		} catch (Exception | Error e) {
+			measurement.error = e.toString();
+			throw e;
+		} finally {
+			measurement.wallNanos = System.nanoTime() - start;
+			measurement.cpuNanos = processCpuTime() - cpuBefore;
+			measurement.allocatedBytes = allocatedSince(allocatedBefore);
+			finish(measurement);
+			stack.pop();
+			synchronized (measurements) {
+				measurements.add(measurement);
+			}
+			commit(event, measurement);
+		}
+	}
+
+	// Resets the heap peaks for a measurement, unless a measurement outside its
+	// nesting is running: both are then marked as overlapping and the peaks keep
+	// counting for the measurements enclosing them
+	private static void start(Measurement measurement) {
+		synchronized (open) {
+			for (Measurement other : open) {
+				if (!measurement.isWithin(other)) {
+					other.overlapped = true;
+					measurement.overlapped = true;
+				}
+			}
+			if (!measurement.overlapped) {
+				if (measurement.parent != null) {
+					// The peaks are about to be reset, keep what the enclosing stage has seen so far
+					measurement.parent.peakSoFar = Math.max(measurement.parent.peakSoFar, peakHeap());
+				}
+				resetPeakHeap();
+			}
+			open.add(measurement);
+		}
+	}
+
+	private static void finish(Measurement measurement) {
+		synchronized (open) {
+			long peak = Math.max(measurement.peakSoFar, peakHeap());
+			measurement.peakHeapBytes = measurement.overlapped ? -1 : peak;
+			if (measurement.parent != null) {
+				measurement.parent.peakSoFar = Math.max(measurement.parent.peakSoFar, peak);
+			}
+			open.remove(measurement);
+		}
+	}
+
+	// Size of the data the current stage read; the first call wins
+	public static void input(Instances data) {
+		Measurement measurement = active.get().peek();
+		if (measurement != null && data != null && measurement.rowsIn < 0) {
+			measurement.rowsIn = data.numInstances();
+			measurement.attributesIn = data.numAttributes();
+		}
+	}
+
+	// Size of the data the current stage produced; the last call wins
+	public static void output(Instances data) {
+		Measurement measurement = active.get().peek();
+		if (measurement != null && data != null) {
+			measurement.rowsOut = data.numInstances();
+			measurement.attributesOut = data.numAttributes();
+		}
+	}
+
+	// Completed measurements, in completion order (nested stages before their parent)
+	public static List<Measurement> measurements() {
+		synchronized (measurements) {
+			return new ArrayList<>(measurements);
+		}
+	}
+
+	public static void reset() {
+		synchronized (measurements) {
+			measurements.clear();
+		}
+	}
+
+	public static void printReport() {
+		System.out.printf("%-40s %10s %10s %12s %12s %9s %9s%n", "Stage", "Wall ms", "CPU ms", "Alloc MB",
+				"Peak MB", "Rows in", "Rows out");
+		for (Measurement m : measurements()) {
+			System.out.printf("%-40s %10.1f %10.1f %12.1f %12s %9s %9s%n", "  ".repeat(m.depth) + m.name,
+					m.wallNanos / 1e6, m.cpuNanos / 1e6, m.allocatedBytes / 1048576.0,
+					m.peakHeapBytes < 0 ? "" : String.format("%.1f", m.peakHeapBytes / 1048576.0),
+					m.rowsIn < 0 ? "" : m.rowsIn, m.rowsOut < 0 ? "" : m.rowsOut);
+		}
+	}
+
+	// Either path may be null
+	public static void writeReport(String jsonPath, String csvPath) {
+		List<Measurement> all = measurements();
+		if (jsonPath != null) {
+			try (PrintWriter writer = new PrintWriter(new FileWriter(jsonPath))) {
+				writer.println("[");
+				for (int i = 0; i < all.size(); i++) {
+					Measurement m = all.get(i);
+					writer.print("  {\"name\": " + jsonString(m.name) + ", \"depth\": " + m.depth
+							+ ", \"startMillis\": " + m.startMillis + ", \"wallNanos\": " + m.wallNanos
+							+ ", \"cpuNanos\": " + m.cpuNanos + ", \"allocatedBytes\": " + m.allocatedBytes
+							+ ", \"peakHeapBytes\": " + m.peakHeapBytes + ", \"rowsIn\": " + m.rowsIn
+							+ ", \"rowsOut\": " + m.rowsOut + ", \"attributesIn\": " + m.attributesIn
+							+ ", \"attributesOut\": " + m.attributesOut + ", \"error\": "
+							+ (m.error == null ? "null" : jsonString(m.error)) + "}");
+					writer.println(i + 1 < all.size() ? "," : "");
+				}
+				writer.println("]");
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to write run report: " + jsonPath, e);
+			}
+		}
+		if (csvPath != null) {
+			try (PrintWriter writer = new PrintWriter(new FileWriter(csvPath))) {
+				writer.println("name,depth,startMillis,wallNanos,cpuNanos,allocatedBytes,peakHeapBytes,"
+						+ "rowsIn,rowsOut,attributesIn,attributesOut,error");
+				for (Measurement m : all) {
+					writer.println(csvString(m.name) + "," + m.depth + "," + m.startMillis + "," + m.wallNanos + ","
+							+ m.cpuNanos + "," + m.allocatedBytes + "," + m.peakHeapBytes + "," + m.rowsIn + ","
+							+ m.rowsOut + "," + m.attributesIn + "," + m.attributesOut + ","
+							+ (m.error == null ? "" : csvString(m.error)));
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to write run report: " + csvPath, e);
+			}
+		}
+	}
+
+	private static void commit(StageEvent event, Measurement m) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.name = m.name;
+			event.cpuTime = m.cpuNanos;
+			event.allocated = m.allocatedBytes;
+			event.peakHeap = m.peakHeapBytes;
+			event.rowsIn = m.rowsIn;
+			event.rowsOut = m.rowsOut;
+			event.attributesIn = m.attributesIn;
+			event.attributesOut = m.attributesOut;
+			event.failed = m.error != null;
+			event.commit();
+		}
+	}
+
+	private static long processCpuTime() {
+		if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+					.getProcessCpuTime();
+		}
+		return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+	}
+
+	private static Map<Long, Long> threadAllocatedBytes() {
+		Map<Long, Long> allocated = new HashMap<>();
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+					.getThreadMXBean();
+			long[] ids = threads.getAllThreadIds();
+			long[] bytes = threads.getThreadAllocatedBytes(ids);
+			for (int i = 0; i < ids.length; i++) {
+				if (bytes[i] >= 0) {
+					allocated.put(ids[i], bytes[i]);
+				}
+			}
+		}
+		return allocated;
+	}
+
+	private static long allocatedSince(Map<Long, Long> before) {
+		long total = 0;
+		for (Map.Entry<Long, Long> entry : threadAllocatedBytes().entrySet()) {
+			total += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+		}
+		return total;
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static String jsonString(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : s.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static String csvString(String s) {
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,170 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Mergeable streaming quantile sketch (a KLL-style compactor hierarchy).
+//
+// Values enter level 0; when a level holds k items it is sorted and every
+// other item (random offset) moves up one level with twice the weight. Memory
+// is O(k log(n / k)) and the rank error is roughly O(n / k). Until k values
+// have been added nothing is compacted and all answers are exact, which covers
+// the small datasets in data/ with the default k.
+public class QuantileSketch {
+	public final static int DEFAULT_K = 1024;
+
+	public interface WeightedValueConsumer {
+		void accept(double value, long weight);
+	}
+
+	private final int k;
+	private final Random random;
+	private double[][] levels = new double[1][];
+	private int[] sizes = new int[1];
+	private long count;
+
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	public QuantileSketch(int k) {
+		// Even so that compacting a full level preserves its total weight
+		this.k = Math.max(8, k + (k & 1));
+		// Fixed seed so repeated runs over the same data give the same answers
+		this.random = new Random(k);
+		levels[0] = new double[this.k];
+	}
+
+	// Missing values (NaN) are ignored
+	public void update(double value) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		append(0, value);
+		count++;
+	}
+
+	public void merge(QuantileSketch other) {
+		for (int h = 0; h < other.levels.length; h++) {
+			for (int i = 0; i < other.sizes[h]; i++) {
+				append(h, other.levels[h][i]);
+			}
+		}
+		count += other.count;
+	}
+
+	public long count() {
+		return count;
+	}
+
+	// Value with the given 0-based rank among the values seen (approximate once compacted)
+	public double valueAtRank(long rank) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		double[] values = new double[retained()];
+		long[] weights = new long[values.length];
+		sorted(values, weights);
+		return valueAtRank(values, weights, rank);
+	}
+
+	// Value at the percentile using the same index rule as Quantiles.percentileIndex
+	public double percentile(double percentile) {
+		return count == 0 ? Double.NaN : valueAtRank(percentileIndexOf(percentile, count));
+	}
+
+	// Median absolute deviation from center, computed on the retained items
+	public double medianAbsoluteDeviation(double center) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		int n = retained();
+		double[] deviations = new double[n];
+		long[] weights = new long[n];
+		int[] at = new int[1];
+		forEach((value, weight) -> {
+			deviations[at[0]] = Math.abs(value - center);
+			weights[at[0]++] = weight;
+		});
+		sortByValue(deviations, weights);
+		return valueAtRank(deviations, weights, percentileIndexOf(50, count));
+	}
+
+	public void forEach(WeightedValueConsumer consumer) {
+		for (int h = 0; h < levels.length; h++) {
+			for (int i = 0; i < sizes[h]; i++) {
+				consumer.accept(levels[h][i], 1L << h);
+			}
+		}
+	}
+
+	private static long percentileIndexOf(double percentile, long n) {
+		long index = (long) Math.ceil(percentile / 100.0 * n);
+		return Math.min(index, n - 1);
+	}
+
+	private static double valueAtRank(double[] values, long[] weights, long rank) {
+		long cumulative = 0;
+		for (int i = 0; i < values.length; i++) {
+			cumulative += weights[i];
+			if (cumulative > rank) {
+				return values[i];
+			}
+		}
+		return values[values.length - 1];
+	}
+
+	private int retained() {
+		int n = 0;
+		for (int size : sizes) {
+			n += size;
+		}
+		return n;
+	}
+
+	private void sorted(double[] values, long[] weights) {
+		int[] at = new int[1];
+		forEach((value, weight) -> {
+			values[at[0]] = value;
+			weights[at[0]++] = weight;
+		});
+		sortByValue(values, weights);
+	}
+
+	private static void sortByValue(double[] values, long[] weights) {
+		Integer[] order = new Integer[values.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+		double[] v = values.clone();
+		long[] w = weights.clone();
+		for (int i = 0; i < order.length; i++) {
+			values[i] = v[order[i]];
+			weights[i] = w[order[i]];
+		}
+	}
+
+	private void append(int h, double value) {
+		if (h == levels.length) {
+			levels = Arrays.copyOf(levels, h + 1);
+			sizes = Arrays.copyOf(sizes, h + 1);
+			levels[h] = new double[k];
+		}
+		levels[h][sizes[h]++] = value;
+		if (sizes[h] == k) {
+			compact(h);
+		}
+	}
+
+	private void compact(int h) {
+		double[] level = levels[h];
+		Arrays.sort(level, 0, sizes[h]);
+		int offset = random.nextBoolean() ? 1 : 0;
+		int size = sizes[h];
+		sizes[h] = 0;
+		for (int i = offset; i < size; i += 2) {
+			append(h + 1, level[i]);
+		}
+	}
+}
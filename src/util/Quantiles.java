@@ -0,0 +1,93 @@
+package util;
+
+import java.util.Arrays;
+
+// Sort-free order statistics over primitive arrays
+public class Quantiles {
+	// Index of the percentile in a sorted array of n values, as CleanDataCommand has
+	// always computed it (missing values count towards n and sort last)
+	public static int percentileIndex(double percentile, int n) {
+		int index = (int) Math.ceil(percentile / 100.0 * n);
+		return Math.min(index, n - 1);
+	}
+
+	// Returns the given ascending percentiles of values without modifying it.
+	// Expected O(n) per column: each selection narrows the range of the next one.
+	public static double[] percentiles(double[] values, double... percentiles) {
+		double[] a = values.clone();
+		int valid = moveMissingLast(a);
+		double[] result = new double[percentiles.length];
+		int from = 0;
+		for (int p = 0; p < percentiles.length; p++) {
+			int index = percentileIndex(percentiles[p], a.length);
+			if (index >= valid || index < 0) {
+				result[p] = Double.NaN;
+				continue;
+			}
+			result[p] = select(a, from, valid, index);
+			from = index;
+		}
+		return result;
+	}
+
+	// Moves NaNs to the end of a and returns the number of non-NaN values
+	public static int moveMissingLast(double[] a) {
+		int valid = a.length;
+		for (int i = 0; i < valid; ) {
+			if (Double.isNaN(a[i])) {
+				double tmp = a[--valid];
+				a[valid] = a[i];
+				a[i] = tmp;
+			} else {
+				i++;
+			}
+		}
+		return valid;
+	}
+
+	// Rearranges a[from, to) (no NaNs) so that a[k] holds the value it would have
+	// if the range were sorted, with smaller values before it and larger after.
+	// Quickselect with median-of-three pivots, falling back to a sort if the
+	// partitions keep coming out unbalanced.
+	public static double select(double[] a, int from, int to, int k) {
+		int lo = from;
+		int hi = to - 1;
+		int budget = 2 * (32 - Integer.numberOfLeadingZeros(Math.max(1, to - from)));
+		while (hi > lo) {
+			if (budget-- == 0 || hi - lo < 16) {
+				Arrays.sort(a, lo, hi + 1);
+				return a[k];
+			}
+
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] < a[lo]) swap(a, mid, lo);
+			if (a[hi] < a[lo]) swap(a, hi, lo);
+			if (a[hi] < a[mid]) swap(a, hi, mid);
+			double pivot = a[mid];
+
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (a[i] < pivot) i++;
+				while (a[j] > pivot) j--;
+				if (i <= j) {
+					swap(a, i++, j--);
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return a[k];
+			}
+		}
+		return a[k];
+	}
+
+	private static void swap(double[] a, int i, int j) {
+		double tmp = a[i];
+		a[i] = a[j];
+		a[j] = tmp;
+	}
+}
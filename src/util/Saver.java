@@ -14,6 +14,8 @@ public class Saver {
 			saver.setInstances(data);
 			saver.setFile(new File(dest));
 			saver.writeBatch();
+			ColumnarCache.write(dest, data);
+			Profiler.output(data);
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to save ARFF file: " + dest, e);
 		}
@@ -25,6 +27,7 @@ public class Saver {
 			saver.setInstances(data);
 			saver.setFile(new File(dest));
 			saver.writeBatch();
+			Profiler.output(data);
 		} catch (IOException e) {
 			System.out.println(e.getStackTrace());
 			throw new RuntimeException("Failed to save CSV file: " + dest, e);
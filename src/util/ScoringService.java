@@ -0,0 +1,171 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// Serves predictions from the models saved in bin/ (ModelFile), loaded once and
+// kept for the lifetime of the service.
+//
+// All models share one header (the layout of the data they were trained on,
+// class included). J48 and OneR only read their state when classifying, and so
+// does NaiveBayes without supervised discretization (-D), whose filter is updated
+// by distributionForInstance: concurrent scoring relies on ModelFile refusing -D,
+// and a serialized NaiveBayes with -D is rejected on load. One instance of each
+// model is therefore used by all threads. Latency is
+// recorded per model and per row. J48 trees are scored as flat arrays
+// (CompiledJ48) instead of walking the Weka tree.
+public class ScoringService {
+	private final static int MIN_CHUNK = 1024;
+
+	private final Instances header;
+	private final Map<String, Classifier> models = new LinkedHashMap<>();
+	private final Map<String, CompiledJ48> compiled = new LinkedHashMap<>();
+	private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+
+	public ScoringService(Instances header) {
+		this.header = new Instances(header, 0);
+	}
+
+	// Registers bin/<name>.bin under <name>
+	public void load(String modelFile) throws Exception {
+		String name = new File(modelFile).getName().replaceFirst("\\.bin$", "");
+		ModelFile file = ModelFile.read(modelFile);
+		if (file.header() != null) {
+			String mismatch = file.header().equalHeadersMsg(header);
+			if (mismatch != null) {
+				throw new IllegalArgumentException(modelFile + " was trained on other attributes: " + mismatch);
+			}
+		}
+		Classifier model = file.model();
+		if (model instanceof NaiveBayes && ((NaiveBayes) model).getUseSupervisedDiscretization()) {
+			throw new IllegalArgumentException(modelFile + " uses supervised discretization (-D), which is not thread-safe");
+		}
+		if (model instanceof J48) {
+			// Only read from a legacy serialized file: ModelFile loads J48 as CompiledJ48
+			try {
+				compiled.put(name, CompiledJ48.compile((J48) model));
+			} catch (IllegalArgumentException e) {
+				System.out.println(modelFile + " is scored by Weka: " + e.getMessage());
+			}
+		} else if (model instanceof CompiledJ48) {
+			compiled.put(name, (CompiledJ48) model);
+		}
+		models.put(name, model);
+		latencies.put(name, new LatencyHistogram());
+	}
+
+	public List<String> models() {
+		return new ArrayList<>(models.keySet());
+	}
+
+	// A prediction as written out: the label for a nominal class, the value for a
+	// numeric one, '?' if the model made none
+	public String format(double prediction) {
+		Attribute classAttribute = header.classAttribute();
+		if (Utils.isMissingValue(prediction)) {
+			return "?";
+		}
+		return classAttribute.isNominal() ? classAttribute.value((int) prediction) : Utils.doubleToString(prediction, 6);
+	}
+
+	public Instances header() {
+		return header;
+	}
+
+	public LatencyHistogram latency(String model) {
+		return latencies.get(model);
+	}
+
+	public double[] distribution(String model, Instance instance) throws Exception {
+		Classifier classifier = model(model);
+		long start = System.nanoTime();
+		double[] distribution = classifier.distributionForInstance(instance);
+		latencies.get(model).record(System.nanoTime() - start);
+		return distribution;
+	}
+
+	// Prediction for every row (class index, or value for a numeric class),
+	// scored in parallel chunks
+	public double[] score(String model, Instances data) throws Exception {
+		Classifier classifier = model(model);
+		CompiledJ48 tree = compiled.get(model);
+		LatencyHistogram latency = latencies.get(model);
+		int n = data.numInstances();
+		double[] predictions = new double[n];
+		int chunks = Parallel.chunks(n, MIN_CHUNK);
+		Parallel.forEach(chunks, c -> {
+			int end = Parallel.chunkStart(c + 1, chunks, n);
+			for (int i = Parallel.chunkStart(c, chunks, n); i < end; i++) {
+				long start = System.nanoTime();
+				predictions[i] = tree != null ? tree.classify(data.instance(i)) : classifier.classifyInstance(data.instance(i));
+				latency.record(System.nanoTime() - start);
+			}
+		});
+		return predictions;
+	}
+
+	// Parses CSV rows in header order. The class column may be left out or be '?';
+	// unknown nominal or string values are treated as missing.
+	public Instances parse(String csv) throws IOException {
+		return parse(new StringReader(csv), false);
+	}
+
+	// With headerRow, the first record (the column names) is skipped
+	public Instances parse(Reader in, boolean headerRow) throws IOException {
+		Instances rows = new Instances(header, 0);
+		CsvReader reader = new CsvReader(in);
+		if (headerRow) {
+			reader.next();
+		}
+		while (reader.next()) {
+			boolean withClass = reader.size() == header.numAttributes();
+			if (!withClass && reader.size() != header.numAttributes() - 1) {
+				throw new IllegalArgumentException("Row " + reader.recordNumber() + " has " + reader.size()
+						+ " values, expected " + (header.numAttributes() - 1) + " or " + header.numAttributes());
+			}
+			double[] values = new double[header.numAttributes()];
+			int field = 0;
+			for (int j = 0; j < values.length; j++) {
+				if (j == header.classIndex() && !withClass) {
+					values[j] = Double.NaN;
+					continue;
+				}
+				values[j] = reader.isMissing(field) ? Double.NaN : value(header.attribute(j), reader.get(field));
+				field++;
+			}
+			rows.add(new DenseInstance(1.0, values));
+		}
+		return rows;
+	}
+
+	private static double value(Attribute attribute, String text) {
+		if (attribute.isNumeric()) {
+			return Double.parseDouble(text);
+		}
+		int index = attribute.indexOfValue(text);
+		return index < 0 ? Double.NaN : index;
+	}
+
+	private Classifier model(String name) {
+		Classifier classifier = models.get(name);
+		if (classifier == null) {
+			throw new IllegalArgumentException("Unknown model: " + name + ", available: " + models.keySet());
+		}
+		return classifier;
+	}
+}
@@ -0,0 +1,177 @@
+package util;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// Fingerprints of the last successful run of each stage, so that a stage whose
+// inputs have not changed can be skipped and its outputs reused, as a build
+// system does. A fingerprint is the SHA-256 of:
+// - the content of every input file (not its modification time);
+// - the stage's options;
+// - the stage's class file, so that editing a command reruns it (the engines
+//   it calls are not covered: after changing those, clear() the cache).
+// A stage is up to date when its fingerprint is the recorded one and every
+// output still has the content recorded after that run.
+//
+// The records are kept in a properties file, rewritten after every record().
+// Methods are synchronized so that stages running concurrently may share it.
+public class StageCache {
+	public final static String DEFAULT_FILE = "data/stage-cache.properties";
+
+	private static final String MISSING = "-";
+
+	private final String path;
+	private final Properties records = new Properties();
+	// Content hashes of this run, by path, size and modification time
+	private final Map<String, String> hashes = new HashMap<>();
+
+	public StageCache() {
+		this(DEFAULT_FILE);
+	}
+
+	public StageCache(String path) {
+		this.path = path;
+		if (Files.exists(Paths.get(path))) {
+			try (InputStream in = new FileInputStream(path)) {
+				records.load(in);
+			} catch (IOException e) {
+				// An unreadable cache only means that every stage runs
+				records.clear();
+			}
+		}
+	}
+
+	// SHA-256 of the parts, in hex
+	public static String hash(String... parts) {
+		MessageDigest digest = sha256();
+		for (String part : parts) {
+			digest.update((part == null ? MISSING : part).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		return hex(digest.digest());
+	}
+
+	// Content hash of a file, "-" if it does not exist
+	public synchronized String contentHash(String file) throws IOException {
+		Path p = Paths.get(file);
+		if (!Files.isRegularFile(p)) {
+			return MISSING;
+		}
+		String key = file + "|" + Files.size(p) + "|" + Files.getLastModifiedTime(p).toMillis();
+		String hash = hashes.get(key);
+		if (hash == null) {
+			MessageDigest digest = sha256();
+			byte[] buffer = new byte[1 << 16];
+			try (InputStream in = Files.newInputStream(p)) {
+				for (int n; (n = in.read(buffer)) > 0;) {
+					digest.update(buffer, 0, n);
+				}
+			}
+			hash = hex(digest.digest());
+			hashes.put(key, hash);
+		}
+		return hash;
+	}
+
+	// type: the stage's class, whose class file is part of the fingerprint
+	public String fingerprint(Class<?> type, String[] inputs, String[] options) throws IOException {
+		String[] parts = new String[3 + 2 * inputs.length + options.length];
+		int n = 0;
+		parts[n++] = classHash(type);
+		// Lambdas have no class file, and names that change from run to run
+		parts[n++] = parts[0].isEmpty() ? "" : type.getName();
+		for (String input : inputs) {
+			parts[n++] = input;
+			parts[n++] = contentHash(input);
+		}
+		parts[n++] = "options";
+		for (String option : options) {
+			parts[n++] = option;
+		}
+		return hash(parts);
+	}
+
+	// stage: a name unique to the stage, under which its run is recorded
+	public synchronized boolean upToDate(String stage, String fingerprint, String[] outputs) throws IOException {
+		if (!fingerprint.equals(records.getProperty(stage))) {
+			return false;
+		}
+		for (String output : outputs) {
+			String recorded = records.getProperty(stage + " > " + output);
+			if (recorded == null || recorded.equals(MISSING) || !recorded.equals(contentHash(output))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Records a successful run, with the current content of its outputs
+	public synchronized void record(String stage, String fingerprint, String[] outputs) throws IOException {
+		records.setProperty(stage, fingerprint);
+		for (String output : outputs) {
+			records.setProperty(stage + " > " + output, contentHash(output));
+		}
+		save();
+	}
+
+	// Forgets every run, so that all stages run again
+	public synchronized void clear() throws IOException {
+		records.clear();
+		save();
+	}
+
+	private void save() throws IOException {
+		Path parent = Paths.get(path).toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (OutputStream out = new FileOutputStream(path)) {
+			records.store(out, "Stage fingerprints, see util.StageCache");
+		}
+	}
+
+	// Hash of the class file, empty for classes without one (lambdas)
+	private static String classHash(Class<?> type) throws IOException {
+		String resource = type.getName().replace('.', '/') + ".class";
+		ClassLoader loader = type.getClassLoader() != null ? type.getClassLoader() : ClassLoader.getSystemClassLoader();
+		try (InputStream in = loader.getResourceAsStream(resource)) {
+			if (in == null) {
+				return "";
+			}
+			MessageDigest digest = sha256();
+			byte[] buffer = new byte[1 << 14];
+			for (int n; (n = in.read(buffer)) > 0;) {
+				digest.update(buffer, 0, n);
+			}
+			return hex(digest.digest());
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,90 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+
+// Trains a classifier one instance at a time from an ARFF file, never holding
+// more than the current instance in memory.
+//
+// Evaluation is prequential (test-then-train): every labelled instance is first
+// classified by the model as it stands and then used to update it, so the
+// statistics describe how well the model predicts data it has not seen yet.
+// Predictions are not kept, only the running statistics.
+public class StreamingTrainer {
+	private final int reportInterval;
+
+	private long instances;
+
+	// Prints the running and the last-interval accuracy every reportInterval labelled instances (0 = never)
+	public StreamingTrainer(int reportInterval) {
+		this.reportInterval = reportInterval;
+	}
+
+	public static Instances structure(String arffPath, int classIndex) throws IOException {
+		ArffLoader loader = new ArffLoader();
+		loader.setSource(new File(arffPath));
+		Instances structure = loader.getStructure();
+		structure.setClassIndex(classIndex);
+		return structure;
+	}
+
+	public Evaluation train(Classifier model, String arffPath, int classIndex) throws Exception {
+		ArffLoader loader = new ArffLoader();
+		loader.setSource(new File(arffPath));
+		Instances structure = loader.getStructure();
+		structure.setClassIndex(classIndex);
+
+		Evaluation eval = new Evaluation(structure);
+		eval.setDiscardPredictions(true);
+		instances = 0;
+		long windowCorrect = 0;
+		long windowCount = 0;
+		Instance instance;
+		while ((instance = loader.getNextInstance(structure)) != null) {
+			if (instance.classIsMissing()) {
+				continue;
+			}
+			double predicted = eval.evaluateModelOnce(model, instance);
+			if (predicted == instance.classValue()) {
+				windowCorrect++;
+			}
+			windowCount++;
+
+			update(model, instance);
+			eval.updatePriors(instance);
+			instances++;
+
+			if (reportInterval > 0 && windowCount == reportInterval) {
+				System.out.printf("%d instances: accuracy %.2f%%, last %d: %.2f%%%n", instances, eval.pctCorrect(),
+						windowCount, 100.0 * windowCorrect / windowCount);
+				windowCorrect = 0;
+				windowCount = 0;
+			}
+		}
+		return eval;
+	}
+
+	// Labelled instances used for training by the last call to train
+	public long instances() {
+		return instances;
+	}
+
+	private static void update(Classifier model, Instance instance) throws Exception {
+		if (model instanceof UpdateableClassifier) {
+			((UpdateableClassifier) model).updateClassifier(instance);
+		} else if (model instanceof NaiveBayes) {
+			// Plain NaiveBayes (as saved by the batch command) can be updated too
+			((NaiveBayes) model).updateClassifier(instance);
+		} else {
+			throw new IllegalArgumentException(model.getClass().getName() + " cannot be trained incrementally");
+		}
+	}
+}
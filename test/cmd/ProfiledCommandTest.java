@@ -0,0 +1,53 @@
+package cmd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import util.Profiler;
+
+class ProfiledCommandTest {
+	@BeforeEach
+	void reset() {
+		Profiler.reset();
+	}
+
+	@Test
+	void aFailingFileCommandIsReportedAsFailed() {
+		new ProfiledCommand(new Failing()).exec();
+
+		assertEquals(1, Profiler.measurements().size());
+		Profiler.Measurement m = Profiler.measurements().get(0);
+		assertEquals("Failing", m.name);
+		assertTrue(m.error.contains("no class attribute"), m.error);
+	}
+
+	@Test
+	void aCommandThatSucceedsHasNoError() {
+		new ProfiledCommand(() -> {
+		}).exec();
+
+		assertNull(Profiler.measurements().get(0).error);
+	}
+
+	private static class Failing implements FileCommand {
+		public String[] inputs() {
+			return new String[0];
+		}
+
+		public String[] outputs() {
+			return new String[0];
+		}
+
+		public String[] options() {
+			return new String[0];
+		}
+
+		public void run() throws Exception {
+			throw new IllegalStateException("no class attribute");
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import weka.attributeSelection.AttributeSelection;
+import weka.attributeSelection.BestFirst;
+import weka.attributeSelection.CfsSubsetEval;
+import weka.core.Instances;
+
+class CfsSubsetSearchTest {
+	@Test
+	void selectsAsAttributeSelectionWithNominalAttributes() throws Exception {
+		for (int seed = 0; seed < 20; seed++) {
+			Instances data = TestData.regression(50 + 20 * seed, seed);
+			int[] selected = assertSameSelection(data, "seed " + seed);
+			// origin and turbo move mpg as much as weight and power
+			assertTrue(Arrays.stream(selected).anyMatch(j -> data.attribute(j).isNominal()), "seed " + seed);
+		}
+	}
+
+	@Test
+	void selectsAsAttributeSelectionWithNominalPairs() throws Exception {
+		for (int seed = 0; seed < 10; seed++) {
+			// A numeric class, with origin and the nominal class of the data as features
+			Instances data = TestData.classification(200, seed);
+			data.setClassIndex(0);
+			assertSameSelection(data, "seed " + seed);
+		}
+	}
+
+	@Test
+	void selectsAsAttributeSelectionWithConstantAttributes() throws Exception {
+		Instances data = TestData.regression(300, 7);
+		for (int i = 0; i < data.numInstances(); i++) {
+			data.instance(i).setValue(1, 100);
+			data.instance(i).setValue(3, 0);
+		}
+		assertSameSelection(data, "constant power and turbo");
+	}
+
+	// The search's selection, checked against CfsSubsetEval with BestFirst
+	private static int[] assertSameSelection(Instances data, String message) throws Exception {
+		AttributeSelection selection = new AttributeSelection();
+		selection.setEvaluator(new CfsSubsetEval());
+		selection.setSearch(new BestFirst());
+		selection.SelectAttributes(data);
+		// Weka lists the class last
+		int[] expected = Arrays.copyOf(selection.selectedAttributes(), selection.numberAttributesSelected());
+
+		int[] selected = new CfsSubsetSearch(data).search();
+		assertArrayEquals(expected, selected, message);
+		return selected;
+	}
+}
@@ -0,0 +1,47 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import weka.core.Instances;
+
+class ColumnStoreTest {
+	private final Instances data = TestData.classification(100, 5);
+
+	@Test
+	void anUnchangedViewIsBackedByItsStore() throws Exception {
+		for (int i = 0; i < data.numInstances(); i += 3) {
+			data.instance(i).setWeight(2);
+		}
+		ColumnStore store = ColumnStore.of(data).select(5, 6, 7, 9);
+		Instances view = store.toInstances();
+
+		assertNotNull(ColumnStore.backing(view));
+		assertEquals(2, view.instance(1).weight());
+		assertArrayEquals(store.column(0), view.attributeToDoubleArray(0));
+	}
+
+	@Test
+	void aReweightedRowIsNoLongerTheStore() throws Exception {
+		Instances view = ColumnStore.of(data).toInstances();
+		view.instance(4).setWeight(0.5);
+
+		assertNull(ColumnStore.backing(view));
+		// Read from the rows, as any other Instances
+		Instances copy = new Instances(view);
+		assertEquals(0.5, copy.instance(4).weight());
+	}
+
+	@Test
+	void aChangedValueIsNoLongerTheStore() throws Exception {
+		Instances view = ColumnStore.of(data).toInstances();
+		view.instance(2).setValue(0, 1234);
+
+		assertNull(ColumnStore.backing(view));
+		assertEquals(1234, view.attributeToDoubleArray(0)[2]);
+	}
+}
@@ -0,0 +1,49 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import weka.classifiers.trees.J48;
+import weka.core.Instances;
+import weka.core.UnsupportedAttributeTypeException;
+
+class CompiledJ48Test {
+	private final Instances data = TestData.classification(800, 2);
+
+	@Test
+	void classifiesAsTheTreeItWasCompiledFrom() throws Exception {
+		J48 model = new J48();
+		model.buildClassifier(data);
+		CompiledJ48 tree = CompiledJ48.compile(model);
+
+		for (int i = 0; i < data.numInstances(); i++) {
+			assertEquals(model.classifyInstance(data.instance(i)), tree.classify(data.instance(i)), "row " + i);
+			assertEquals(model.classifyInstance(data.instance(i)), tree.classify(data.instance(i).toDoubleArray()), "row " + i);
+			assertArrayEquals(model.distributionForInstance(data.instance(i)), tree.distributionForInstance(data.instance(i)),
+					"row " + i);
+		}
+	}
+
+	@Test
+	void buildClassifierTrainsAndCompilesAJ48() throws Exception {
+		J48 model = new J48();
+		model.buildClassifier(data);
+		CompiledJ48 tree = new CompiledJ48();
+		tree.buildClassifier(data);
+
+		assertEquals(CompiledJ48.compile(model).size(), tree.size());
+		for (int i = 0; i < data.numInstances(); i++) {
+			assertEquals(model.classifyInstance(data.instance(i)), tree.classifyInstance(data.instance(i)), "row " + i);
+		}
+	}
+
+	@Test
+	void buildClassifierRejectsWhatJ48Rejects() {
+		Instances numericClass = new Instances(data);
+		numericClass.setClassIndex(0);
+		assertThrows(UnsupportedAttributeTypeException.class, () -> new CompiledJ48().buildClassifier(numericClass));
+	}
+}
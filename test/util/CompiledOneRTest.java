@@ -0,0 +1,53 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import weka.classifiers.rules.OneR;
+import weka.core.Instances;
+import weka.core.UnsupportedAttributeTypeException;
+
+class CompiledOneRTest {
+	private final Instances data = TestData.classification(800, 3);
+
+	@Test
+	void classifiesAsTheRuleItWasCompiledFrom() throws Exception {
+		for (int attribute = 0; attribute < 3; attribute++) {
+			// Only one attribute left, so each of them gets a rule
+			Instances single = new Instances(data);
+			for (int j = 2; j >= 0; j--) {
+				if (j != attribute) {
+					single.deleteAttributeAt(j);
+				}
+			}
+			OneR model = new OneR();
+			model.buildClassifier(single);
+			CompiledOneR rule = CompiledOneR.compile(model, new Instances(single, 0));
+			for (int i = 0; i < single.numInstances(); i++) {
+				assertEquals(model.classifyInstance(single.instance(i)), rule.classifyInstance(single.instance(i)),
+						"attribute " + attribute + ", row " + i);
+			}
+		}
+	}
+
+	@Test
+	void buildClassifierTrainsAndCompilesAOneR() throws Exception {
+		OneR model = new OneR();
+		model.buildClassifier(data);
+		CompiledOneR rule = new CompiledOneR();
+		rule.buildClassifier(data);
+
+		for (int i = 0; i < data.numInstances(); i++) {
+			assertEquals(model.classifyInstance(data.instance(i)), rule.classifyInstance(data.instance(i)), "row " + i);
+		}
+	}
+
+	@Test
+	void buildClassifierRejectsWhatOneRRejects() {
+		Instances numericClass = new Instances(data);
+		numericClass.setClassIndex(0);
+		assertThrows(UnsupportedAttributeTypeException.class, () -> new CompiledOneR().buildClassifier(numericClass));
+	}
+}
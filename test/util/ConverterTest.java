@@ -0,0 +1,70 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+class ConverterTest {
+	@TempDir
+	Path dir;
+
+	@Test
+	void numbersAfterTheFirstTextAreNominalLabels() throws Exception {
+		Instances data = csv2Arff("a,b\nx,1\n1,2\ny,3\n");
+
+		Attribute a = data.attribute("a");
+		assertTrue(a.isNominal());
+		assertEquals(3, a.numValues());
+		assertEquals("x", a.value(0));
+		assertEquals("1", a.value(1));
+		assertEquals("y", a.value(2));
+		assertEquals("1", data.instance(1).stringValue(a));
+		assertTrue(data.attribute("b").isNumeric());
+	}
+
+	@Test
+	void numbersBeforeTheFirstTextMakeAStringColumn() throws Exception {
+		Instances data = csv2Arff("a\n1\nx\n2\n");
+
+		Attribute a = data.attribute("a");
+		assertTrue(a.isString());
+		assertEquals("1", data.instance(0).stringValue(a));
+		assertEquals("x", data.instance(1).stringValue(a));
+		assertEquals("2", data.instance(2).stringValue(a));
+	}
+
+	@Test
+	void missingCellsDoNotChangeTheType() throws Exception {
+		Instances data = csv2Arff("a,b\n?,1\nx,\n,?\n");
+
+		assertTrue(data.attribute("a").isNominal());
+		assertEquals(1, data.attribute("a").numValues());
+		assertTrue(data.attribute("b").isNumeric());
+		assertTrue(data.instance(0).isMissing(0));
+		assertTrue(data.instance(1).isMissing(1));
+		assertTrue(data.instance(2).isMissing(0));
+	}
+
+	// Converts the CSV and loads the ARFF back with Weka
+	private Instances csv2Arff(String csv) throws Exception {
+		Path csvFile = write("data.csv", csv);
+		Path arffFile = dir.resolve("data.arff");
+		Converter.csv2Arff(csvFile.toString(), arffFile.toString());
+		return DataSource.read(arffFile.toString());
+	}
+
+	private Path write(String name, String content) throws IOException {
+		return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,60 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+class CorrelationMatrixTest {
+	@TempDir
+	Path dir;
+
+	@Test
+	void smallMatricesKeepFullSizeCells() throws Exception {
+		BufferedImage image = heatMap(5);
+		assertEquals(110 + 5 * 56 + 10, image.getWidth());
+		assertEquals(image.getWidth(), image.getHeight());
+	}
+
+	@Test
+	void wideMatricesStayWithinTheMaximumSide() throws Exception {
+		for (int attributes : new int[] { 200, 600 }) {
+			BufferedImage image = heatMap(attributes);
+			assertTrue(image.getWidth() <= 4096, attributes + " attributes: " + image.getWidth() + " px");
+			assertEquals(image.getWidth(), image.getHeight());
+		}
+	}
+
+	private BufferedImage heatMap(int numAttributes) throws Exception {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		for (int j = 0; j < numAttributes; j++) {
+			attributes.add(new Attribute("a" + j));
+		}
+		Instances data = new Instances("wide", attributes, 4);
+		Random random = new Random(1);
+		for (int i = 0; i < 4; i++) {
+			double[] values = new double[numAttributes];
+			for (int j = 0; j < numAttributes; j++) {
+				values[j] = random.nextDouble();
+			}
+			data.add(new DenseInstance(1, values));
+		}
+
+		File png = dir.resolve("heatmap.png").toFile();
+		CorrelationMatrix.compute(data, CorrelationMatrix.Method.PEARSON).writeHeatMap(png.getPath());
+		return ImageIO.read(png);
+	}
+}
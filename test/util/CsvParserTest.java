@@ -0,0 +1,153 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+class CsvParserTest {
+	@TempDir
+	Path dir;
+
+	@Test
+	void quotedFields() throws Exception {
+		Instances data = parse("a,b\n\"x, y\",1\n\"say \"\"hi\"\"\",\"2\"\n\"line\nbreak\",3\n", 1);
+
+		Attribute a = data.attribute("a");
+		assertTrue(a.isNominal());
+		assertEquals("x, y", data.instance(0).stringValue(a));
+		assertEquals("say \"hi\"", data.instance(1).stringValue(a));
+		assertEquals("line\nbreak", data.instance(2).stringValue(a));
+		assertTrue(data.attribute("b").isNumeric());
+		assertEquals(2, data.instance(1).value(1));
+	}
+
+	@Test
+	void missingValues() throws Exception {
+		Instances data = parse("a,b,c\n?,1,x\nx,,\"?\"\n,?,\"\"\n\ny,4,z\n", 1);
+
+		assertEquals(4, data.numInstances());
+		assertTrue(data.instance(0).isMissing(0));
+		assertTrue(data.instance(1).isMissing(1));
+		assertTrue(data.instance(2).isMissing(0));
+		assertTrue(data.instance(2).isMissing(1));
+		// Only unquoted cells are missing
+		assertEquals("?", data.instance(1).stringValue(2));
+		assertEquals("", data.instance(2).stringValue(2));
+	}
+
+	@Test
+	void numbersInANominalColumnAreLabels() throws Exception {
+		for (int ranges = 1; ranges <= 3; ranges++) {
+			Instances data = parse("a,b\nx,1\n1,2\ny,3\n", ranges);
+
+			Attribute a = data.attribute("a");
+			assertTrue(a.isNominal());
+			assertEquals(3, a.numValues());
+			assertEquals("x", a.value(0));
+			assertEquals("1", a.value(1));
+			assertEquals("y", a.value(2));
+			assertEquals("1", data.instance(1).stringValue(a));
+		}
+	}
+
+	@Test
+	void numbersBeforeTheFirstTextMakeAStringColumn() throws Exception {
+		for (int ranges = 1; ranges <= 3; ranges++) {
+			Instances data = parse("a\n1\nx\n2\n", ranges);
+
+			assertTrue(data.attribute("a").isString());
+			assertEquals("1", data.instance(0).stringValue(0));
+			assertEquals("2", data.instance(2).stringValue(0));
+		}
+	}
+
+	@Test
+	void numericLabelsCountTowardsTheNominalLimit() throws Exception {
+		StringBuilder csv = new StringBuilder("a\nx\n");
+		for (int i = 0; i < Converter.NOMINAL_LIMIT; i++) {
+			csv.append(i).append('\n');
+		}
+		for (int ranges = 1; ranges <= 4; ranges++) {
+			Instances data = parse(csv.toString(), ranges);
+
+			assertTrue(data.attribute("a").isString());
+			assertEquals("x", data.instance(0).stringValue(0));
+			assertEquals("7", data.instance(8).stringValue(0));
+		}
+	}
+
+	@Test
+	void rangeBoundariesDoNotChangeTheDataset() throws Exception {
+		String csv = randomCsv(2000, 5, false);
+		for (int ranges : new int[] { 1, 2, 3, 7, 16 }) {
+			parse(csv, ranges);
+		}
+	}
+
+	@Test
+	void aQuotedLineBreakAcrossRangesFallsBackToOneRange() throws Exception {
+		String csv = randomCsv(2000, 6, true);
+		for (int ranges : new int[] { 2, 5, 11 }) {
+			parse(csv, ranges);
+		}
+	}
+
+	// Rows with a numeric column with missing cells, a nominal one whose numbers
+	// only start halfway through, a string one and a quoted one (with a line
+	// break in every cell if lineBreaks)
+	private static String randomCsv(int rows, long seed, boolean lineBreaks) {
+		Random random = new Random(seed);
+		StringBuilder csv = new StringBuilder("number,nominal,string,quoted\n");
+		for (int i = 0; i < rows; i++) {
+			csv.append(random.nextInt(20) == 0 ? "" : String.valueOf(random.nextInt(1000) / 8.0)).append(',');
+			csv.append(i > rows / 2 && random.nextBoolean() ? String.valueOf(random.nextInt(5)) : "n" + random.nextInt(5))
+					.append(',');
+			csv.append(i % 3 == 0 ? String.valueOf(i) : "s" + i).append(',');
+			csv.append('"').append(random.nextBoolean() ? "q, " : "q ").append(random.nextInt(4));
+			csv.append(lineBreaks ? "\n" : "").append("\"\n");
+		}
+		return csv.toString();
+	}
+
+	// Parses the CSV in the given number of ranges and checks the result against
+	// Converter.csv2Arff's output loaded with Weka
+	private Instances parse(String csv, int ranges) throws Exception {
+		Path csvFile = write("data.csv", csv);
+		Path arffFile = dir.resolve("data.arff");
+		Converter.csv2Arff(csvFile.toString(), arffFile.toString());
+		Instances expected = DataSource.read(arffFile.toString());
+		Instances actual = CsvParser.parse(csvFile.toString(), "data", ranges);
+
+		assertNull(expected.equalHeadersMsg(actual), ranges + " ranges");
+		assertEquals(expected.numInstances(), actual.numInstances(), ranges + " ranges");
+		for (int i = 0; i < expected.numInstances(); i++) {
+			for (int j = 0; j < expected.numAttributes(); j++) {
+				String where = ranges + " ranges, row " + i + ", column " + j;
+				assertEquals(expected.instance(i).isMissing(j), actual.instance(i).isMissing(j), where);
+				if (expected.attribute(j).isNumeric()) {
+					assertEquals(expected.instance(i).value(j), actual.instance(i).value(j), where);
+				} else if (!expected.instance(i).isMissing(j)) {
+					assertEquals(expected.instance(i).stringValue(j), actual.instance(i).stringValue(j), where);
+				}
+			}
+		}
+		return actual;
+	}
+
+	private Path write(String name, String content) throws IOException {
+		return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,84 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import weka.core.AttributeStats;
+import weka.core.Instances;
+import weka.core.Utils;
+
+class DatasetProfileTest {
+	private static final double DELTA = 1e-9;
+
+	@Test
+	void statisticsAreAttributeStats() throws Exception {
+		// Enough rows for several ranges, some of them reweighted
+		Instances data = TestData.classification(20000, 8);
+		for (int i = 0; i < data.numInstances(); i += 5) {
+			data.instance(i).setWeight(0.5 + i % 3);
+		}
+		DatasetProfile profile = DatasetProfile.compute(data);
+
+		for (int j = 0; j < data.numAttributes(); j++) {
+			AttributeStats stats = data.attributeStats(j);
+			String name = data.attribute(j).name();
+			assertEquals(stats.missingCount, profile.missing(j), name);
+			if (data.attribute(j).isNumeric()) {
+				assertEquals(stats.numericStats.mean, profile.mean(j), DELTA * Math.abs(stats.numericStats.mean), name);
+				assertEquals(stats.numericStats.stdDev, profile.stdDev(j), DELTA * stats.numericStats.stdDev, name);
+				assertEquals(stats.numericStats.min, profile.min(j), name);
+				assertEquals(stats.numericStats.max, profile.max(j), name);
+			} else {
+				long[] counts = new long[stats.nominalCounts.length];
+				for (int v = 0; v < counts.length; v++) {
+					counts[v] = stats.nominalCounts[v];
+				}
+				assertArrayEquals(counts, profile.counts(j), name);
+			}
+		}
+	}
+
+	@Test
+	void percentilesAreQuantiles() throws Exception {
+		// Fewer values than the sketch keeps, so its percentiles are exact
+		Instances data = TestData.regression(800, 9);
+		DatasetProfile profile = DatasetProfile.compute(data);
+
+		for (int j : new int[] { 0, 1, 4 }) {
+			double[] expected = Quantiles.percentiles(present(data.attributeToDoubleArray(j)), DatasetProfile.PERCENTILES);
+			for (int p = 0; p < expected.length; p++) {
+				assertEquals(expected[p], profile.percentile(j, DatasetProfile.PERCENTILES[p]), data.attribute(j).name());
+			}
+		}
+	}
+
+	@Test
+	void targetCorrelationsAreUtilsCorrelation() throws Exception {
+		Instances data = TestData.regression(20000, 10);
+		DatasetProfile profile = DatasetProfile.compute(data);
+		assertEquals(data.classIndex(), profile.target());
+
+		for (int j : new int[] { 0, 1 }) {
+			// Over the rows where both values are present
+			double[] x = new double[data.numInstances()];
+			double[] y = new double[data.numInstances()];
+			int n = 0;
+			for (int i = 0; i < data.numInstances(); i++) {
+				if (!data.instance(i).isMissing(j) && !data.instance(i).classIsMissing()) {
+					x[n] = data.instance(i).value(j);
+					y[n++] = data.instance(i).classValue();
+				}
+			}
+			assertEquals(Utils.correlation(x, y, n), profile.targetCorrelation(j), DELTA, data.attribute(j).name());
+		}
+		assertEquals(Double.NaN, profile.targetCorrelation(2));
+	}
+
+	private static double[] present(double[] values) {
+		return Arrays.stream(values).filter(v -> !Double.isNaN(v)).toArray();
+	}
+}
@@ -0,0 +1,64 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.Discretize;
+
+class DiscretizerTest {
+	@Test
+	void equalWidthIsDiscretize() throws Exception {
+		for (int seed = 0; seed < 5; seed++) {
+			Instances data = TestData.classification(300 + 100 * seed, seed);
+			weka.filters.unsupervised.attribute.Discretize discretize = new weka.filters.unsupervised.attribute.Discretize();
+			discretize.setBins(Discretizer.DEFAULT_BINS);
+			assertSameOutput(filter(data, discretize), Discretizer.equalWidth(Discretizer.DEFAULT_BINS, false).apply(data),
+					"seed " + seed);
+		}
+	}
+
+	@Test
+	void equalWidthWithFindNumBinsIsDiscretizeO() throws Exception {
+		for (int seed = 0; seed < 5; seed++) {
+			Instances data = TestData.classification(300 + 100 * seed, seed);
+			// The entropy of the candidate bins is weighted
+			for (int i = 0; i < data.numInstances(); i += 7) {
+				data.instance(i).setWeight(2.5);
+			}
+			weka.filters.unsupervised.attribute.Discretize discretize = new weka.filters.unsupervised.attribute.Discretize();
+			discretize.setBins(Discretizer.DEFAULT_BINS);
+			discretize.setFindNumBins(true);
+			assertSameOutput(filter(data, discretize), Discretizer.equalWidth(Discretizer.DEFAULT_BINS, true).apply(data),
+					"seed " + seed);
+		}
+	}
+
+	@Test
+	void mdlIsSupervisedDiscretize() throws Exception {
+		for (int seed = 0; seed < 5; seed++) {
+			Instances data = TestData.classification(300 + 100 * seed, seed);
+			assertSameOutput(filter(data, new Discretize()), Discretizer.mdl(null).apply(data), "seed " + seed);
+		}
+	}
+
+	private static Instances filter(Instances data, Filter filter) throws Exception {
+		filter.setInputFormat(data);
+		return Filter.useFilter(data, filter);
+	}
+
+	private static void assertSameOutput(Instances expected, Instances actual, String message) {
+		// Labels included
+		assertNull(expected.equalHeadersMsg(actual), message);
+		assertEquals(expected.numInstances(), actual.numInstances(), message);
+		for (int i = 0; i < expected.numInstances(); i++) {
+			for (int j = 0; j < expected.numAttributes(); j++) {
+				assertEquals(expected.instance(i).value(j), actual.instance(i).value(j), message + ", row " + i);
+			}
+			assertEquals(expected.instance(i).weight(), actual.instance(i).weight(), message + ", row " + i);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.rules.OneR;
+import weka.classifiers.trees.J48;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+class ModelFileTest {
+	@TempDir
+	Path dir;
+
+	private final Instances data = TestData.classification(500, 1);
+
+	@Test
+	void j48LoadsAsACompiledTree() throws Exception {
+		J48 model = new J48();
+		model.buildClassifier(data);
+
+		ModelFile file = roundTrip(model);
+		assertInstanceOf(CompiledJ48.class, file.model());
+		assertSamePredictions(model, file.model(), true);
+		assertNull(file.header().equalHeadersMsg(data));
+	}
+
+	@Test
+	void naiveBayesLoadsWithTheSameEstimators() throws Exception {
+		NaiveBayes model = new NaiveBayes();
+		model.buildClassifier(data);
+		assertInstanceOf(NaiveBayes.class, roundTrip(model).model());
+		assertSamePredictions(model, roundTrip(model).model(), true);
+
+		NaiveBayes kernel = new NaiveBayes();
+		kernel.setUseKernelEstimator(true);
+		kernel.buildClassifier(data);
+		assertSamePredictions(kernel, roundTrip(kernel).model(), true);
+	}
+
+	@Test
+	void naiveBayesUpdateableCanStillBeUpdated() throws Exception {
+		NaiveBayesUpdateable model = new NaiveBayesUpdateable();
+		model.buildClassifier(new Instances(data, 0, 250));
+		NaiveBayesUpdateable loaded = (NaiveBayesUpdateable) roundTrip(model).model();
+		for (int i = 250; i < data.numInstances(); i++) {
+			model.updateClassifier(data.instance(i));
+			loaded.updateClassifier(data.instance(i));
+		}
+		assertSamePredictions(model, loaded, true);
+	}
+
+	@Test
+	void oneRLoadsAsACompiledRule() throws Exception {
+		OneR model = new OneR();
+		model.buildClassifier(data);
+
+		ModelFile file = roundTrip(model);
+		assertInstanceOf(CompiledOneR.class, file.model());
+		assertSamePredictions(model, file.model(), false);
+	}
+
+	@Test
+	void compiledModelsAreWrittenAsTheyAre() throws Exception {
+		CompiledJ48 tree = new CompiledJ48();
+		tree.buildClassifier(data);
+		assertSamePredictions(tree, roundTrip(tree).model(), true);
+
+		CompiledOneR rule = new CompiledOneR();
+		rule.buildClassifier(data);
+		assertSamePredictions(rule, roundTrip(rule).model(), false);
+	}
+
+	@Test
+	void javaSerializedModelsAreStillRead() throws Exception {
+		J48 j48 = new J48();
+		j48.buildClassifier(data);
+		ModelFile file = legacy(j48);
+		assertInstanceOf(J48.class, file.model());
+		assertNull(file.header().equalHeadersMsg(data));
+		assertSamePredictions(j48, file.model(), true);
+
+		NaiveBayes naiveBayes = new NaiveBayes();
+		naiveBayes.buildClassifier(data);
+		file = legacy(naiveBayes);
+		assertNull(file.header().equalHeadersMsg(new Instances(data, 0)));
+		assertSamePredictions(naiveBayes, file.model(), true);
+
+		// OneR keeps no header
+		OneR oneR = new OneR();
+		oneR.buildClassifier(data);
+		file = legacy(oneR);
+		assertNull(file.header());
+		assertSamePredictions(oneR, file.model(), false);
+	}
+
+	@Test
+	void corruptedFilesAreRejected() throws Exception {
+		J48 model = new J48();
+		model.buildClassifier(data);
+		Path path = dir.resolve("model.bin");
+		ModelFile.write(path.toString(), model, new Instances(data, 0));
+
+		byte[] bytes = Files.readAllBytes(path);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(path, bytes);
+		IOException e = assertThrows(IOException.class, () -> ModelFile.read(path.toString()));
+		assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+
+		Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+		assertThrows(IOException.class, () -> ModelFile.read(path.toString()));
+	}
+
+	private ModelFile roundTrip(Classifier model) throws Exception {
+		Path path = dir.resolve("model.bin");
+		ModelFile.write(path.toString(), model, new Instances(data, 0));
+		return ModelFile.read(path.toString());
+	}
+
+	private ModelFile legacy(Classifier model) throws Exception {
+		Path path = dir.resolve("legacy.model");
+		SerializationHelper.write(path.toString(), model);
+		return ModelFile.read(path.toString());
+	}
+
+	private void assertSamePredictions(Classifier expected, Classifier actual, boolean distributions) throws Exception {
+		for (int i = 0; i < data.numInstances(); i++) {
+			assertEquals(expected.classifyInstance(data.instance(i)), actual.classifyInstance(data.instance(i)), "row " + i);
+			if (distributions) {
+				assertArrayEquals(expected.distributionForInstance(data.instance(i)),
+						actual.distributionForInstance(data.instance(i)), "row " + i);
+			}
+		}
+	}
+}
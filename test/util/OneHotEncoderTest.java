@@ -0,0 +1,58 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+class OneHotEncoderTest {
+	@TempDir
+	Path dir;
+
+	private final Instances data = TestData.classification(300, 6);
+
+	@Test
+	void aNarrowLayoutHasDenseRowsThatAreCached() throws Exception {
+		Instances encoded = new OneHotEncoder().apply(data);
+
+		assertEquals(6, encoded.numAttributes());
+		assertEquals("origin=eu", encoded.attribute(3).name());
+		assertFalse(encoded.instance(0) instanceof SparseInstance);
+
+		String arff = dir.resolve("encoded.arff").toString();
+		Saver.saveArff(arff, encoded);
+		Instances cached = ColumnarCache.read(arff);
+		assertNotNull(cached);
+		for (int i = 0; i < encoded.numInstances(); i++) {
+			assertArrayEquals(encoded.instance(i).toDoubleArray(), cached.instance(i).toDoubleArray(), "row " + i);
+		}
+	}
+
+	@Test
+	void aWideLayoutHasSparseRows() throws Exception {
+		// origin hashed into more buckets than DENSE_LIMIT
+		Instances encoded = new OneHotEncoder(OneHotEncoder.Mode.HASHING, 1, OneHotEncoder.DENSE_LIMIT).apply(data);
+		Instances narrow = new OneHotEncoder(OneHotEncoder.Mode.HASHING, 1, 4).apply(data);
+
+		assertTrue(encoded.instance(0) instanceof SparseInstance);
+		assertFalse(narrow.instance(0) instanceof SparseInstance);
+		for (int i = 0; i < data.numInstances(); i++) {
+			assertEquals(data.instance(i).value(0), encoded.instance(i).value(0), "row " + i);
+			assertEquals(data.instance(i).classValue(), encoded.instance(i).classValue(), "row " + i);
+		}
+
+		String arff = dir.resolve("encoded.arff").toString();
+		Saver.saveArff(arff, encoded);
+		assertNull(ColumnarCache.read(arff));
+	}
+}
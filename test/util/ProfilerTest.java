@@ -0,0 +1,105 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ProfilerTest {
+	@BeforeEach
+	void reset() {
+		Profiler.reset();
+	}
+
+	@Test
+	void nestedMeasurementsKeepTheirPeaks() throws Exception {
+		Profiler.measure("outer", () -> {
+			Profiler.measure("inner", () -> new byte[1 << 20]);
+			return Profiler.measure("second", () -> null);
+		});
+
+		Map<String, Profiler.Measurement> all = byName();
+		assertEquals(0, all.get("outer").depth);
+		assertEquals(1, all.get("inner").depth);
+		assertTrue(all.get("inner").peakHeapBytes > 0);
+		assertTrue(all.get("outer").peakHeapBytes >= all.get("inner").peakHeapBytes);
+		assertNull(Profiler.current());
+	}
+
+	@Test
+	void overlappingMeasurementsHaveNoPeak() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			Profiler.measure("run", () -> {
+				Profiler.Measurement parent = Profiler.current();
+				CountDownLatch started = new CountDownLatch(2);
+				Future<?>[] stages = new Future<?>[2];
+				for (int s = 0; s < 2; s++) {
+					String name = "stage" + s;
+					stages[s] = pool.submit(() -> Profiler.measure(parent, name, () -> {
+						started.countDown();
+						started.await();
+						return null;
+					}));
+				}
+				for (Future<?> stage : stages) {
+					stage.get();
+				}
+				return null;
+			});
+		} finally {
+			pool.shutdownNow();
+		}
+
+		Map<String, Profiler.Measurement> all = byName();
+		assertEquals(-1, all.get("stage0").peakHeapBytes);
+		assertEquals(-1, all.get("stage1").peakHeapBytes);
+		assertEquals(1, all.get("stage0").depth);
+		assertEquals(1, all.get("stage1").depth);
+		assertTrue(all.get("run").peakHeapBytes > 0);
+	}
+
+	@Test
+	void pooledTasksNestUnderTheirParent() throws Exception {
+		Profiler.measure("pipeline", () -> {
+			Profiler.Measurement pipeline = Profiler.current();
+			// As a pool thread stealing branch B while it waits inside branch A
+			return Profiler.measure(pipeline, "A", () -> {
+				Profiler.Measurement a = Profiler.current();
+				Profiler.measure(pipeline, "B", () -> {
+					Profiler.output(TestData.classification(3, 1));
+					return null;
+				});
+				assertSame(a, Profiler.current());
+				return null;
+			});
+		});
+
+		Map<String, Profiler.Measurement> all = byName();
+		assertEquals(1, all.get("A").depth);
+		assertEquals(1, all.get("B").depth);
+		assertEquals(3, all.get("B").rowsOut);
+		assertEquals(-1, all.get("A").rowsOut);
+		assertEquals(-1, all.get("A").peakHeapBytes);
+		assertEquals(-1, all.get("B").peakHeapBytes);
+		assertTrue(all.get("pipeline").peakHeapBytes > 0);
+	}
+
+	private static Map<String, Profiler.Measurement> byName() {
+		Map<String, Profiler.Measurement> byName = new HashMap<>();
+		for (Profiler.Measurement m : Profiler.measurements()) {
+			byName.put(m.name, m);
+		}
+		return byName;
+	}
+}
@@ -0,0 +1,59 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import weka.classifiers.bayes.NaiveBayes;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.core.Utils;
+
+class ScoringServiceTest {
+	@TempDir
+	Path dir;
+
+	@Test
+	void nominalPredictionsAreLabels() {
+		ScoringService service = new ScoringService(header(new Attribute("origin", Arrays.asList("us", "eu", "jp"))));
+		assertEquals("eu", service.format(1));
+		assertEquals("?", service.format(Utils.missingValue()));
+	}
+
+	@Test
+	void numericPredictionsAreValues() {
+		ScoringService service = new ScoringService(header(new Attribute("mpg")));
+		assertEquals("23.5", service.format(23.5));
+		assertEquals("0", service.format(0));
+		assertEquals("?", service.format(Utils.missingValue()));
+	}
+
+	@Test
+	void serializedNaiveBayesWithDiscretizationIsRejected() throws Exception {
+		Instances data = TestData.classification(200, 4);
+		NaiveBayes model = new NaiveBayes();
+		model.setUseSupervisedDiscretization(true);
+		model.buildClassifier(data);
+		Path file = dir.resolve("naivebayes.bin");
+		SerializationHelper.write(file.toString(), model);
+
+		ScoringService service = new ScoringService(data);
+		assertThrows(IllegalArgumentException.class, () -> service.load(file.toString()));
+	}
+
+	private static Instances header(Attribute classAttribute) {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		attributes.add(classAttribute);
+		attributes.add(new Attribute("weight"));
+		Instances header = new Instances("scored", attributes, 0);
+		header.setClassIndex(0);
+		return header;
+	}
+}
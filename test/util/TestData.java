@@ -0,0 +1,74 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// Synthetic datasets for the tests
+final class TestData {
+	private TestData() {
+	}
+
+	// Two numeric attributes, a nominal one and a nominal class that depends on
+	// them, with about 5% of the attribute values missing
+	static Instances classification(int rows, long seed) {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		attributes.add(new Attribute("weight"));
+		attributes.add(new Attribute("power"));
+		attributes.add(new Attribute("origin", Arrays.asList("us", "eu", "jp")));
+		attributes.add(new Attribute("class", Arrays.asList("low", "mid", "high")));
+		Instances data = new Instances("synthetic", attributes, rows);
+		data.setClassIndex(3);
+
+		Random random = new Random(seed);
+		for (int i = 0; i < rows; i++) {
+			double weight = 1500 + random.nextDouble() * 3500;
+			double power = 50 + random.nextDouble() * 180;
+			int origin = random.nextInt(3);
+			double score = weight / 1000 + power / 60 - origin + random.nextGaussian();
+			double[] values = { weight, power, origin, score < 4 ? 0 : score < 6 ? 1 : 2 };
+			for (int j = 0; j < 3; j++) {
+				if (random.nextDouble() < 0.05) {
+					values[j] = Utils.missingValue();
+				}
+			}
+			data.add(new DenseInstance(1, values));
+		}
+		return data;
+	}
+
+	// Two numeric attributes, a nominal one, a two-valued one and a numeric class
+	// (mpg) that depends on all of them, with about 5% of the attribute values missing
+	static Instances regression(int rows, long seed) {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		attributes.add(new Attribute("weight"));
+		attributes.add(new Attribute("power"));
+		attributes.add(new Attribute("origin", Arrays.asList("us", "eu", "jp")));
+		attributes.add(new Attribute("turbo", Arrays.asList("no", "yes")));
+		attributes.add(new Attribute("mpg"));
+		Instances data = new Instances("synthetic", attributes, rows);
+		data.setClassIndex(4);
+
+		Random random = new Random(seed);
+		for (int i = 0; i < rows; i++) {
+			double weight = 1500 + random.nextDouble() * 3500;
+			double power = weight / 25 + random.nextGaussian() * 20;
+			int origin = random.nextInt(3);
+			int turbo = random.nextInt(4) == 0 ? 1 : 0;
+			double mpg = 50 - weight / 200 - power / 40 + 4 * origin - 3 * turbo + random.nextGaussian() * 2;
+			double[] values = { weight, power, origin, turbo, mpg };
+			for (int j = 0; j < 4; j++) {
+				if (random.nextDouble() < 0.05) {
+					values[j] = Utils.missingValue();
+				}
+			}
+			data.add(new DenseInstance(1, values));
+		}
+		return data;
+	}
+}